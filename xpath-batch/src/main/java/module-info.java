@@ -0,0 +1,14 @@
+/**
+ * Headless batch evaluation of XPath expressions over a directory tree.
+ */
+open module com.intellij.xpath.batch {
+  requires com.intellij.xpath.view;
+
+  requires consulo.ide.api;
+  // TODO remove in future, for ApplicationStarter
+  requires consulo.ide.impl;
+
+  requires jaxen;
+
+  exports org.intellij.plugins.xpathView.batch;
+}
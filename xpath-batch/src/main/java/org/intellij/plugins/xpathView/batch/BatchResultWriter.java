@@ -0,0 +1,106 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.batch;
+
+import org.intellij.plugins.xpathView.util.ResultExporter;
+
+import jakarta.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the results of a {@link XPathBatchRunner} as JSON Lines, one object per line with a <code>type</code> of
+ * <code>match</code>, <code>error</code>, <code>file</code> (the per-file timing) or <code>summary</code>. Times are
+ * in microseconds. The records of a file are written together, once the file has been evaluated completely.
+ */
+public class BatchResultWriter implements Closeable {
+    private final Writer myWriter;
+
+    public BatchResultWriter(Writer writer) {
+        myWriter = writer;
+    }
+
+    public void write(FileResult result) throws IOException {
+        for (FileResult.Match match : result.getMatches()) {
+            begin("match");
+            field("expression", match.getExpression());
+            field("file", result.getPath());
+            field("line", match.getLine());
+            field("path", match.getPath());
+            field("value", match.getValue());
+            end();
+        }
+        for (FileResult.Error error : result.getErrors()) {
+            begin("error");
+            field("expression", error.getExpression());
+            field("file", result.getPath());
+            field("message", error.getMessage());
+            end();
+        }
+        begin("file");
+        field("file", result.getPath());
+        field("micros", result.getMicros());
+        field("matches", result.getMatches().size());
+        end();
+    }
+
+    public void writeSummary(int files, int matches, int errors, long micros) throws IOException {
+        begin("summary");
+        field("files", files);
+        field("matches", matches);
+        field("errors", errors);
+        field("micros", micros);
+        end();
+    }
+
+    public void flush() throws IOException {
+        myWriter.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        myWriter.close();
+    }
+
+    private void begin(String type) throws IOException {
+        myWriter.write("{\"type\":\"");
+        myWriter.write(type);
+        myWriter.write('"');
+    }
+
+    private void end() throws IOException {
+        myWriter.write("}\n");
+    }
+
+    private void field(String name, long value) throws IOException {
+        myWriter.write(",\"");
+        myWriter.write(name);
+        myWriter.write("\":");
+        myWriter.write(Long.toString(value));
+    }
+
+    private void field(String name, @Nullable String value) throws IOException {
+        myWriter.write(",\"");
+        myWriter.write(name);
+        myWriter.write("\":");
+        if (value == null) {
+            myWriter.write("null");
+            return;
+        }
+        ResultExporter.writeJsonString(myWriter, value);
+    }
+}
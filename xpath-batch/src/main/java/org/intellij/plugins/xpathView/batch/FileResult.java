@@ -0,0 +1,112 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The matches and errors of all expressions on one file, and the time it took to evaluate them.
+ */
+public final class FileResult {
+    private final String myPath;
+    private final List<Match> myMatches = new ArrayList<Match>();
+    private final List<Error> myErrors = new ArrayList<Error>(0);
+    private long myMicros;
+
+    FileResult(String path) {
+        myPath = path;
+    }
+
+    public String getPath() {
+        return myPath;
+    }
+
+    public List<Match> getMatches() {
+        return myMatches;
+    }
+
+    public List<Error> getErrors() {
+        return myErrors;
+    }
+
+    public long getMicros() {
+        return myMicros;
+    }
+
+    void addMatch(String expression, int line, String path, String value) {
+        myMatches.add(new Match(expression, line, path, value));
+    }
+
+    void addError(String expression, String message) {
+        myErrors.add(new Error(expression, message));
+    }
+
+    void setMicros(long micros) {
+        myMicros = micros;
+    }
+
+    public static final class Match {
+        private final String myExpression;
+        private final int myLine;
+        private final String myPath;
+        private final String myValue;
+
+        Match(String expression, int line, String path, String value) {
+            myExpression = expression;
+            myLine = line;
+            myPath = path;
+            myValue = value;
+        }
+
+        public String getExpression() {
+            return myExpression;
+        }
+
+        /**
+         * The 1-based line of the matched node, 0 for a match of an expression that doesn't select nodes.
+         */
+        public int getLine() {
+            return myLine;
+        }
+
+        public String getPath() {
+            return myPath;
+        }
+
+        public String getValue() {
+            return myValue;
+        }
+    }
+
+    public static final class Error {
+        private final String myExpression;
+        private final String myMessage;
+
+        Error(String expression, String message) {
+            myExpression = expression;
+            myMessage = message;
+        }
+
+        public String getExpression() {
+            return myExpression;
+        }
+
+        public String getMessage() {
+            return myMessage;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.batch;
+
+import consulo.annotation.access.RequiredReadAction;
+import consulo.application.ReadAction;
+import consulo.language.psi.PsiElement;
+import consulo.language.psi.PsiFile;
+import consulo.language.psi.PsiManager;
+import consulo.project.Project;
+import consulo.project.ProjectManager;
+import consulo.virtualFileSystem.LocalFileSystem;
+import consulo.virtualFileSystem.VirtualFile;
+import consulo.virtualFileSystem.util.VirtualFileUtil;
+import consulo.virtualFileSystem.util.VirtualFileVisitor;
+import consulo.xml.language.XmlLikeFileType;
+import consulo.xml.language.psi.XmlDocument;
+import consulo.xml.language.psi.XmlElement;
+import consulo.xml.language.psi.XmlFile;
+import org.intellij.plugins.xpathView.HistoryElement;
+import org.intellij.plugins.xpathView.search.XPathFileMatcher;
+import org.intellij.plugins.xpathView.support.XPathResults;
+import org.intellij.plugins.xpathView.support.XPathSupport;
+import org.intellij.plugins.xpathView.support.jaxen.DocumentCache;
+import org.intellij.plugins.xpathView.util.CachedVariableContext;
+import org.jaxen.JaxenRuntimeException;
+import org.jaxen.XPath;
+import org.jaxen.function.StringFunction;
+import org.jaxen.saxpath.SAXPathException;
+
+import jakarta.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluates a library of expressions on every XML file below a directory, without a project window. The files are
+ * evaluated by a pool of worker threads, each file in its own read action, but the results are written in the order
+ * of the files, so the output of two runs over the same tree can be compared. Only a bounded number of evaluated
+ * files waits to be written at any time.
+ */
+public class XPathBatchRunner {
+    private final List<HistoryElement> myExpressions;
+    private final boolean myXPath2;
+    private final int myThreads;
+
+    private int myFiles;
+    private int myMatches;
+    private int myErrors;
+
+    public XPathBatchRunner(@Nonnull List<HistoryElement> expressions, boolean xpath2, int threads) {
+        myExpressions = expressions;
+        myXPath2 = xpath2;
+        myThreads = Math.max(1, threads);
+    }
+
+    /**
+     * Evaluates all expressions on the XML files below <code>root</code> and writes the results, followed by a
+     * summary.
+     */
+    public void run(@Nonnull Path root, @Nonnull BatchResultWriter writer) throws IOException, InterruptedException {
+        final long start = System.nanoTime();
+        final VirtualFile dir = LocalFileSystem.getInstance().refreshAndFindFileByPath(root.toAbsolutePath().toString().replace('\\', '/'));
+        if (dir == null || !dir.isDirectory()) {
+            throw new IOException("Not a directory: " + root);
+        }
+        final List<VirtualFile> files = collectFiles(dir);
+        final PsiManager manager = PsiManager.getInstance(ProjectManager.getInstance().getDefaultProject());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(myThreads);
+        try {
+            final ArrayDeque<Future<FileResult>> pending = new ArrayDeque<Future<FileResult>>();
+            final Iterator<VirtualFile> it = files.iterator();
+            while (it.hasNext() || !pending.isEmpty()) {
+                while (it.hasNext() && pending.size() < myThreads * 4) {
+                    final VirtualFile file = it.next();
+                    pending.add(executor.submit(() -> evaluateInReadAction(manager, file)));
+                }
+                final FileResult result = get(pending.poll());
+                writer.write(result);
+                myFiles++;
+                myMatches += result.getMatches().size();
+                myErrors += result.getErrors().size();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        writer.writeSummary(myFiles, myMatches, myErrors, (System.nanoTime() - start) / 1000);
+        writer.flush();
+    }
+
+    public int getMatchCount() {
+        return myMatches;
+    }
+
+    public int getErrorCount() {
+        return myErrors;
+    }
+
+    private static FileResult get(Future<FileResult> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private static List<VirtualFile> collectFiles(VirtualFile dir) {
+        final List<VirtualFile> files = new ArrayList<VirtualFile>();
+        VirtualFileUtil.visitChildrenRecursively(dir, new VirtualFileVisitor() {
+            @Override
+            public boolean visitFile(@Nonnull VirtualFile file) {
+                if (!file.isDirectory() && file.getFileType() instanceof XmlLikeFileType) {
+                    files.add(file);
+                }
+                return true;
+            }
+        });
+        return files;
+    }
+
+    /**
+     * Evaluates a file. An unexpected failure is reported as an error of that file, so that it doesn't abort the run.
+     */
+    private FileResult evaluateInReadAction(PsiManager manager, VirtualFile file) {
+        try {
+            return ReadAction.compute(() -> evaluate(manager, file));
+        } catch (RuntimeException e) {
+            final FileResult result = new FileResult(file.getPath());
+            result.addError(null, e.getMessage() != null ? e.getMessage() : e.getClass().getName());
+            return result;
+        }
+    }
+
+    @RequiredReadAction
+    private FileResult evaluate(PsiManager manager, VirtualFile file) {
+        final long start = System.nanoTime();
+        final FileResult result = new FileResult(file.getPath());
+
+        final PsiFile psiFile = manager.findFile(file);
+        final XmlDocument document = psiFile instanceof XmlFile ? ((XmlFile)psiFile).getDocument() : null;
+        if (document == null) {
+            result.addError(null, "Not an XML file");
+        } else {
+            final LineIndex lines = new LineIndex(psiFile.getViewProvider().getContents());
+            try (DocumentCache.Scope ignored = DocumentCache.enter()) {
+                for (HistoryElement expression : myExpressions) {
+                    evaluate((XmlFile)psiFile, document, expression, lines, result);
+                }
+            }
+        }
+        result.setMicros((System.nanoTime() - start) / 1000);
+        return result;
+    }
+
+    @RequiredReadAction
+    private void evaluate(XmlFile file, XmlDocument document, HistoryElement expression, LineIndex lines, FileResult result) {
+        final XPathSupport support = XPathSupport.getInstance();
+        try {
+            final XPath xpath = support.createXPath(file, expression.expression, expression.namespaces, myXPath2);
+            xpath.setVariableContext(new CachedVariableContext(expression.variables, expression.keys, xpath, document));
+
+            final Iterator<?> items = XPathResults.iterate(xpath, document);
+            while (items.hasNext()) {
+                final Object item = items.next();
+                if (item instanceof PsiElement) {
+                    final PsiElement element = (PsiElement)item;
+                    final String path = element instanceof XmlElement ? support.getUniquePath((XmlElement)element, null) : "";
+                    final int line = lines.getLine(element.getTextRange().getStartOffset());
+                    result.addMatch(expression.expression, line, path, StringFunction.evaluate(element, xpath.getNavigator()));
+                } else if (XPathFileMatcher.isTrue(item)) {
+                    result.addMatch(expression.expression, 0, "", String.valueOf(item));
+                }
+            }
+        } catch (SAXPathException e) {
+            result.addError(expression.expression, e.getMessage());
+        } catch (JaxenRuntimeException e) {
+            result.addError(expression.expression, e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+        }
+    }
+
+    /**
+     * Maps offsets to 1-based line numbers without creating a document for the file.
+     */
+    private static final class LineIndex {
+        private final int[] myLineStarts;
+        private final int myLineCount;
+
+        LineIndex(CharSequence text) {
+            int[] starts = new int[64];
+            int count = 1;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '\n') {
+                    if (count == starts.length) {
+                        starts = Arrays.copyOf(starts, count * 2);
+                    }
+                    starts[count++] = i + 1;
+                }
+            }
+            myLineStarts = starts;
+            myLineCount = count;
+        }
+
+        int getLine(int offset) {
+            final int i = Arrays.binarySearch(myLineStarts, 0, myLineCount, offset);
+            return i >= 0 ? i + 1 : -i - 1;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.batch;
+
+import consulo.annotation.component.ExtensionImpl;
+import consulo.ide.impl.idea.openapi.application.ApplicationStarter;
+import consulo.util.jdom.JDOMUtil;
+import org.intellij.plugins.xpathView.HistoryElement;
+import org.intellij.plugins.xpathView.XPathProjectComponent;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * The headless command line entry point of the batch runner:
+ * <pre>
+ * xpath-batch [--out results.jsonl] [--threads n] [--xpath2] [--fail-on-match] expressions.xml directory
+ * </pre>
+ * The expressions file has the format of the XPath history in the workspace: a root element with
+ * <code>history</code> and/or <code>find-history</code> children, each with <code>element</code> entries that hold
+ * an expression with its namespaces, variables and keys. The results are written to standard output unless
+ * <code>--out</code> is given, see {@link BatchResultWriter}.
+ * <p>
+ * The exit code is 0 on success, 1 if an expression failed or, with <code>--fail-on-match</code>, if any expression
+ * matched, and 2 if the arguments are invalid or the run failed.
+ */
+@ExtensionImpl
+public class XPathBatchStarter implements ApplicationStarter {
+    private static final String USAGE = "Usage: xpath-batch [--out results.jsonl] [--threads n] [--xpath2] [--fail-on-match] expressions.xml directory";
+
+    @Override
+    public String getCommandName() {
+        return "xpath-batch";
+    }
+
+    @Override
+    public boolean isHeadless() {
+        return true;
+    }
+
+    @Override
+    public void premain(String[] args) {
+    }
+
+    @Override
+    public void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    private static int run(String[] args) {
+        Path out = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean xpath2 = false;
+        boolean failOnMatch = false;
+        Path expressionsFile = null;
+        Path dir = null;
+
+        // args[0] is the command name
+        for (int i = 1; i < args.length; i++) {
+            final String arg = args[i];
+            if ("--out".equals(arg) && i + 1 < args.length) {
+                out = Paths.get(args[++i]);
+            } else if ("--threads".equals(arg) && i + 1 < args.length) {
+                try {
+                    threads = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    return usage("Invalid number of threads: " + args[i]);
+                }
+            } else if ("--xpath2".equals(arg)) {
+                xpath2 = true;
+            } else if ("--fail-on-match".equals(arg)) {
+                failOnMatch = true;
+            } else if (arg.startsWith("--")) {
+                return usage("Unknown option: " + arg);
+            } else if (expressionsFile == null) {
+                expressionsFile = Paths.get(arg);
+            } else if (dir == null) {
+                dir = Paths.get(arg);
+            } else {
+                return usage("Too many arguments");
+            }
+        }
+        if (expressionsFile == null || dir == null) {
+            return usage(null);
+        }
+
+        try {
+            final List<HistoryElement> expressions = XPathProjectComponent.readExpressions(JDOMUtil.load(expressionsFile.toFile()));
+            if (expressions.isEmpty()) {
+                return usage("No expressions in " + expressionsFile);
+            }
+
+            final Writer writer = out != null
+                ? Files.newBufferedWriter(out, StandardCharsets.UTF_8)
+                : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            final XPathBatchRunner runner = new XPathBatchRunner(expressions, xpath2, threads);
+            try (BatchResultWriter results = new BatchResultWriter(writer)) {
+                runner.run(dir, results);
+            }
+            return runner.getErrorCount() > 0 || failOnMatch && runner.getMatchCount() > 0 ? 1 : 0;
+        } catch (Exception e) {
+            System.err.println("xpath-batch: " + e.getMessage());
+            return 2;
+        }
+    }
+
+    private static int usage(String message) {
+        if (message != null) {
+            System.err.println(message);
+        }
+        System.err.println(USAGE);
+        return 2;
+    }
+}
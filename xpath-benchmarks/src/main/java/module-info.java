@@ -0,0 +1,18 @@
+/**
+ * JMH benchmarks for the XPath lexer, parsers, navigator and evaluator, and the performance regression suite.
+ */
+open module com.intellij.xpath.benchmarks {
+  requires com.intellij.xpath.lang;
+  requires com.intellij.xpath.view;
+
+  requires consulo.ide.api;
+  // TODO remove in future, for ApplicationStarter
+  requires consulo.ide.impl;
+
+  requires jaxen;
+  requires jmh.core;
+  // per-thread allocation counters
+  requires jdk.management;
+
+  exports org.intellij.plugins.xpathView.benchmark;
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.benchmark;
+
+import consulo.application.ReadAction;
+import consulo.language.psi.PsiFileFactory;
+import consulo.project.Project;
+import consulo.project.ProjectManager;
+import consulo.xml.language.XmlFileType;
+import consulo.xml.language.psi.XmlFile;
+
+/**
+ * Creates the PSI the benchmarks work on. Files are created in the default project and are not backed by a
+ * physical file.
+ */
+final class BenchmarkSupport {
+    private BenchmarkSupport() {
+    }
+
+    static Project getProject() {
+        return ProjectManager.getInstance().getDefaultProject();
+    }
+
+    static XmlFile createXmlFile(String text) {
+        return ReadAction.compute(() -> (XmlFile)PsiFileFactory.getInstance(getProject()).createFileFromText("benchmark.xml", XmlFileType.INSTANCE, text));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.benchmark;
+
+import consulo.application.ReadAction;
+import consulo.xml.language.psi.XmlDocument;
+import consulo.xml.language.psi.XmlFile;
+import org.intellij.plugins.xpathView.support.XPathSupport;
+import org.intellij.plugins.xpathView.util.Namespace;
+import org.jaxen.JaxenException;
+import org.jaxen.XPath;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates a generated workload over a generated document of each {@link CorpusGenerator.Shape}. Both only depend
+ * on the seed, so runs with the same parameters are comparable. Expressions that fail on the document (possible
+ * with XPath 2.0) are left out of the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CorpusBenchmark {
+    private static final int EXPRESSIONS = 50;
+    private static final int MAX_DEPTH = 3;
+
+    @Param({"balanced", "deep", "wide", "namespaced"})
+    public String shape;
+
+    @Param({"false", "true"})
+    public boolean xpath2;
+
+    @Param({"42"})
+    public long seed;
+
+    private final List<XPath> myXPaths = new ArrayList<XPath>();
+    private XmlDocument myDocument;
+
+    @Setup
+    public void setUp() {
+        final CorpusGenerator generator = new CorpusGenerator(CorpusGenerator.Shape.valueOf(shape), seed);
+        final XmlFile file = BenchmarkSupport.createXmlFile(generator.document(0));
+        final Collection<Namespace> namespaces = Namespace.fromMap(generator.getNamespaces());
+        myDocument = ReadAction.compute(() -> file.getDocument());
+
+        final ExpressionGenerator expressions = new ExpressionGenerator(generator.getShape(), xpath2, seed);
+        ReadAction.run(() -> {
+            for (String expression : expressions.workload(EXPRESSIONS, MAX_DEPTH)) {
+                try {
+                    final XPath xpath = XPathSupport.getInstance().createXPath(file, expression, namespaces, xpath2);
+                    xpath.evaluate(myDocument);
+                    myXPaths.add(xpath);
+                } catch (JaxenException e) {
+                    // a dynamic error
+                }
+            }
+        });
+    }
+
+    @Benchmark
+    public int evaluate() throws Exception {
+        return ReadAction.compute(() -> {
+            int results = 0;
+            for (XPath xpath : myXPaths) {
+                final Object result = xpath.evaluate(myDocument);
+                results += result instanceof List ? ((List<?>)result).size() : 1;
+            }
+            return results;
+        });
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates XML corpora of a given {@link Shape}. The documents only depend on the shape, the seed and their index,
+ * so a corpus can be regenerated instead of being checked in, and results of different runs are comparable.
+ * <p>
+ * Element names are <code>e0</code>, <code>e1</code>, ... and attribute names <code>a0</code>, <code>a1</code>, ...,
+ * so {@link ExpressionGenerator} can produce node tests that actually match.
+ */
+public final class CorpusGenerator {
+    static final String ROOT = "corpus";
+    static final String NAMESPACE_PREFIX = "ns";
+    static final String NAMESPACE_URI = "urn:example:corpus:";
+
+    private final Shape myShape;
+    private final long mySeed;
+
+    public CorpusGenerator(Shape shape, long seed) {
+        myShape = shape;
+        mySeed = seed;
+    }
+
+    public Shape getShape() {
+        return myShape;
+    }
+
+    /**
+     * Returns the namespaces that are declared on the root element of every document, by prefix.
+     */
+    public Map<String, String> getNamespaces() {
+        final Map<String, String> namespaces = new LinkedHashMap<String, String>();
+        for (int i = 1; i <= myShape.namespaces; i++) {
+            namespaces.put(NAMESPACE_PREFIX + i, NAMESPACE_URI + i);
+        }
+        return Collections.unmodifiableMap(namespaces);
+    }
+
+    /**
+     * Returns the document with the given index.
+     */
+    public String document(int index) {
+        final Random random = new Random(mySeed * 31 + index);
+        final StringBuilder sb = new StringBuilder(myShape.elements * 64);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append('<').append(ROOT).append(" id=\"d").append(index).append('"');
+        for (Map.Entry<String, String> entry : getNamespaces().entrySet()) {
+            sb.append(" xmlns:").append(entry.getKey()).append("=\"").append(entry.getValue()).append('"');
+        }
+        sb.append(">\n");
+
+        final int[] budget = {myShape.elements};
+        while (budget[0] > 0) {
+            appendElement(sb, random, 1, budget);
+        }
+        sb.append("</").append(ROOT).append(">\n");
+        return sb.toString();
+    }
+
+    /**
+     * Writes <code>files</code> documents to <code>dir</code> and returns their paths.
+     */
+    public List<Path> writeCorpus(Path dir, int files) throws IOException {
+        Files.createDirectories(dir);
+        final List<Path> paths = new ArrayList<Path>(files);
+        for (int i = 0; i < files; i++) {
+            final Path path = dir.resolve(String.format("doc%05d.xml", i));
+            Files.write(path, document(i).getBytes(StandardCharsets.UTF_8));
+            paths.add(path);
+        }
+        return paths;
+    }
+
+    /**
+     * Appends an element and, depth first, its descendants until either the depth or the element budget of the
+     * shape is exhausted.
+     */
+    private void appendElement(StringBuilder sb, Random random, int level, int[] budget) {
+        budget[0]--;
+
+        final String name = qualify(random, "e" + random.nextInt(myShape.names));
+        indent(sb, level).append('<').append(name);
+        final int attributes = random.nextInt(myShape.attributes + 1);
+        for (int i = 0; i < attributes; i++) {
+            sb.append(" a").append(i).append("=\"").append(value(random)).append('"');
+        }
+
+        if (level == myShape.depth || budget[0] == 0) {
+            sb.append('>').append(value(random)).append("</").append(name).append(">\n");
+            return;
+        }
+
+        sb.append(">\n");
+        if (random.nextInt(10) == 0) {
+            indent(sb, level + 1).append("<!-- ").append(value(random)).append(" -->\n");
+        }
+        for (int i = 0; i < myShape.width && budget[0] > 0; i++) {
+            appendElement(sb, random, level + 1, budget);
+        }
+        indent(sb, level).append("</").append(name).append(">\n");
+    }
+
+    private String qualify(Random random, String name) {
+        // about half of the elements are in one of the namespaces
+        if (myShape.namespaces > 0 && random.nextBoolean()) {
+            return NAMESPACE_PREFIX + (1 + random.nextInt(myShape.namespaces)) + ":" + name;
+        }
+        return name;
+    }
+
+    /**
+     * Returns a number or a token from a small vocabulary, so comparisons in generated expressions match some nodes.
+     */
+    static String value(Random random) {
+        switch (random.nextInt(3)) {
+            case 0:
+                return String.valueOf(random.nextInt(1000));
+            case 1:
+                return random.nextInt(100) + "." + random.nextInt(10);
+            default:
+                return "v" + random.nextInt(100);
+        }
+    }
+
+    private static StringBuilder indent(StringBuilder sb, int level) {
+        // deep documents would mostly consist of whitespace otherwise
+        for (int i = 0; i < Math.min(level, 16); i++) {
+            sb.append("  ");
+        }
+        return sb;
+    }
+
+    /**
+     * The parameters of a corpus. The total number of elements per document is limited by {@link #elements}, so
+     * deep and wide shapes still produce documents of a predictable size.
+     */
+    public static final class Shape {
+        /**
+         * The maximum nesting level below the root element.
+         */
+        public final int depth;
+        /**
+         * The number of children of an element that isn't a leaf.
+         */
+        public final int width;
+        /**
+         * The number of elements below the root element.
+         */
+        public final int elements;
+        /**
+         * The number of namespaces declared on the root element.
+         */
+        public final int namespaces;
+        /**
+         * The maximum number of attributes of an element.
+         */
+        public final int attributes;
+        /**
+         * The number of distinct element names.
+         */
+        public final int names;
+
+        public Shape(int depth, int width, int elements, int namespaces, int attributes, int names) {
+            if (depth < 1 || width < 1 || elements < 1 || namespaces < 0 || attributes < 0 || names < 1) {
+                throw new IllegalArgumentException("Invalid corpus shape: " + depth + "/" + width + "/" + elements + "/" + namespaces + "/" + attributes + "/" + names);
+            }
+            this.depth = depth;
+            this.width = width;
+            this.elements = elements;
+            this.namespaces = namespaces;
+            this.attributes = attributes;
+            this.names = names;
+        }
+
+        /**
+         * A document of moderate depth and width, similar to typical configuration files.
+         */
+        public static Shape balanced() {
+            return new Shape(8, 5, 10000, 2, 3, 20);
+        }
+
+        /**
+         * A document that is mostly one very long path.
+         */
+        public static Shape deep() {
+            return new Shape(1000, 2, 5000, 0, 2, 10);
+        }
+
+        /**
+         * A flat document with very long sibling lists.
+         */
+        public static Shape wide() {
+            return new Shape(2, 10000, 20000, 0, 3, 10);
+        }
+
+        /**
+         * A document whose elements are spread over many namespaces.
+         */
+        public static Shape namespaced() {
+            return new Shape(6, 8, 10000, 50, 3, 20);
+        }
+
+        /**
+         * Returns one of the predefined shapes by the name of its factory method.
+         */
+        public static Shape valueOf(String name) {
+            switch (name) {
+                case "balanced":
+                    return balanced();
+                case "deep":
+                    return deep();
+                case "wide":
+                    return wide();
+                case "namespaced":
+                    return namespaced();
+                default:
+                    throw new IllegalArgumentException("Unknown corpus shape: " + name);
+            }
+        }
+
+        public String toString() {
+            return "depth=" + depth + " width=" + width + " elements=" + elements + " namespaces=" + namespaces + " attributes=" + attributes + " names=" + names;
+        }
+    }
+}
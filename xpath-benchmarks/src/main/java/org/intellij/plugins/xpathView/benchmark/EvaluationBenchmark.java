@@ -0,0 +1,65 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.benchmark;
+
+import consulo.application.ReadAction;
+import consulo.xml.language.psi.XmlDocument;
+import consulo.xml.language.psi.XmlFile;
+import org.intellij.plugins.xpathView.support.XPathSupport;
+import org.jaxen.XPath;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates typical expressions over synthetic documents of increasing size, through {@link XPathSupport} like the
+ * Evaluate action does. The document doesn't change between invocations, so the per-document caches (document
+ * order, string-values) are warm; run with <code>-DxpathView.compile=false</code> to measure Jaxen's interpreter
+ * instead of the compiled location paths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class EvaluationBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int items;
+
+    @Param({
+        "//item[@category = 'c3']/name",
+        "/catalog/section/item[tags/tag = 't1']",
+        "count(//item[price > 50])",
+        "//item[last()]/@id",
+        "//section[item/ext:note]"
+    })
+    public String expression;
+
+    private XPath myXPath;
+    private XmlDocument myDocument;
+
+    @Setup
+    public void setUp() throws Exception {
+        final XmlFile file = BenchmarkSupport.createXmlFile(SyntheticData.document(items));
+        myDocument = ReadAction.compute(() -> file.getDocument());
+        myXPath = ReadAction.compute(() -> XPathSupport.getInstance().createXPath(file, expression));
+    }
+
+    @Benchmark
+    public Object evaluate() throws Exception {
+        return ReadAction.compute(() -> myXPath.evaluate(myDocument));
+    }
+}
@@ -0,0 +1,504 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.benchmark;
+
+import consulo.util.lang.Pair;
+import org.intellij.lang.xpath.context.ContextType;
+import org.intellij.lang.xpath.context.functions.DefaultFunctionContext;
+import org.intellij.lang.xpath.context.functions.Function;
+import org.intellij.lang.xpath.context.functions.FunctionDeclarationParsing;
+import org.intellij.lang.xpath.context.functions.Parameter;
+import org.intellij.lang.xpath.psi.XPath2SequenceType;
+import org.intellij.lang.xpath.psi.XPath2Type;
+import org.intellij.lang.xpath.psi.XPathType;
+
+import javax.xml.namespace.QName;
+import java.util.*;
+
+/**
+ * Generates random, well-typed expressions over the documents of a {@link CorpusGenerator}. The expressions are built
+ * from the axis and node test grammar and from the signatures of the {@link DefaultFunctionContext}: every argument
+ * is generated for the type of its parameter, so the expressions pass the type checks of the XPath inspections.
+ * <p>
+ * XPath 1.0 expressions never fail on a generated corpus. XPath 2.0 expressions are statically well-typed and avoid
+ * the common dynamic errors (sequences passed to singleton parameters, division by zero), but may still fail when
+ * e.g. the text of a node isn't numeric.
+ * <p>
+ * The expressions only depend on the shape, the version and the seed.
+ */
+public final class ExpressionGenerator {
+    // functions that depend on the environment or fail on arbitrary arguments; name/arity excludes a single overload
+    private static final Set<String> EXCLUDED = new HashSet<String>(Arrays.asList(
+        "document", "id", "idref", "lang", "error", "trace", "doc", "doc-available", "collection", "base-uri", "document-uri",
+        "static-base-uri", "default-collation", "implicit-timezone", "current-dateTime", "current-date", "current-time",
+        "resolve-uri", "resolve-QName", "QName", "in-scope-prefixes", "namespace-uri-for-prefix", "codepoints-to-string",
+        "exactly-one", "one-or-more", "zero-or-one", "replace", "tokenize", "normalize-unicode",
+        "matches/3", "compare/3", "contains/3", "starts-with/3", "ends-with/3", "substring-before/3", "substring-after/3",
+        "index-of/3", "distinct-values/2", "deep-equal/3", "max/2", "min/2"
+    ));
+
+    private static final String[] AXES = {
+        "child", "descendant", "descendant-or-self", "self", "parent", "ancestor", "ancestor-or-self", "following-sibling",
+        "preceding-sibling", "following", "preceding"
+    };
+    // once a path has visited large parts of the document, the other axes would make it quadratic
+    private static final String[] LOCAL_AXES = {
+        "child", "self", "parent"
+    };
+
+    enum Kind {
+        NODESET, STRING, NUMBER, INTEGER, BOOLEAN, ANY
+    }
+
+    private final CorpusGenerator.Shape myShape;
+    private final boolean myXPath2;
+    private final Random myRandom;
+    private final Map<Kind, List<Signature>> mySignatures;
+
+    private int myVariables;
+    // absolute paths in predicates would be evaluated once per context node
+    private int myPredicates;
+
+    public ExpressionGenerator(CorpusGenerator.Shape shape, boolean xpath2, long seed) {
+        myShape = shape;
+        myXPath2 = xpath2;
+        myRandom = new Random(seed);
+        mySignatures = collectSignatures(xpath2);
+    }
+
+    /**
+     * Returns the next expression. <code>maxDepth</code> limits the nesting of function calls, operators and
+     * predicates.
+     */
+    public String next(int maxDepth) {
+        myVariables = 0;
+        final int r = myRandom.nextInt(10);
+        if (r < 6) {
+            return generate(Kind.NODESET, maxDepth);
+        } else if (r < 8) {
+            return generate(Kind.BOOLEAN, maxDepth);
+        } else if (r < 9) {
+            return generate(Kind.NUMBER, maxDepth);
+        }
+        return generate(Kind.STRING, maxDepth);
+    }
+
+    /**
+     * Returns the next <code>count</code> expressions.
+     */
+    public List<String> workload(int count, int maxDepth) {
+        final List<String> expressions = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            expressions.add(next(maxDepth));
+        }
+        return expressions;
+    }
+
+    String generate(Kind kind, int depth) {
+        switch (kind) {
+            case NODESET:
+                return nodeSet(depth);
+            case STRING:
+                return string(depth);
+            case NUMBER:
+                return number(depth);
+            case INTEGER:
+                return integer(depth);
+            case BOOLEAN:
+                return bool(depth);
+            default:
+                return generate(Kind.values()[myRandom.nextInt(Kind.ANY.ordinal())], depth);
+        }
+    }
+
+    private String nodeSet(int depth) {
+        if (depth > 0) {
+            switch (myRandom.nextInt(12)) {
+                case 0:
+                    return nodeSet(depth - 1) + " | " + nodeSet(depth - 1);
+                case 1:
+                    return "(" + nodeSet(depth - 1) + ")" + predicate(depth - 1);
+                case 2:
+                    if (myXPath2) {
+                        final String v = "$v" + myVariables++;
+                        // parenthesized, so it can be an operand of a union
+                        return "(for " + v + " in " + path(depth - 1) + " return " + v + "/" + relativePath(depth - 1, 2, false) + ")";
+                    }
+                    break;
+                case 3:
+                    if (myXPath2) {
+                        return "(" + nodeSet(depth - 1) + (myRandom.nextBoolean() ? " intersect " : " except ") + nodeSet(depth - 1) + ")";
+                    }
+                    break;
+                case 4:
+                    final String call = call(Kind.NODESET, depth);
+                    if (call != null) {
+                        return call;
+                    }
+                    break;
+            }
+        }
+        return path(depth);
+    }
+
+    private String path(int depth) {
+        if (myPredicates > 0) {
+            return relativePath(depth, 3, false);
+        }
+        switch (myRandom.nextInt(4)) {
+            case 0:
+                return "/" + CorpusGenerator.ROOT + "/" + relativePath(depth, 3, false);
+            case 1:
+                return "/" + relativePath(depth, 3, false);
+            case 2:
+                return "//" + relativePath(depth, 2, true);
+            default:
+                return relativePath(depth, 3, false);
+        }
+    }
+
+    /**
+     * @param descendant whether the path follows a <code>//</code>, i.e. may start from every node of the document
+     */
+    private String relativePath(int depth, int maxSteps, boolean descendant) {
+        final StringBuilder sb = new StringBuilder();
+        final int steps = 1 + myRandom.nextInt(maxSteps);
+        for (int i = 0; i < steps; i++) {
+            final boolean last = i == steps - 1;
+            if (i > 0) {
+                final boolean separator = myRandom.nextInt(8) == 0;
+                sb.append(separator ? "//" : "/");
+                descendant |= separator;
+            }
+            if (last && myRandom.nextInt(6) == 0) {
+                sb.append('@').append(myRandom.nextInt(4) == 0 ? "*" : "a" + myRandom.nextInt(Math.max(myShape.attributes, 1)));
+                break;
+            }
+            if (myRandom.nextInt(3) == 0) {
+                final String axis = descendant ? LOCAL_AXES[myRandom.nextInt(LOCAL_AXES.length)] : AXES[myRandom.nextInt(AXES.length)];
+                sb.append(axis).append("::");
+                descendant |= !axis.equals("child") && !axis.equals("self") && !axis.equals("parent");
+            }
+            sb.append(nodeTest(last));
+            if (depth > 0 && myRandom.nextInt(3) == 0) {
+                sb.append(predicate(depth - 1));
+            }
+        }
+        return sb.toString();
+    }
+
+    private String nodeTest(boolean last) {
+        final int r = myRandom.nextInt(20);
+        if (r < 2) {
+            return "*";
+        } else if (r < 3) {
+            return "node()";
+        } else if (r < 4 && last) {
+            return "text()";
+        } else if (r < 5 && last) {
+            return "comment()";
+        } else if (r < 7 && myShape.namespaces > 0) {
+            return CorpusGenerator.NAMESPACE_PREFIX + (1 + myRandom.nextInt(myShape.namespaces)) + ":*";
+        }
+        final String name = "e" + myRandom.nextInt(myShape.names);
+        if (myShape.namespaces > 0 && myRandom.nextBoolean()) {
+            return CorpusGenerator.NAMESPACE_PREFIX + (1 + myRandom.nextInt(myShape.namespaces)) + ":" + name;
+        }
+        return name;
+    }
+
+    private String predicate(int depth) {
+        myPredicates++;
+        try {
+            return "[" + predicateExpression(depth) + "]";
+        } finally {
+            myPredicates--;
+        }
+    }
+
+    private String predicateExpression(int depth) {
+        switch (myRandom.nextInt(5)) {
+            case 0:
+                return String.valueOf(1 + myRandom.nextInt(Math.min(myShape.width, 10)));
+            case 1:
+                return myRandom.nextBoolean() ? "last()" : "position() < " + (1 + myRandom.nextInt(5));
+            case 2:
+                // the effective boolean value of a node-set
+                return relativePath(depth, 2, false);
+            default:
+                return bool(depth);
+        }
+    }
+
+    private String bool(int depth) {
+        if (depth > 0) {
+            switch (myRandom.nextInt(9)) {
+                case 0:
+                    return bool(depth - 1) + (myRandom.nextBoolean() ? " and " : " or ") + bool(depth - 1);
+                case 1:
+                    return "not(" + bool(depth - 1) + ")";
+                case 2:
+                    return number(depth - 1) + " " + pick("<", "<=", ">", ">=", "=", "!=") + " " + number(depth - 1);
+                case 3:
+                    return string(depth - 1) + " " + pick("=", "!=") + " " + string(depth - 1);
+                case 4:
+                    if (myXPath2) {
+                        final String v = "$v" + myVariables++;
+                        return "(" + pick("some ", "every ") + v + " in " + path(depth - 1) + " satisfies " + v + "/@a0 = " + literal() + ")";
+                    }
+                    break;
+                case 5:
+                case 6:
+                    final String call = call(Kind.BOOLEAN, depth);
+                    if (call != null) {
+                        return call;
+                    }
+                    break;
+            }
+        }
+        switch (myRandom.nextInt(3)) {
+            case 0:
+                return (myXPath2 ? "exists(" : "boolean(") + relativePath(0, 2, false) + ")";
+            case 1:
+                // existential comparison of a node-set
+                return relativePath(0, 2, false) + " = " + literal();
+            default:
+                return "@a" + myRandom.nextInt(Math.max(myShape.attributes, 1)) + " = " + literal();
+        }
+    }
+
+    private String number(int depth) {
+        if (depth > 0) {
+            switch (myRandom.nextInt(6)) {
+                case 0:
+                    // a literal divisor, XPath 2.0 fails on an integer division by zero
+                    return "(" + number(depth - 1) + " " + pick("div", "mod") + " " + (1 + myRandom.nextInt(9)) + ")";
+                case 1:
+                    return "(" + number(depth - 1) + " " + pick("+", "-", "*") + " " + number(depth - 1) + ")";
+                case 2:
+                case 3:
+                    final String call = call(myRandom.nextBoolean() ? Kind.NUMBER : Kind.INTEGER, depth);
+                    if (call != null) {
+                        return call;
+                    }
+                    break;
+            }
+        }
+        switch (myRandom.nextInt(3)) {
+            case 0:
+                return myRandom.nextInt(100) + "." + myRandom.nextInt(10);
+            case 1:
+                return "number(" + single(relativePath(0, 2, false)) + ")";
+            default:
+                return integer(0);
+        }
+    }
+
+    private String integer(int depth) {
+        if (depth > 0) {
+            final String call = call(Kind.INTEGER, depth);
+            if (call != null && myRandom.nextBoolean()) {
+                return call;
+            }
+        }
+        switch (myRandom.nextInt(3)) {
+            case 0:
+                return "count(" + path(0) + ")";
+            case 1:
+                return "string-length(" + string(0) + ")";
+            default:
+                return String.valueOf(myRandom.nextInt(100));
+        }
+    }
+
+    private String string(int depth) {
+        if (depth > 0 && myRandom.nextInt(3) > 0) {
+            final String call = call(Kind.STRING, depth);
+            if (call != null) {
+                return call;
+            }
+        }
+        switch (myRandom.nextInt(3)) {
+            case 0:
+                return literal();
+            case 1:
+                return "string(" + single(relativePath(0, 2, false)) + ")";
+            default:
+                return "name(" + single(path(0)) + ")";
+        }
+    }
+
+    /**
+     * Returns a call of a random function that returns <code>kind</code>, or <code>null</code> if there is none.
+     */
+    private String call(Kind kind, int depth) {
+        final List<Signature> signatures = mySignatures.get(kind);
+        if (signatures == null || signatures.isEmpty()) {
+            return null;
+        }
+        final Signature signature = signatures.get(myRandom.nextInt(signatures.size()));
+        final StringBuilder sb = new StringBuilder(signature.name).append('(');
+        for (int i = 0; i < signature.parameters.size(); i++) {
+            final Param parameter = signature.parameters.get(i);
+            final int count = parameter.vararg ? myRandom.nextInt(3) : 1;
+            for (int j = 0; j < count; j++) {
+                if (sb.charAt(sb.length() - 1) != '(') {
+                    sb.append(", ");
+                }
+                sb.append(argument(parameter, depth - 1));
+            }
+        }
+        return sb.append(')').toString();
+    }
+
+    private String argument(Param parameter, int depth) {
+        if (parameter.kind == Kind.NODESET) {
+            final String nodes = nodeSet(depth);
+            return parameter.sequence ? nodes : single(nodes);
+        }
+        if (parameter.kind == Kind.ANY && !parameter.sequence) {
+            // an atomic value: node-sets would have to be atomized to a single item
+            return generate(Kind.values()[1 + myRandom.nextInt(Kind.BOOLEAN.ordinal())], depth);
+        }
+        return generate(parameter.kind, depth);
+    }
+
+    /**
+     * Restricts a node-set to at most one node, for XPath 2.0 parameters that don't take sequences.
+     */
+    private String single(String nodes) {
+        return myXPath2 ? "(" + nodes + ")[1]" : nodes;
+    }
+
+    private String literal() {
+        return "'" + CorpusGenerator.value(myRandom) + "'";
+    }
+
+    private String pick(String... choices) {
+        return choices[myRandom.nextInt(choices.length)];
+    }
+
+    private static Map<Kind, List<Signature>> collectSignatures(boolean xpath2) {
+        final ContextType type = xpath2 ? ContextType.PLAIN_V2 : ContextType.PLAIN;
+        final Map<Pair<QName, Integer>, ? extends Function> functions = DefaultFunctionContext.getInstance(type).getFunctions();
+
+        // sorted, so the choice of functions doesn't depend on the iteration order of the map
+        final Map<String, Signature> sorted = new TreeMap<String, Signature>();
+        for (Map.Entry<Pair<QName, Integer>, ? extends Function> entry : functions.entrySet()) {
+            final String namespace = entry.getKey().first.getNamespaceURI();
+            if (namespace != null && namespace.length() > 0 && !FunctionDeclarationParsing.FUNCTION_NAMESPACE.equals(namespace)) {
+                // constructor functions would need a prefix for the schema namespace
+                continue;
+            }
+            final Function function = entry.getValue();
+            final String key = function.getName() + "/" + function.getParameters().length;
+            if (EXCLUDED.contains(function.getName()) || EXCLUDED.contains(key)) {
+                continue;
+            }
+            final Signature signature = Signature.create(function, xpath2);
+            if (signature != null) {
+                sorted.put(key, signature);
+            }
+        }
+
+        final Map<Kind, List<Signature>> signatures = new EnumMap<Kind, List<Signature>>(Kind.class);
+        for (Signature signature : sorted.values()) {
+            signatures.computeIfAbsent(signature.returnKind, k -> new ArrayList<Signature>()).add(signature);
+        }
+        return signatures;
+    }
+
+    /**
+     * Returns the kind of values of a type, or <code>null</code> if the generator can't produce them.
+     */
+    static Kind kindOf(XPathType type) {
+        if (type instanceof XPath2SequenceType) {
+            type = ((XPath2SequenceType)type).getType();
+        }
+        if (type == XPathType.NODESET || type == XPath2Type.NODE || type == XPath2Type.ELEMENT) {
+            return Kind.NODESET;
+        } else if (type == XPathType.STRING || type == XPath2Type.STRING) {
+            return Kind.STRING;
+        } else if (type == XPathType.BOOLEAN || type == XPath2Type.BOOLEAN) {
+            return Kind.BOOLEAN;
+        } else if (type == XPath2Type.INTEGER) {
+            return Kind.INTEGER;
+        } else if (type == XPathType.NUMBER || type == XPath2Type.NUMERIC || type == XPath2Type.DOUBLE || type == XPath2Type.DECIMAL) {
+            return Kind.NUMBER;
+        } else if (type == XPathType.ANY || type == XPath2Type.ITEM || type == XPath2Type.ANYATOMICTYPE) {
+            return Kind.ANY;
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether a type allows more than one item, or none.
+     */
+    static boolean isSequence(XPathType type, boolean xpath2) {
+        if (!(type instanceof XPath2SequenceType)) {
+            // XPath 1.0 converts node-sets implicitly, XPath 2.0 types without an occurrence indicator are single items
+            return !xpath2;
+        }
+        final String name = type.getName();
+        return name.endsWith("*") || name.startsWith("sequence of");
+    }
+
+    private static final class Param {
+        final Kind kind;
+        final boolean sequence;
+        final boolean vararg;
+
+        Param(Kind kind, boolean sequence, boolean vararg) {
+            this.kind = kind;
+            this.sequence = sequence;
+            this.vararg = vararg;
+        }
+    }
+
+    private static final class Signature {
+        final String name;
+        final Kind returnKind;
+        final List<Param> parameters;
+
+        private Signature(String name, Kind returnKind, List<Param> parameters) {
+            this.name = name;
+            this.returnKind = returnKind;
+            this.parameters = parameters;
+        }
+
+        static Signature create(Function function, boolean xpath2) {
+            final XPathType returnType = function.getReturnType();
+            final Kind returnKind = kindOf(returnType);
+            if (returnKind == null || returnKind == Kind.ANY) {
+                return null;
+            }
+            if (xpath2 && returnKind != Kind.NODESET && isSequence(returnType, true)) {
+                // an atomic sequence can't stand in for a single value
+                return null;
+            }
+
+            final List<Param> parameters = new ArrayList<Param>();
+            for (Parameter parameter : function.getParameters()) {
+                final Kind kind = kindOf(parameter.type);
+                if (kind == null || parameter.type.getName().endsWith("+")) {
+                    return null;
+                }
+                parameters.add(new Param(kind, isSequence(parameter.type, xpath2), parameter.kind == Parameter.Kind.VARARG));
+            }
+            return new Signature(function.getName(), returnKind, parameters);
+        }
+    }
+}
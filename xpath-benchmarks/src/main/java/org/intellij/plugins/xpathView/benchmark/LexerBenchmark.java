@@ -0,0 +1,66 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.benchmark;
+
+import consulo.language.lexer.Lexer;
+import org.intellij.lang.xpath.XPathLexer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenises long generated expressions with {@link XPathLexer} and with the generated lexer alone, to separate the
+ * cost of the look-ahead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LexerBenchmark {
+    @Param({"10", "100", "1000"})
+    public int terms;
+
+    @Param({"false", "true"})
+    public boolean xpath2;
+
+    private String myText;
+
+    @Setup
+    public void setUp() {
+        myText = SyntheticData.expression(terms, xpath2);
+    }
+
+    @Benchmark
+    public int lexer() {
+        return countTokens(XPathLexer.create(xpath2));
+    }
+
+    @Benchmark
+    public int baseLexer() {
+        return countTokens(XPathLexer.createBaseLexer(xpath2));
+    }
+
+    private int countTokens(Lexer lexer) {
+        lexer.start(myText);
+        int count = 0;
+        while (lexer.getTokenType() != null) {
+            count++;
+            lexer.advance();
+        }
+        return count;
+    }
+}
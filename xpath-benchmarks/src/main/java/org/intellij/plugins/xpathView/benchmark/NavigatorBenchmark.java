@@ -0,0 +1,103 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.benchmark;
+
+import consulo.application.ReadAction;
+import consulo.language.psi.util.PsiTreeUtil;
+import consulo.xml.language.psi.XmlDocument;
+import consulo.xml.language.psi.XmlFile;
+import consulo.xml.language.psi.XmlTag;
+import org.intellij.plugins.xpathView.support.jaxen.PsiDocumentNavigator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Iterates the axes of {@link PsiDocumentNavigator} over synthetic documents of increasing size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class NavigatorBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int items;
+
+    private PsiDocumentNavigator myNavigator;
+    private XmlDocument myDocument;
+    private XmlTag[] myTags;
+
+    @Setup
+    public void setUp() {
+        final XmlFile file = BenchmarkSupport.createXmlFile(SyntheticData.document(items));
+        myNavigator = new PsiDocumentNavigator(file);
+        myDocument = ReadAction.compute(() -> file.getDocument());
+        myTags = ReadAction.compute(() -> {
+            final Collection<XmlTag> tags = PsiTreeUtil.findChildrenOfType(file, XmlTag.class);
+            return tags.toArray(new XmlTag[tags.size()]);
+        });
+    }
+
+    @Benchmark
+    public int descendantAxis() throws Exception {
+        return ReadAction.compute(() -> count(myNavigator.getDescendantAxisIterator(myDocument)));
+    }
+
+    @Benchmark
+    public int childAxis() throws Exception {
+        return ReadAction.compute(() -> {
+            int count = 0;
+            for (XmlTag tag : myTags) {
+                count += count(myNavigator.getChildAxisIterator(tag));
+            }
+            return count;
+        });
+    }
+
+    @Benchmark
+    public int attributeAxis() throws Exception {
+        return ReadAction.compute(() -> {
+            int count = 0;
+            for (XmlTag tag : myTags) {
+                count += count(myNavigator.getAttributeAxisIterator(tag));
+            }
+            return count;
+        });
+    }
+
+    @Benchmark
+    public int parentAxis() throws Exception {
+        return ReadAction.compute(() -> {
+            int count = 0;
+            for (XmlTag tag : myTags) {
+                count += count(myNavigator.getParentAxisIterator(tag));
+            }
+            return count;
+        });
+    }
+
+    private static int count(Iterator<?> it) {
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.benchmark;
+
+import consulo.application.ReadAction;
+import consulo.language.ast.ASTNode;
+import org.intellij.lang.xpath.XPathFileType;
+import org.intellij.lang.xpath.psi.impl.XPathChangeUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses long generated expressions with <code>XPathParser</code> and <code>XPath2Parser</code>, including the
+ * creation of the file and its AST.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ParserBenchmark {
+    @Param({"10", "100", "1000"})
+    public int terms;
+
+    @Param({"false", "true"})
+    public boolean xpath2;
+
+    private String myText;
+
+    @Setup
+    public void setUp() {
+        myText = SyntheticData.expression(terms, xpath2);
+    }
+
+    @Benchmark
+    public ASTNode parse() {
+        return ReadAction.compute(() -> {
+            // the file is parsed lazily, when its children are first accessed
+            return XPathChangeUtil.createXPathFile(BenchmarkSupport.getProject(), myText, xpath2 ? XPathFileType.XPATH2 : XPathFileType.XPATH)
+                .getNode().getLastChildNode();
+        });
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.benchmark;
+
+import consulo.annotation.access.RequiredReadAction;
+
+/**
+ * A unit of work measured by {@link XPathRegressionSuite}. {@link #run()} is called repeatedly in a read action on
+ * the same thread, so the wall time and the bytes it allocates can be attributed to it.
+ */
+abstract class RegressionScenario {
+    private final String myName;
+
+    RegressionScenario(String name) {
+        myName = name;
+    }
+
+    String getName() {
+        return myName;
+    }
+
+    /**
+     * Creates the fixtures. Not part of the measurement.
+     */
+    void setUp() throws Exception {
+    }
+
+    /**
+     * Runs the measured work once. The result is kept until the measurement is finished, so the work can't be
+     * optimized away.
+     */
+    @RequiredReadAction
+    abstract Object run() throws Exception;
+
+    @Override
+    public String toString() {
+        return myName;
+    }
+}
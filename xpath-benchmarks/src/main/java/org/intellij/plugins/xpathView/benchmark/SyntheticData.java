@@ -0,0 +1,113 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.benchmark;
+
+/**
+ * Generates the documents and expressions the benchmarks run on. The output only depends on the size arguments, so
+ * results of different runs are comparable. Randomized documents of other shapes and random expressions over them
+ * are produced by {@link CorpusGenerator} and {@link ExpressionGenerator}.
+ */
+public final class SyntheticData {
+    static final int ITEMS_PER_SECTION = 50;
+    static final int CATEGORIES = 10;
+
+    private SyntheticData() {
+    }
+
+    /**
+     * Returns a catalog of <code>items</code> items in sections of {@link #ITEMS_PER_SECTION}. Every item has
+     * attributes, text children, a list of tags and an element in another namespace.
+     */
+    public static String document(int items) {
+        final StringBuilder sb = new StringBuilder(items * 200);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<catalog xmlns:ext=\"urn:example:ext\">\n");
+        for (int i = 0; i < items; i++) {
+            if (i % ITEMS_PER_SECTION == 0) {
+                if (i > 0) {
+                    sb.append("  </section>\n");
+                }
+                sb.append("  <section id=\"s").append(i / ITEMS_PER_SECTION).append("\">\n");
+            }
+            sb.append("    <item id=\"i").append(i).append("\" category=\"c").append(i % CATEGORIES).append("\">\n");
+            sb.append("      <name>Item ").append(i).append("</name>\n");
+            sb.append("      <price>").append(i % 100).append('.').append(i % 7).append("9</price>\n");
+            sb.append("      <tags><tag>t").append(i % 3).append("</tag><tag>t").append(i % 5).append("</tag></tags>\n");
+            sb.append("      <!-- item ").append(i).append(" -->\n");
+            sb.append("      <ext:note>Note for item ").append(i).append("</ext:note>\n");
+            sb.append("    </item>\n");
+        }
+        if (items > 0) {
+            sb.append("  </section>\n");
+        }
+        sb.append("</catalog>\n");
+        return sb.toString();
+    }
+
+    /**
+     * Returns an expression of <code>terms</code> location paths with predicates, combined by <code>|</code>. The
+     * XPath 2.0 variant also uses <code>for</code>, ranges, quantifiers and conditionals.
+     */
+    public static String expression(int terms, boolean xpath2) {
+        final StringBuilder sb = new StringBuilder(terms * 80);
+        for (int i = 0; i < terms; i++) {
+            if (i > 0) {
+                sb.append(xpath2 ? ",\n  " : " |\n  ");
+            }
+            if (xpath2) {
+                switch (i % 3) {
+                    case 0:
+                        sb.append("for $x in 1 to ").append(i + 1).append(" return //item[@id = concat('i', $x)]/name");
+                        break;
+                    case 1:
+                        sb.append("if (some $t in //tag satisfies $t eq 't").append(i % 5).append("') then //section[").append(i % 7 + 1).append("] else ()");
+                        break;
+                    default:
+                        sb.append("(//item[price gt ").append(i % 100).append("] except //item[@category = 'c").append(i % CATEGORIES).append("'])");
+                }
+            } else {
+                sb.append("/catalog/section[@id = 's").append(i % 20).append("']/item[@category = 'c").append(i % CATEGORIES)
+                  .append("' and price > ").append(i % 100).append("]/name/text()");
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns an expression nested <code>depth</code> levels deep, alternating parentheses, function calls and
+     * predicates. It is valid XPath 1.0 and 2.0.
+     */
+    public static String nestedExpression(int depth) {
+        final StringBuilder sb = new StringBuilder(depth * 16);
+        for (int i = 0; i < depth; i++) {
+            switch (i % 3) {
+                case 0:
+                    sb.append('(');
+                    break;
+                case 1:
+                    sb.append("string(");
+                    break;
+                default:
+                    sb.append("//item[");
+            }
+        }
+        sb.append('1');
+        for (int i = depth - 1; i >= 0; i--) {
+            sb.append(i % 3 == 2 ? ']' : ')');
+        }
+        return sb.toString();
+    }
+}
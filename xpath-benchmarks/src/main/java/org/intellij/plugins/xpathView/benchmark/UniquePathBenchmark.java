@@ -0,0 +1,67 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.benchmark;
+
+import consulo.application.ReadAction;
+import consulo.language.psi.util.PsiTreeUtil;
+import consulo.xml.language.psi.XmlFile;
+import consulo.xml.language.psi.XmlTag;
+import org.intellij.plugins.xpathView.XPathExpressionGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates the unique paths of a sample of the elements of synthetic documents, like the "Show unique XPath" action.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UniquePathBenchmark {
+    private static final int SAMPLE_SIZE = 100;
+
+    @Param({"100", "1000", "10000"})
+    public int items;
+
+    private XmlTag[] mySample;
+
+    @Setup
+    public void setUp() {
+        final XmlFile file = BenchmarkSupport.createXmlFile(SyntheticData.document(items));
+        mySample = ReadAction.compute(() -> {
+            final XmlTag[] tags = PsiTreeUtil.findChildrenOfType(file, XmlTag.class).toArray(new XmlTag[0]);
+            // evenly spread over the document, so deep and late elements are included
+            final XmlTag[] sample = new XmlTag[Math.min(SAMPLE_SIZE, tags.length)];
+            for (int i = 0; i < sample.length; i++) {
+                sample[i] = tags[(int)((long)i * tags.length / sample.length)];
+            }
+            return sample;
+        });
+    }
+
+    @Benchmark
+    public int uniquePath() {
+        return ReadAction.compute(() -> {
+            int length = 0;
+            for (XmlTag tag : mySample) {
+                length += XPathExpressionGenerator.getUniquePath(tag, null).length();
+            }
+            return length;
+        });
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.benchmark;
+
+import consulo.application.progress.EmptyProgressIndicator;
+import consulo.application.progress.ProgressManager;
+import consulo.util.io.FileUtil;
+import consulo.virtualFileSystem.LocalFileSystem;
+import consulo.virtualFileSystem.VirtualFile;
+import org.intellij.plugins.xpathView.HistoryElement;
+import org.intellij.plugins.xpathView.search.SearchScope;
+import org.intellij.plugins.xpathView.search.XPathUsageSearcher;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs Find by XPath with {@link XPathUsageSearcher} over a directory of many generated files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class UsageSearcherBenchmark {
+    private static final int ITEMS_PER_FILE = 50;
+
+    @Param({"10", "100", "1000"})
+    public int files;
+
+    @Param({"false", "true"})
+    public boolean matchRecursively;
+
+    private Path myDir;
+    private SearchScope myScope;
+    private HistoryElement myExpression;
+
+    @Setup
+    public void setUp() throws IOException {
+        myDir = Files.createTempDirectory("xpath-benchmark");
+        final String text = SyntheticData.document(ITEMS_PER_FILE);
+        for (int i = 0; i < files; i++) {
+            Files.write(myDir.resolve("file" + i + ".xml"), text.getBytes(StandardCharsets.UTF_8));
+        }
+        final VirtualFile dir = LocalFileSystem.getInstance().refreshAndFindFileByPath(myDir.toString().replace('\\', '/'));
+        if (dir == null) {
+            throw new IOException("Cannot find " + myDir);
+        }
+        dir.refresh(false, true);
+
+        myScope = new SearchScope(SearchScope.ScopeType.DIRECTORY, dir.getPath(), true, null, null);
+        // matching recursively takes a pattern that is matched against every element
+        final String expression = matchRecursively ? "item[@category = 'c3']/name" : "//item[@category = 'c3']/name";
+        myExpression = new HistoryElement(expression, Collections.emptyList(), Collections.emptyList());
+    }
+
+    @TearDown
+    public void tearDown() {
+        FileUtil.delete(myDir.toFile());
+    }
+
+    @Benchmark
+    public int search() {
+        final int[] count = new int[1];
+        // the searcher reports its progress to the current indicator
+        ProgressManager.getInstance().runProcess(() -> {
+            new XPathUsageSearcher(BenchmarkSupport.getProject(), myExpression, myScope, matchRecursively).generate(usage -> {
+                count[0]++;
+                return true;
+            });
+        }, new EmptyProgressIndicator());
+        return count[0];
+    }
+}
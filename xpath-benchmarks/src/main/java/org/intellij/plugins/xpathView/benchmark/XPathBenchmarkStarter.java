@@ -0,0 +1,82 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.benchmark;
+
+import consulo.annotation.component.ExtensionImpl;
+import consulo.ide.impl.idea.openapi.application.ApplicationStarter;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks of this package from the command line of a headless application:
+ * <pre>
+ * xpath-benchmark [--json results.json] [regexp...]
+ * </pre>
+ * Only the benchmarks whose names match one of the regular expressions are run, all of them by default. Apart from
+ * the throughput, the allocation rate is reported by JMH's GC profiler.
+ * <p>
+ * The benchmarks need the PSI of the running application, so they are run in this JVM instead of forked ones.
+ */
+@ExtensionImpl
+public class XPathBenchmarkStarter implements ApplicationStarter {
+    @Override
+    public String getCommandName() {
+        return "xpath-benchmark";
+    }
+
+    @Override
+    public boolean isHeadless() {
+        return true;
+    }
+
+    @Override
+    public void premain(String[] args) {
+    }
+
+    @Override
+    public void main(String[] args) {
+        final ChainedOptionsBuilder options = new OptionsBuilder()
+            .forks(0)
+            .addProfiler(GCProfiler.class)
+            .shouldFailOnError(true);
+
+        boolean included = false;
+        // args[0] is the command name
+        for (int i = 1; i < args.length; i++) {
+            if ("--json".equals(args[i]) && i + 1 < args.length) {
+                options.resultFormat(ResultFormatType.JSON).result(args[++i]);
+            } else {
+                options.include(args[i]);
+                included = true;
+            }
+        }
+        if (!included) {
+            options.include(XPathBenchmarkStarter.class.getPackage().getName() + "\\..*Benchmark");
+        }
+
+        try {
+            new Runner(options.build()).run();
+            System.exit(0);
+        } catch (RunnerException e) {
+            System.err.println("xpath-benchmark: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
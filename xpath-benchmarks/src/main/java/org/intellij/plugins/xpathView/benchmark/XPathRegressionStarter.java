@@ -0,0 +1,159 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.benchmark;
+
+import consulo.annotation.component.ExtensionImpl;
+import consulo.ide.impl.idea.openapi.application.ApplicationStarter;
+
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the performance regression suite from the command line of a headless application:
+ * <pre>
+ * xpath-regression [--baselines baselines.properties] [--tolerance 0.2] [--record] [regexp...]
+ * </pre>
+ * Only the scenarios whose names match one of the regular expressions are run, all of them by default. With
+ * <code>--record</code>, the measured values are written to the baselines file instead of being checked; record them
+ * on the machine that runs the check, as wall times of different machines are not comparable.
+ * <p>
+ * Without <code>--baselines</code>, <code>xpath-regression-baselines.properties</code> in the working directory is
+ * used. No baselines are shipped with the suite, so the first run on a machine must be a <code>--record</code> run.
+ * <p>
+ * The check is opt-in: the module is not part of the shipped plugin and no build step runs it. Build the plugin with
+ * the <code>xpath-regression</code> Maven profile to include it, then launch the command from the resulting
+ * installation, see README.md.
+ * <p>
+ * The exit code is 0 if all scenarios are within their budgets, 1 if any exceeds its time or allocation budget or
+ * has no baseline, and 2 if the arguments are invalid, the baselines file doesn't exist or the run failed.
+ *
+ * @see XPathRegressionSuite
+ */
+@ExtensionImpl
+public class XPathRegressionStarter implements ApplicationStarter {
+    private static final String USAGE = "Usage: xpath-regression [--baselines baselines.properties] [--tolerance 0.2] [--record] [regexp...]";
+    private static final String DEFAULT_BASELINES = "xpath-regression-baselines.properties";
+    private static final double DEFAULT_TOLERANCE = 0.2;
+
+    @Override
+    public String getCommandName() {
+        return "xpath-regression";
+    }
+
+    @Override
+    public boolean isHeadless() {
+        return true;
+    }
+
+    @Override
+    public void premain(String[] args) {
+    }
+
+    @Override
+    public void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    private static int run(String[] args) {
+        Path baselinesFile = Paths.get(DEFAULT_BASELINES);
+        double tolerance = DEFAULT_TOLERANCE;
+        boolean record = false;
+        Pattern filter = null;
+
+        // args[0] is the command name
+        for (int i = 1; i < args.length; i++) {
+            final String arg = args[i];
+            if ("--baselines".equals(arg) && i + 1 < args.length) {
+                baselinesFile = Paths.get(args[++i]);
+            } else if ("--tolerance".equals(arg) && i + 1 < args.length) {
+                try {
+                    tolerance = Double.parseDouble(args[++i]);
+                } catch (NumberFormatException e) {
+                    return usage("Invalid tolerance: " + args[i]);
+                }
+            } else if ("--record".equals(arg)) {
+                record = true;
+            } else if (arg.startsWith("--")) {
+                return usage("Unknown option: " + arg);
+            } else {
+                filter = Pattern.compile(filter != null ? filter.pattern() + "|" + arg : arg);
+            }
+        }
+
+        try {
+            final Properties baselines = new Properties();
+            if (Files.exists(baselinesFile)) {
+                try (Reader reader = Files.newBufferedReader(baselinesFile, StandardCharsets.UTF_8)) {
+                    baselines.load(reader);
+                }
+            } else if (!record) {
+                System.err.println("xpath-regression: no baselines in " + baselinesFile + ", run with --record first");
+                return 2;
+            }
+
+            final XPathRegressionSuite suite = new XPathRegressionSuite();
+            int failures = 0;
+            for (RegressionScenario scenario : XPathRegressionSuite.createScenarios()) {
+                if (filter != null && !filter.matcher(scenario.getName()).find()) {
+                    continue;
+                }
+                final XPathRegressionSuite.Result result = suite.measure(scenario);
+                if (record) {
+                    XPathRegressionSuite.record(result, baselines);
+                    System.out.println(result + " [recorded]");
+                    continue;
+                }
+
+                final List<String> violations = XPathRegressionSuite.check(result, baselines, tolerance);
+                if (violations == null) {
+                    System.out.println(result + " [NO BASELINE]");
+                    failures++;
+                } else if (violations.isEmpty()) {
+                    System.out.println(result + " [ok]");
+                } else {
+                    System.out.println(result + " [REGRESSION] " + String.join(", ", violations));
+                    failures++;
+                }
+            }
+
+            if (record) {
+                try (Writer writer = Files.newBufferedWriter(baselinesFile, StandardCharsets.UTF_8)) {
+                    baselines.store(writer, "XPath performance baselines, see XPathRegressionStarter");
+                }
+                return 0;
+            }
+            return failures > 0 ? 1 : 0;
+        } catch (Exception e) {
+            System.err.println("xpath-regression: " + e.getMessage());
+            return 2;
+        }
+    }
+
+    private static int usage(String message) {
+        if (message != null) {
+            System.err.println(message);
+        }
+        System.err.println(USAGE);
+        return 2;
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.benchmark;
+
+import consulo.annotation.access.RequiredReadAction;
+import consulo.application.ReadAction;
+import consulo.language.editor.inspection.InspectionToolState;
+import consulo.language.editor.inspection.LocalInspectionToolSession;
+import consulo.language.editor.inspection.ProblemsHolder;
+import consulo.language.editor.inspection.scheme.InspectionManager;
+import consulo.language.psi.PsiElement;
+import consulo.language.psi.PsiElementVisitor;
+import consulo.language.psi.PsiRecursiveElementWalkingVisitor;
+import consulo.language.psi.util.PsiTreeUtil;
+import consulo.xml.language.psi.XmlDocument;
+import consulo.xml.language.psi.XmlFile;
+import org.intellij.lang.xpath.XPathFile;
+import org.intellij.lang.xpath.XPathFileType;
+import org.intellij.lang.xpath.completion.CompletionLists;
+import org.intellij.lang.xpath.psi.XPathNodeTest;
+import org.intellij.lang.xpath.psi.impl.XPathChangeUtil;
+import org.intellij.lang.xpath.validation.inspections.*;
+import org.intellij.plugins.xpathView.support.XPathSupport;
+import org.intellij.plugins.xpathView.util.Namespace;
+import org.jaxen.XPath;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Measures the wall time and the allocated bytes of parsing, highlighting, completion and evaluation on large
+ * generated fixtures, and compares them to recorded baselines.
+ * <p>
+ * Every scenario is run {@link #WARMUP_ITERATIONS} times to warm up the JIT and the caches, then
+ * {@link #ITERATIONS} times for the measurement. The median of the measured runs is compared to the baseline, so a
+ * single GC pause doesn't fail the suite. Allocations are counted per thread and are much more stable than the wall
+ * time, which makes them the better signal for small regressions.
+ */
+final class XPathRegressionSuite {
+    static final int WARMUP_ITERATIONS = 5;
+    static final int ITERATIONS = 11;
+
+    // wall time differences below this are noise, whatever the tolerance
+    private static final long MIN_TIME_SLACK_MICROS = 2000;
+    private static final long MIN_BYTES_SLACK = 64 * 1024;
+
+    private static final String TIME_SUFFIX = ".time.micros";
+    private static final String BYTES_SUFFIX = ".allocated.bytes";
+
+    private static final int NESTING_DEPTH = 200;
+    private static final int LONG_EXPRESSION_TERMS = 1000;
+    private static final int FRAGMENTS = 1000;
+    private static final int DOCUMENT_ITEMS = 20000;
+    private static final int WORKLOAD = 20;
+    private static final long SEED = 42;
+
+    private final com.sun.management.ThreadMXBean myThreads;
+    private Object myResult;
+
+    XPathRegressionSuite() {
+        final java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean)threads).isThreadAllocatedMemorySupported()) {
+            myThreads = (com.sun.management.ThreadMXBean)threads;
+            myThreads.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            myThreads = null;
+        }
+    }
+
+    static List<RegressionScenario> createScenarios() {
+        final String nested = SyntheticData.nestedExpression(NESTING_DEPTH);
+        final String longExpression = SyntheticData.expression(LONG_EXPRESSION_TERMS, false);
+
+        final List<RegressionScenario> scenarios = new ArrayList<RegressionScenario>();
+        scenarios.add(new ParseScenario("parse.nested", nested, false));
+        scenarios.add(new ParseScenario("parse.nested.xpath2", nested, true));
+        scenarios.add(new ParseScenario("parse.long", longExpression, false));
+        scenarios.add(new ParseScenario("parse.long.xpath2", SyntheticData.expression(LONG_EXPRESSION_TERMS, true), true));
+        scenarios.add(new HighlightScenario("highlight.nested", Collections.singletonList(nested), false));
+        scenarios.add(new HighlightScenario("highlight.long", Collections.singletonList(longExpression), false));
+        scenarios.add(new HighlightScenario("highlight.fragments", Collections.nCopies(FRAGMENTS, SyntheticData.expression(2, false)), false));
+        scenarios.add(new HighlightScenario("highlight.generated.xpath2",
+                                            new ExpressionGenerator(CorpusGenerator.Shape.namespaced(), true, SEED).workload(FRAGMENTS, 4), true));
+        scenarios.add(new CompletionScenario("complete.long", SyntheticData.expression(LONG_EXPRESSION_TERMS / 5, false)));
+        scenarios.add(new EvaluationScenario("evaluate.document.path", "//item[tags/tag = 't1']/name"));
+        scenarios.add(new EvaluationScenario("evaluate.document.count", "count(//section[item/ext:note])"));
+        for (String shape : new String[]{"deep", "wide", "namespaced"}) {
+            scenarios.add(new WorkloadScenario("evaluate.corpus." + shape, CorpusGenerator.Shape.valueOf(shape)));
+        }
+        return scenarios;
+    }
+
+    /**
+     * Sets up and measures a scenario.
+     */
+    Result measure(RegressionScenario scenario) throws Exception {
+        scenario.setUp();
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            runOnce(scenario);
+        }
+
+        final long[] times = new long[ITERATIONS];
+        final long[] bytes = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            final long[] sample = runOnce(scenario);
+            times[i] = sample[0];
+            bytes[i] = sample[1];
+        }
+        myResult = null;
+        return new Result(scenario.getName(), median(times) / 1000, myThreads != null ? median(bytes) : -1);
+    }
+
+    private long[] runOnce(RegressionScenario scenario) throws Exception {
+        return ReadAction.compute(() -> {
+            final long bytes = allocatedBytes();
+            final long start = System.nanoTime();
+            final Object result = scenario.run();
+            final long time = System.nanoTime() - start;
+            final long allocated = allocatedBytes() - bytes;
+            myResult = result;
+            return new long[]{time, allocated};
+        });
+    }
+
+    private long allocatedBytes() {
+        return myThreads != null ? myThreads.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    private static long median(long[] values) {
+        final long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    /**
+     * Compares a result to its baseline and returns the budgets it exceeds, an empty list if it is within the
+     * budgets, or <code>null</code> if there is no baseline for it.
+     *
+     * @param tolerance the allowed relative increase, e.g. <code>0.2</code> for 20%
+     */
+    static List<String> check(Result result, Properties baselines, double tolerance) {
+        final String time = baselines.getProperty(result.name + TIME_SUFFIX);
+        final String bytes = baselines.getProperty(result.name + BYTES_SUFFIX);
+        if (time == null && bytes == null) {
+            return null;
+        }
+
+        final List<String> violations = new ArrayList<String>(2);
+        if (time != null) {
+            final long baseline = Long.parseLong(time.trim());
+            final long budget = Math.max((long)(baseline * (1 + tolerance)), baseline + MIN_TIME_SLACK_MICROS);
+            if (result.timeMicros > budget) {
+                violations.add("time " + result.timeMicros + "us > " + budget + "us (baseline " + baseline + "us)");
+            }
+        }
+        if (bytes != null && result.allocatedBytes >= 0) {
+            final long baseline = Long.parseLong(bytes.trim());
+            final long budget = Math.max((long)(baseline * (1 + tolerance)), baseline + MIN_BYTES_SLACK);
+            if (result.allocatedBytes > budget) {
+                violations.add("allocated " + result.allocatedBytes + " bytes > " + budget + " (baseline " + baseline + ")");
+            }
+        }
+        return violations;
+    }
+
+    /**
+     * Stores a result as the new baseline.
+     */
+    static void record(Result result, Properties baselines) {
+        baselines.setProperty(result.name + TIME_SUFFIX, String.valueOf(result.timeMicros));
+        if (result.allocatedBytes >= 0) {
+            baselines.setProperty(result.name + BYTES_SUFFIX, String.valueOf(result.allocatedBytes));
+        }
+    }
+
+    static final class Result {
+        public final String name;
+        public final long timeMicros;
+        /**
+         * <code>-1</code> if the JVM can't count allocations.
+         */
+        public final long allocatedBytes;
+
+        Result(String name, long timeMicros, long allocatedBytes) {
+            this.name = name;
+            this.timeMicros = timeMicros;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        public String toString() {
+            return String.format("%s: time=%dus allocated=%d", name, timeMicros, allocatedBytes);
+        }
+    }
+
+    private static XPathFile createXPathFile(String text, boolean xpath2) {
+        return XPathChangeUtil.createXPathFile(BenchmarkSupport.getProject(), text, xpath2 ? XPathFileType.XPATH2 : XPathFileType.XPATH);
+    }
+
+    /**
+     * Creates and parses a file, like {@link ParserBenchmark}.
+     */
+    private static class ParseScenario extends RegressionScenario {
+        private final String myText;
+        private final boolean myXPath2;
+
+        ParseScenario(String name, String text, boolean xpath2) {
+            super(name);
+            myText = text;
+            myXPath2 = xpath2;
+        }
+
+        @Override
+        Object run() {
+            // the file is parsed lazily, when its children are first accessed
+            return createXPathFile(myText, myXPath2).getNode().getLastChildNode();
+        }
+    }
+
+    /**
+     * Runs all XPath inspections over every element of a file per text, like the highlighting pass does for each
+     * XPath fragment of an editor.
+     */
+    private static class HighlightScenario extends RegressionScenario {
+        private final List<String> myTexts;
+        private final boolean myXPath2;
+
+        private final List<XPathInspection<?>> myTools = Arrays.asList(
+            new CheckNodeTest(),
+            new HardwiredNamespacePrefix(),
+            new ImplicitTypeConversion(),
+            new IndexZeroPredicate(),
+            new RedundantTypeConversion()
+        );
+        private final List<Object> myStates = new ArrayList<Object>();
+        private final List<XPathFile> myFiles = new ArrayList<XPathFile>();
+
+        HighlightScenario(String name, List<String> texts, boolean xpath2) {
+            super(name);
+            myTexts = texts;
+            myXPath2 = xpath2;
+        }
+
+        @Override
+        void setUp() {
+            for (XPathInspection<?> tool : myTools) {
+                final InspectionToolState<?> state = tool.createStateProvider();
+                final Object o = state != null ? state.getState() : null;
+                myStates.add(o != null ? o : new Object());
+            }
+            ReadAction.run(() -> {
+                for (String text : myTexts) {
+                    final XPathFile file = createXPathFile(text, myXPath2);
+                    file.getNode().getLastChildNode();
+                    myFiles.add(file);
+                }
+            });
+        }
+
+        @Override
+        @RequiredReadAction
+        Object run() {
+            int problems = 0;
+            for (XPathFile file : myFiles) {
+                final ProblemsHolder holder = new ProblemsHolder(InspectionManager.getInstance(file.getProject()), file, true);
+                final LocalInspectionToolSession session = new LocalInspectionToolSession(file, 0, file.getTextLength());
+
+                final List<PsiElementVisitor> visitors = new ArrayList<PsiElementVisitor>(myTools.size());
+                for (int i = 0; i < myTools.size(); i++) {
+                    visitors.add(myTools.get(i).buildVisitor(holder, true, session, myStates.get(i)));
+                }
+                file.accept(new PsiRecursiveElementWalkingVisitor() {
+                    @Override
+                    public void visitElement(PsiElement element) {
+                        for (PsiElementVisitor visitor : visitors) {
+                            element.accept(visitor);
+                        }
+                        super.visitElement(element);
+                    }
+                });
+                problems += holder.getResultCount();
+            }
+            return problems;
+        }
+    }
+
+    /**
+     * Computes the completion variants for every node test of a long expression.
+     */
+    private static class CompletionScenario extends RegressionScenario {
+        private final String myText;
+        private Collection<XPathNodeTest> myNodeTests;
+
+        CompletionScenario(String name, String text) {
+            super(name);
+            myText = text;
+        }
+
+        @Override
+        void setUp() {
+            myNodeTests = ReadAction.compute(() -> PsiTreeUtil.collectElementsOfType(createXPathFile(myText, false), XPathNodeTest.class));
+        }
+
+        @Override
+        @RequiredReadAction
+        Object run() {
+            int variants = 0;
+            for (XPathNodeTest nodeTest : myNodeTests) {
+                variants += CompletionLists.getNodeTestCompletions(nodeTest).size();
+                variants += CompletionLists.getFunctionCompletions(nodeTest).size();
+            }
+            return variants;
+        }
+    }
+
+    /**
+     * Evaluates an expression on a huge document through {@link XPathSupport}, like {@link EvaluationBenchmark}.
+     */
+    private static class EvaluationScenario extends RegressionScenario {
+        private final String myExpression;
+        private XmlDocument myDocument;
+        private XPath myXPath;
+
+        EvaluationScenario(String name, String expression) {
+            super(name);
+            myExpression = expression;
+        }
+
+        @Override
+        void setUp() throws Exception {
+            final XmlFile file = BenchmarkSupport.createXmlFile(SyntheticData.document(DOCUMENT_ITEMS));
+            myDocument = ReadAction.compute(() -> file.getDocument());
+            myXPath = ReadAction.compute(() -> XPathSupport.getInstance().createXPath(file, myExpression));
+        }
+
+        @Override
+        Object run() throws Exception {
+            return myXPath.evaluate(myDocument);
+        }
+    }
+
+    /**
+     * Evaluates a generated XPath 1.0 workload on a generated document, see {@link CorpusBenchmark}.
+     */
+    private static class WorkloadScenario extends RegressionScenario {
+        private final CorpusGenerator.Shape myShape;
+        private final List<XPath> myXPaths = new ArrayList<XPath>();
+        private XmlDocument myDocument;
+
+        WorkloadScenario(String name, CorpusGenerator.Shape shape) {
+            super(name);
+            myShape = shape;
+        }
+
+        @Override
+        void setUp() throws Exception {
+            final CorpusGenerator generator = new CorpusGenerator(myShape, SEED);
+            final XmlFile file = BenchmarkSupport.createXmlFile(generator.document(0));
+            final Collection<Namespace> namespaces = Namespace.fromMap(generator.getNamespaces());
+            myDocument = ReadAction.compute(() -> file.getDocument());
+            for (String expression : new ExpressionGenerator(myShape, false, SEED).workload(WORKLOAD, 3)) {
+                myXPaths.add(ReadAction.compute(() -> XPathSupport.getInstance().createXPath(file, expression, namespaces)));
+            }
+        }
+
+        @Override
+        Object run() throws Exception {
+            final List<Object> results = new ArrayList<Object>(myXPaths.size());
+            for (XPath xpath : myXPaths) {
+                results.add(xpath.evaluate(myDocument));
+            }
+            return results;
+        }
+    }
+}
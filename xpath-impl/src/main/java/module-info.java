@@ -5,5 +5,6 @@
 module com.intellij.xpath {
   requires com.intellij.xpath.lang;
   requires com.intellij.xpath.view;
+  requires com.intellij.xpath.batch;
   requires jaxen;
 }
\ No newline at end of file
@@ -31,21 +31,7 @@ public final class XPathLexer extends LookAheadLexer
   private final boolean myXPath2Syntax;
 
   private XPathLexer(boolean xpath2Syntax) {
-    super(new FlexAdapter(new _XPathLexer(xpath2Syntax) {
-      @Override
-      protected void readComment() throws IOException {
-        final int state = yystate();
-        final int start = getTokenStart();
-        while (true) {
-          final IElementType type = advance();
-          if (type == null || type == XPath2TokenTypes.END_COMMENT) {
-            break;
-          }
-        }
-        setStart(start);
-        yybegin(state);
-      }
-    }));
+    super(createBaseLexer(xpath2Syntax));
 
     myXPath2Syntax = xpath2Syntax;
   }
@@ -191,4 +177,25 @@ public final class XPathLexer extends LookAheadLexer
   public static Lexer create(boolean xpath2Syntax) {
     return new XPathLexer(xpath2Syntax);
   }
+
+  /**
+   * Returns the generated lexer without the look-ahead that disambiguates keywords and names.
+   */
+  public static Lexer createBaseLexer(boolean xpath2Syntax) {
+    return new FlexAdapter(new _XPathLexer(xpath2Syntax) {
+      @Override
+      protected void readComment() throws IOException {
+        final int state = yystate();
+        final int start = getTokenStart();
+        while (true) {
+          final IElementType type = advance();
+          if (type == null || type == XPath2TokenTypes.END_COMMENT) {
+            break;
+          }
+        }
+        setStart(start);
+        yybegin(state);
+      }
+    });
+  }
 }
@@ -8,6 +8,7 @@ open module com.intellij.xpath.view {
   requires consulo.ide.api;
 
   requires jaxen;
+  requires java.management;
   
   // TODO [VISTALL] drop in future
   requires java.desktop;
@@ -26,6 +27,7 @@ open module com.intellij.xpath.view {
   exports org.intellij.plugins.xpathView.support;
   exports org.intellij.plugins.xpathView.support.jaxen;
   exports org.intellij.plugins.xpathView.support.jaxen.extensions;
+  exports org.intellij.plugins.xpathView.support.xpath2;
   exports org.intellij.plugins.xpathView.ui;
   exports org.intellij.plugins.xpathView.util;
 }
\ No newline at end of file
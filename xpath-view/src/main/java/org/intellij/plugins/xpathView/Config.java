@@ -35,6 +35,8 @@ public class Config {
   public boolean bUseContextAtCursor = true;
   public boolean bHighlightStartTagOnly = true;
   public boolean bAddErrorStripe = true;
+  public int highlightViewportThreshold = 5000;
+  public boolean bXPath2 = false;
 
   public boolean isScrollToFirst() {
     return scrollToFirst;
@@ -68,6 +70,28 @@ public class Config {
     bAddErrorStripe = b;
   }
 
+  /**
+   * Number of results above which only the visible part of the editor is highlighted.
+   */
+  public int getHighlightViewportThreshold() {
+    return highlightViewportThreshold;
+  }
+
+  public void setHighlightViewportThreshold(int threshold) {
+    highlightViewportThreshold = threshold;
+  }
+
+  /**
+   * Whether expressions entered for Evaluate and Find by XPath are XPath 2.0 instead of XPath 1.0.
+   */
+  public boolean isXPath2() {
+    return bXPath2;
+  }
+
+  public void setXPath2(boolean b) {
+    bXPath2 = b;
+  }
+
   public boolean equals(Object o) {
     if (this == o) {
       return true;
@@ -105,6 +129,12 @@ public class Config {
     if (scrollToFirst != config.scrollToFirst) {
       return false;
     }
+    if (highlightViewportThreshold != config.highlightViewportThreshold) {
+      return false;
+    }
+    if (bXPath2 != config.bXPath2) {
+      return false;
+    }
     return true;
   }
 
@@ -118,6 +148,8 @@ public class Config {
     result = 29 * result + (bUseContextAtCursor ? 1 : 0);
     result = 29 * result + (bHighlightStartTagOnly ? 1 : 0);
     result = 29 * result + (bAddErrorStripe ? 1 : 0);
+    result = 29 * result + highlightViewportThreshold;
+    result = 29 * result + (bXPath2 ? 1 : 0);
     return result;
   }
 }
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView;
+
+import consulo.annotation.access.RequiredReadAction;
+import consulo.application.progress.ProgressIndicator;
+import consulo.application.progress.Task;
+import consulo.document.util.Segment;
+import consulo.fileChooser.FileChooserFactory;
+import consulo.fileChooser.FileSaverDescriptor;
+import consulo.language.psi.PsiElement;
+import consulo.language.psi.PsiFile;
+import consulo.project.Project;
+import consulo.ui.ex.awt.Messages;
+import consulo.usage.Usage;
+import consulo.usage.UsageInfo;
+import consulo.usage.UsageInfo2UsageAdapter;
+import consulo.usage.UsageSearcher;
+import consulo.virtualFileSystem.VirtualFile;
+import consulo.virtualFileSystem.VirtualFileWrapper;
+import consulo.xml.language.psi.XmlElement;
+import consulo.xml.language.psi.XmlFile;
+import consulo.xml.language.psi.XmlToken;
+import org.intellij.plugins.xpathView.support.XPathSupport;
+import org.intellij.plugins.xpathView.support.jaxen.PsiDocumentNavigator;
+import org.intellij.plugins.xpathView.util.ResultExporter;
+import org.jaxen.function.StringFunction;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Exports the matches of an XPath usage view to a CSV, JSON or XML file. The search is run again in the background
+ * and every match is written as soon as the searcher produces it, so the result is never held in memory.
+ */
+public class ExportResultsAction implements Runnable {
+    private static final String TITLE = "Export XPath Results";
+
+    private final Project myProject;
+    private final Supplier<UsageSearcher> mySearcherFactory;
+
+    public ExportResultsAction(Project project, Supplier<UsageSearcher> searcherFactory) {
+        myProject = project;
+        mySearcherFactory = searcherFactory;
+    }
+
+    @Override
+    public void run() {
+        final FileSaverDescriptor descriptor = new FileSaverDescriptor(TITLE, "Export the file, line, path and string-value of every match", "csv", "json", "xml");
+        final VirtualFileWrapper wrapper = FileChooserFactory.getInstance().createSaveFileDialog(descriptor, myProject).save(myProject.getBaseDir(), "xpath-results.csv");
+        if (wrapper != null) {
+            export(wrapper.getFile().toPath());
+        }
+    }
+
+    private void export(Path file) {
+        new Task.Backgroundable(myProject, TITLE, true) {
+            private int myCount;
+            private IOException myError;
+
+            @Override
+            public void run(@Nonnull ProgressIndicator indicator) {
+                try (ResultExporter exporter = ResultExporter.create(file)) {
+                    final RowWriter writer = new RowWriter(exporter, indicator);
+                    // the searcher picks up the progress indicator of this task
+                    mySearcherFactory.get().generate(writer);
+                    myError = writer.myError;
+                    myCount = exporter.getRowCount();
+                } catch (IOException e) {
+                    myError = e;
+                }
+            }
+
+            @Override
+            public void onSuccess() {
+                if (myError != null) {
+                    Messages.showErrorDialog(myProject, "Cannot write " + file + ":\n" + myError.getMessage(), TITLE);
+                } else {
+                    Messages.showInfoMessage(myProject, "Exported " + myCount + " matches to " + file, TITLE);
+                }
+            }
+        }.queue();
+    }
+
+    private static class RowWriter implements Predicate<Usage> {
+        private final ResultExporter myExporter;
+        private final ProgressIndicator myIndicator;
+        private final XPathSupport mySupport = XPathSupport.getInstance();
+
+        // string-values are computed by the navigator of the current file
+        private PsiFile myFile;
+        private PsiDocumentNavigator myNavigator;
+
+        IOException myError;
+
+        RowWriter(ResultExporter exporter, ProgressIndicator indicator) {
+            myExporter = exporter;
+            myIndicator = indicator;
+        }
+
+        @Override
+        @RequiredReadAction
+        public boolean test(Usage usage) {
+            if (!(usage instanceof UsageInfo2UsageAdapter)) {
+                return true;
+            }
+            final UsageInfo2UsageAdapter adapter = (UsageInfo2UsageAdapter)usage;
+            final PsiElement element = findMatch(adapter.getUsageInfo());
+            final VirtualFile file = adapter.getFile();
+            if (element == null || file == null) {
+                return true;
+            }
+
+            try {
+                final String path = element instanceof XmlElement ? mySupport.getUniquePath((XmlElement)element, null) : "";
+                myExporter.write(file.getPresentableUrl(), adapter.getLine() + 1, path, getStringValue(element));
+            } catch (IOException e) {
+                myError = e;
+                return false;
+            }
+            if (myExporter.getRowCount() % 1000 == 0) {
+                myIndicator.setText2(myExporter.getRowCount() + " matches exported");
+            }
+            return true;
+        }
+
+        @RequiredReadAction
+        private String getStringValue(PsiElement element) {
+            if (element instanceof PsiFile) {
+                // a match on the whole file, from an expression that doesn't select nodes
+                return "";
+            }
+            final PsiFile file = element.getContainingFile();
+            if (file != myFile) {
+                myFile = file;
+                myNavigator = file instanceof XmlFile ? new PsiDocumentNavigator((XmlFile)file) : null;
+            }
+            return myNavigator != null ? StringFunction.evaluate(element, myNavigator) : element.getText();
+        }
+
+        /**
+         * Returns the matched node of a usage. The usages of the Evaluate action only know the file and the range
+         * of the node, so the node is looked up again.
+         */
+        @Nullable
+        @RequiredReadAction
+        private static PsiElement findMatch(UsageInfo info) {
+            final PsiElement element = info.getElement();
+            final Segment segment = info.getSegment();
+            if (!(element instanceof PsiFile) || segment == null || segment.getStartOffset() == 0 && segment.getEndOffset() == element.getTextLength()) {
+                return element;
+            }
+            PsiElement e = ((PsiFile)element).findElementAt(segment.getStartOffset());
+            while (e != null && !(e instanceof PsiFile) && !isNodeAt(e, segment)) {
+                e = e.getParent();
+            }
+            return e != null ? e : element;
+        }
+
+        private static boolean isNodeAt(PsiElement e, Segment segment) {
+            return e instanceof XmlElement && !(e instanceof XmlToken)
+                && e.getTextRange().getStartOffset() == segment.getStartOffset() && e.getTextRange().getEndOffset() == segment.getEndOffset();
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package org.intellij.plugins.xpathView;
 
 import org.intellij.plugins.xpathView.util.Copyable;
+import org.intellij.plugins.xpathView.util.KeyDefinition;
 import org.intellij.plugins.xpathView.util.Namespace;
 import org.intellij.plugins.xpathView.util.Variable;
 
@@ -30,11 +31,17 @@ public final class HistoryElement implements Copyable<HistoryElement> {
     public final String expression;
     public final Collection<Variable> variables;
     public final Collection<Namespace> namespaces;
+    public final Collection<KeyDefinition> keys;
 
     public HistoryElement(String expression, @Nonnull Collection<Variable> variables, @Nonnull Collection<Namespace> namespaces) {
+        this(expression, variables, namespaces, Collections.<KeyDefinition>emptySet());
+    }
+
+    public HistoryElement(String expression, @Nonnull Collection<Variable> variables, @Nonnull Collection<Namespace> namespaces, @Nonnull Collection<KeyDefinition> keys) {
         this.expression = expression;
         this.variables = Collections.unmodifiableCollection(variables);
         this.namespaces = Collections.unmodifiableCollection(namespaces);
+        this.keys = Collections.unmodifiableCollection(keys);
     }
 
     @SuppressWarnings({"unchecked"})
@@ -42,6 +49,7 @@ public final class HistoryElement implements Copyable<HistoryElement> {
         expression = null;
         variables = Collections.emptySet();
         namespaces = Collections.emptySet();
+        keys = Collections.emptySet();
     }
 
     public boolean equals(Object o) {
@@ -58,14 +66,18 @@ public final class HistoryElement implements Copyable<HistoryElement> {
     }
 
     public HistoryElement copy() {
-        return new HistoryElement(expression, Copyable.Util.copy(this.variables), Copyable.Util.copy(namespaces));
+        return new HistoryElement(expression, Copyable.Util.copy(this.variables), Copyable.Util.copy(namespaces), Copyable.Util.copy(keys));
     }
 
     public HistoryElement changeContext(Collection<Namespace> namespaces, Collection<Variable> variables) {
-        return new HistoryElement(expression, variables, namespaces);
+        return new HistoryElement(expression, variables, namespaces, keys);
+    }
+
+    public HistoryElement changeContext(Collection<Namespace> namespaces, Collection<Variable> variables, Collection<KeyDefinition> keys) {
+        return new HistoryElement(expression, variables, namespaces, keys);
     }
 
     public HistoryElement changeExpression(String expression) {
-        return new HistoryElement(expression, variables, namespaces);
+        return new HistoryElement(expression, variables, namespaces, keys);
     }
 }
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView;
+
+import consulo.project.Project;
+import consulo.ui.annotation.RequiredUIAccess;
+import consulo.ui.ex.action.AnAction;
+import consulo.ui.ex.action.AnActionEvent;
+import jakarta.annotation.Nonnull;
+import org.intellij.plugins.xpathView.ui.StatisticsDialog;
+
+public class ShowStatisticsAction extends AnAction {
+  @Override
+  public void update(@Nonnull AnActionEvent e) {
+    e.getPresentation().setEnabled(e.getData(Project.KEY) != null);
+  }
+
+  @Override
+  @RequiredUIAccess
+  public void actionPerformed(@Nonnull AnActionEvent e) {
+    final Project project = e.getData(Project.KEY);
+    if (project != null) {
+      new StatisticsDialog(project).show();
+    }
+  }
+}
@@ -19,7 +19,6 @@ import consulo.annotation.component.ExtensionImpl;
 import consulo.application.dumb.DumbAware;
 import consulo.codeEditor.Editor;
 import consulo.codeEditor.ScrollType;
-import consulo.codeEditor.markup.RangeHighlighter;
 import consulo.ide.impl.idea.codeInsight.hint.HintManagerImpl;
 import consulo.ide.impl.idea.ui.LightweightHintImpl;
 import consulo.language.editor.LangDataKeys;
@@ -39,7 +38,6 @@ import org.intellij.plugins.xpathView.util.HighlighterUtil;
 import javax.swing.*;
 import javax.swing.border.BevelBorder;
 import java.awt.*;
-import java.util.List;
 
 /**
  * This extension holds the application-level configuration and registers an own handler for
@@ -84,30 +82,17 @@ public class XPathActionCustomizer implements ActionCustomizer {
             if (editor != null) {
                 if (HighlighterUtil.hasHighlighters(editor)) {
                     final int offset = editor.getCaretModel().getOffset();
-                    final List<RangeHighlighter> hl = HighlighterUtil.getHighlighters(editor);
-                    int diff = Integer.MAX_VALUE;
-                    RangeHighlighter next = null;
-                    for (RangeHighlighter highlighter : hl) {
-                        if (isPrev) {
-                            if (highlighter.getStartOffset() < offset && offset - highlighter.getStartOffset() < diff) {
-                                diff = offset - highlighter.getStartOffset();
-                                next = highlighter;
-                            }
-                        }
-                        else {
-                            if (highlighter.getStartOffset() > offset && highlighter.getStartOffset() - offset < diff) {
-                                diff = highlighter.getStartOffset() - offset;
-                                next = highlighter;
-                            }
-                        }
-                    }
+                    final int[] offsets = HighlighterUtil.getHighlightedOffsets(editor);
+
+                    // offsets are sorted: find the closest one before/after the caret
+                    final int next = isPrev ? HighlighterUtil.lowerBound(offsets, offset) - 1 : HighlighterUtil.lowerBound(offsets, offset + 1);
 
                     final int startOffset;
-                    if (next != null) {
-                        startOffset = next.getStartOffset();
+                    if (next >= 0 && next < offsets.length) {
+                        startOffset = offsets[next];
                     }
                     else if (wrapAround) {
-                        startOffset = hl.get(isPrev ? hl.size() - 1 : 0).getStartOffset();
+                        startOffset = offsets[isPrev ? offsets.length - 1 : 0];
                     }
                     else {
                         final String info =
@@ -16,9 +16,11 @@
 package org.intellij.plugins.xpathView;
 
 import consulo.application.ApplicationManager;
+import consulo.application.ReadAction;
 import consulo.application.progress.ProgressIndicator;
 import consulo.application.progress.ProgressManager;
 import consulo.codeEditor.Editor;
+import consulo.component.ProcessCanceledException;
 import consulo.codeEditor.ScrollType;
 import consulo.codeEditor.markup.RangeHighlighter;
 import consulo.fileEditor.FileEditor;
@@ -30,6 +32,7 @@ import consulo.language.file.FileViewProvider;
 import consulo.language.psi.PsiDocumentManager;
 import consulo.language.psi.PsiElement;
 import consulo.language.psi.PsiFile;
+import consulo.language.psi.PsiManager;
 import consulo.language.template.TemplateLanguageFileViewProvider;
 import consulo.logging.Logger;
 import consulo.navigation.ItemPresentation;
@@ -48,11 +51,14 @@ import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 import org.intellij.lang.xpath.XPathHighlighter;
 import org.intellij.plugins.xpathView.eval.EvalExpressionDialog;
+import org.intellij.plugins.xpathView.support.XPathStatistics;
 import org.intellij.plugins.xpathView.support.XPathSupport;
 import org.intellij.plugins.xpathView.ui.InputExpressionDialog;
+import org.intellij.plugins.xpathView.util.BulkHighlighter;
 import org.intellij.plugins.xpathView.util.CachedVariableContext;
 import org.intellij.plugins.xpathView.util.HighlighterUtil;
 import org.intellij.plugins.xpathView.util.MyPsiUtil;
+import org.intellij.plugins.xpathView.util.ResultRanges;
 import org.jaxen.JaxenException;
 import org.jaxen.XPath;
 import org.jaxen.XPathSyntaxException;
@@ -60,9 +66,8 @@ import org.jaxen.saxpath.SAXPathException;
 
 import javax.swing.*;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
@@ -216,18 +221,33 @@ public class XPathEvalAction extends XPathAction {
 
         try {
             final XPathSupport support = XPathSupport.getInstance();
-            final XPath xpath = support.createXPath((XmlFile) contextNode.getContainingFile(), context.input.expression, context.input.namespaces);
-
-            xpath.setVariableContext(new CachedVariableContext(context.input.variables, xpath, contextNode));
-
-            // evaluate the expression on the whole document
-            final Object result = xpath.evaluate(contextNode);
+            final XPath xpath = support.createXPath((XmlFile) contextNode.getContainingFile(), context.input.expression, context.input.namespaces, cfg.isXPath2());
+
+            // evaluate the expression on the whole document, under a progress so that it can be cancelled
+            final Object result;
+            try {
+                result = ProgressManager.getInstance().runProcessWithProgressSynchronously(() -> ReadAction.compute(() -> {
+                    xpath.setVariableContext(new CachedVariableContext(context.input.variables, context.input.keys, xpath, contextNode));
+                    return xpath.evaluate(contextNode);
+                }), "Evaluating XPath", true, project);
+            }
+            catch (ProcessCanceledException e) {
+                LOG.debug("Evaluation canceled");
+                return false;
+            }
             LOG.debug("result = " + result);
-            LOG.assertTrue(result != null, "null result?");
+            if (result == null) {
+                // canceled
+                return false;
+            }
 
             if (result instanceof List<?>) {
                 final List<?> list = (List<?>) result;
-                if (!list.isEmpty()) {
+                if (!list.isEmpty() && !(list.get(0) instanceof PsiElement)) {
+                    // a sequence of atomic values, e.g. from XPath 2.0's "1 to 5"
+                    Messages.showMessageDialog(formatValues(list), "XPath result (Sequence)", Messages.getInformationIcon());
+                }
+                else if (!list.isEmpty()) {
                     if (cfg.HIGHLIGHT_RESULTS) {
                         highlightResult(contextNode, editor, list);
                     }
@@ -278,15 +298,27 @@ public class XPathEvalAction extends XPathAction {
         return false;
     }
 
+    private static String formatValues(List<?> values) {
+        final StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < values.size(); i++) {
+            if (i == 20) {
+                sb.append(", ... ").append(values.size() - i).append(" more");
+                break;
+            }
+            sb.append(i > 0 ? ", " : "").append(values.get(i));
+        }
+        return sb.append(")").toString();
+    }
+
     private void showUsageView(final Editor editor, final XPath xPath, final XmlElement contextNode, final List<?> result) {
         final Project project = editor.getProject();
 
-        //noinspection unchecked
-        final List<?> _result = new ArrayList(result);
+        // the initial result is only shown once, a re-run evaluates the expression again
+        final AtomicReference<ResultRanges> _result = new AtomicReference<ResultRanges>(ResultRanges.create(result));
         final Supplier<UsageSearcher> searcherFactory = new Supplier<UsageSearcher>() {
             @Override
             public UsageSearcher get() {
-                return new MyUsageSearcher(_result, xPath, contextNode);
+                return new MyUsageSearcher(_result.getAndSet(null), xPath, contextNode);
             }
         };
         final MyUsageTarget usageTarget = new MyUsageTarget(xPath.toString(), contextNode);
@@ -350,6 +382,7 @@ public class XPathEvalAction extends XPathAction {
                     @Override
                     public void usageViewCreated(@Nonnull UsageView usageView) {
                         usageView.addButtonToLowerPane(editAction, "&Edit Expression");
+                        usageView.addButtonToLowerPane(new ExportResultsAction(project, searcherFactory), "E&xport...");
                     }
 
                     @Override
@@ -399,23 +432,26 @@ public class XPathEvalAction extends XPathAction {
      */
     private void highlightResult(XmlElement contextNode, @Nonnull final Editor editor, final List<?> list) {
         final Config cfg = XPathViewConfig.getInstance().getState();
-        int lowestOffset = Integer.MAX_VALUE;
+        final long start = XPathStatistics.start();
 
+        final PsiFile file = contextNode.getContainingFile();
+        final List<PsiElement> elements = new ArrayList<PsiElement>(list.size());
         for (final Object o : list) {
             LOG.assertTrue(o != null, "null element?");
 
             if (o instanceof PsiElement) {
                 final PsiElement element = (PsiElement) o;
 
-                if (element.getContainingFile() == contextNode.getContainingFile()) {
-                    lowestOffset = highlightElement(editor, element, cfg, lowestOffset);
+                if (element.getContainingFile() == file) {
+                    elements.add(element);
                 }
             }
             else {
                 LOG.info("Don't know what to do with " + o + " in a list context");
             }
-            LOG.debug("o = " + o);
         }
+        final int lowestOffset = BulkHighlighter.highlight(editor, elements, XPathHighlighter.XPATH_EVAL_HIGHLIGHT, cfg);
+        XPathStatistics.getInstance().recordTime(XPathStatistics.HIGHLIGHT, start);
 
         if (cfg.isScrollToFirst() && lowestOffset != Integer.MAX_VALUE) {
             editor.getScrollingModel().scrollTo(editor.offsetToLogicalPosition(lowestOffset), ScrollType.MAKE_VISIBLE);
@@ -423,13 +459,6 @@ public class XPathEvalAction extends XPathAction {
         }
     }
 
-    private static int highlightElement(Editor editor, PsiElement element, Config cfg, int offset) {
-        final RangeHighlighter highlighter = HighlighterUtil.highlightNode(editor, element, XPathHighlighter.XPATH_EVAL_HIGHLIGHT, cfg);
-        HighlighterUtil.addHighlighter(editor, highlighter);
-
-        return Math.min(highlighter.getStartOffset(), offset);
-    }
-
     public static class MyUsageTarget implements UsageTarget {
         private final ItemPresentation myItemPresentation;
         private final XmlElement myContextNode;
@@ -501,24 +530,23 @@ public class XPathEvalAction extends XPathAction {
     }
 
     private static class MyUsageSearcher implements UsageSearcher {
-        private final List<?> myResult;
+        private final ResultRanges myResult;
         private final XPath myXPath;
         private final XmlElement myContextNode;
 
-        public MyUsageSearcher(List<?> result, XPath xPath, XmlElement contextNode) {
+        public MyUsageSearcher(ResultRanges result, XPath xPath, XmlElement contextNode) {
             myResult = result;
             myXPath = xPath;
             myContextNode = contextNode;
         }
 
         @Override
-        @SuppressWarnings("unchecked")
         public void generate(final Predicate<Usage> processor) {
             Runnable runnable = () -> {
-                final List<?> list;
-                if (myResult.isEmpty()) {
+                final ResultRanges result;
+                if (myResult == null) {
                     try {
-                        list = (List<?>) myXPath.selectNodes(myContextNode);
+                        result = ResultRanges.create((List<?>) myXPath.selectNodes(myContextNode));
                     }
                     catch (JaxenException e) {
                         LOG.debug(e);
@@ -527,36 +555,32 @@ public class XPathEvalAction extends XPathAction {
                     }
                 }
                 else {
-                    list = myResult;
+                    result = myResult;
                 }
 
-                final int size = list.size();
+                final int size = result.size();
                 final ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
                 indicator.setText("Collecting matches...");
 
-                Collections.sort(list, new Comparator() {
-                    @Override
-                    public int compare(Object o1, Object o2) {
-                        indicator.checkCanceled();
-                        if (o1 instanceof PsiElement && o2 instanceof PsiElement) {
-                            return ((PsiElement) o1).getTextRange().getStartOffset() - ((PsiElement) o2).getTextRange().getStartOffset();
+                final PsiManager manager = PsiManager.getInstance(myContextNode.getProject());
+                final int[] count = new int[1];
+                final PsiFile[] psiFile = new PsiFile[1];
+                result.forEach((file, start, end) -> {
+                    indicator.checkCanceled();
+                    if (psiFile[0] == null || !file.equals(psiFile[0].getVirtualFile())) {
+                        psiFile[0] = file.isValid() ? manager.findFile(file) : null;
+                        if (psiFile[0] != null) {
+                            indicator.setText2(psiFile[0].getName());
                         }
-                        else {
-                            return String.valueOf(o1).compareTo(String.valueOf(o2));
+                    }
+                    if (psiFile[0] != null && end <= psiFile[0].getTextLength()) {
+                        if (!processor.test(new UsageInfo2UsageAdapter(new UsageInfo(psiFile[0], start, end)))) {
+                            return false;
                         }
                     }
+                    indicator.setFraction(++count[0] / (double) size);
+                    return true;
                 });
-                for (int i = 0; i < size; i++) {
-                    indicator.checkCanceled();
-                    Object o = list.get(i);
-                    if (o instanceof PsiElement) {
-                        final PsiElement element = (PsiElement) o;
-                        processor.test(new UsageInfo2UsageAdapter(new UsageInfo(element)));
-                        indicator.setText2(element.getContainingFile().getName());
-                    }
-                    indicator.setFraction(i / (double) size);
-                }
-                list.clear();
             };
             ApplicationManager.getApplication().runReadAction(runnable);
         }
@@ -25,6 +25,7 @@ import consulo.component.persist.StoragePathMacros;
 import consulo.application.Application;
 import consulo.project.Project;
 import jakarta.inject.Singleton;
+import org.intellij.plugins.xpathView.util.KeyDefinition;
 import org.intellij.plugins.xpathView.util.Namespace;
 import org.intellij.plugins.xpathView.util.Variable;
 import org.jdom.Element;
@@ -60,6 +61,9 @@ public class XPathProjectComponent implements PersistentStateComponent<Element>
   protected static final String NAMESPACE = "namespace";
   protected static final String PREFIX = "prefix";
   protected static final String URI = "uri";
+  protected static final String KEY = "key";
+  protected static final String MATCH = "match";
+  protected static final String USE = "use";
 
   /**
    * A set that maintains the history
@@ -74,9 +78,25 @@ public class XPathProjectComponent implements PersistentStateComponent<Element>
     readHistory(state, FIND_HISTORY, findHistory);
   }
 
-  @SuppressWarnings({"unchecked"})
   private static void readHistory(Element element, String s, LinkedHashMap<String, HistoryElement> hst) {
-    final Element historyElement = element.getChild(s);
+    for (HistoryElement entry : readEntries(element.getChild(s))) {
+      hst.put(entry.expression, entry);
+    }
+  }
+
+  /**
+   * Reads all expressions of a state in the format of {@link #getState()}, the history followed by the find history.
+   * This allows to keep a library of expressions, e.g. for the batch runner, in the same format.
+   */
+  public static List<HistoryElement> readExpressions(Element state) {
+    final List<HistoryElement> expressions = readEntries(state.getChild(HISTORY));
+    expressions.addAll(readEntries(state.getChild(FIND_HISTORY)));
+    return expressions;
+  }
+
+  @SuppressWarnings({"unchecked"})
+  private static List<HistoryElement> readEntries(Element historyElement) {
+    final List<HistoryElement> result = new ArrayList<HistoryElement>();
     if (historyElement != null) {
       final List<Element> entries = historyElement.getChildren(HISTORY_ELEMENT);
       for (final Element entry : entries) {
@@ -93,10 +113,17 @@ public class XPathProjectComponent implements PersistentStateComponent<Element>
           for (Element namespaceElement : children) {
             namespaces.add(new Namespace(namespaceElement.getAttributeValue(PREFIX), namespaceElement.getAttributeValue(URI)));
           }
-          hst.put(expression, new HistoryElement(expression, variables, namespaces));
+
+          children = entry.getChildren(KEY);
+          final Collection<KeyDefinition> keys = new ArrayList<KeyDefinition>(children.size());
+          for (Element keyElement : children) {
+            keys.add(new KeyDefinition(keyElement.getAttributeValue(NAME), keyElement.getAttributeValue(MATCH), keyElement.getAttributeValue(USE)));
+          }
+          result.add(new HistoryElement(expression, variables, namespaces, keys));
         }
       }
     }
+    return result;
   }
 
   public Element getState() {
@@ -129,6 +156,14 @@ public class XPathProjectComponent implements PersistentStateComponent<Element>
         namespaceElement.setAttribute(URI, namespace.getUri());
         entryElement.addContent(namespaceElement);
       }
+
+      for (KeyDefinition key : h.keys) {
+        final Element keyElement = new Element(KEY);
+        keyElement.setAttribute(NAME, key.getName());
+        keyElement.setAttribute(MATCH, key.getMatch());
+        keyElement.setAttribute(USE, key.getUse());
+        entryElement.addContent(keyElement);
+      }
     }
   }
 
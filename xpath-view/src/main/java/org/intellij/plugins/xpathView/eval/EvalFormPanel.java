@@ -49,6 +49,10 @@ public class EvalFormPanel extends JPanel implements InputForm {
         return myInputPanel.getEditorPanel();
     }
 
+    public JLabel getPreviewLabel() {
+        return myInputPanel.getPreviewLabel();
+    }
+
     public JCheckBox getNewTabCheckbox() {
         return myNewTabCheckbox;
     }
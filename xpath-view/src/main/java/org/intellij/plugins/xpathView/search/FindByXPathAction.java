@@ -17,6 +17,7 @@
 package org.intellij.plugins.xpathView.search;
 
 import consulo.application.progress.ProgressIndicator;
+import consulo.disposer.Disposer;
 import consulo.ide.impl.idea.find.FindProgressIndicator;
 import consulo.module.Module;
 import consulo.project.Project;
@@ -26,6 +27,8 @@ import consulo.ui.ex.awt.Messages;
 import consulo.usage.*;
 import consulo.xpath.view.XPathViewConfig;
 import org.intellij.plugins.xpathView.Config;
+import org.intellij.plugins.xpathView.ExportResultsAction;
+import org.intellij.plugins.xpathView.HistoryElement;
 import org.intellij.plugins.xpathView.XPathEvalAction;
 import org.intellij.plugins.xpathView.XPathProjectComponent;
 import org.intellij.plugins.xpathView.support.XPathSupport;
@@ -34,6 +37,10 @@ import org.jaxen.JaxenException;
 import org.jaxen.XPathSyntaxException;
 
 import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
 import java.util.Collections;
 import java.util.function.Supplier;
 
@@ -70,7 +77,7 @@ public class FindByXPathAction extends AnAction {
     projectComponent.addFindHistory(context.input);
 
     final String expression = context.input.expression;
-    if (!validateExpression(project, expression)) {
+    if (!validateExpression(project, expression, settings.isXPath2() && !settings.MATCH_RECURSIVELY)) {
       return;
     }
 
@@ -103,9 +110,12 @@ public class FindByXPathAction extends AnAction {
         return new XPathUsageSearcher(project, context.input, scope, settings.MATCH_RECURSIVELY);
       }
     };
+    final boolean matchRecursively = settings.MATCH_RECURSIVELY;
     final UsageViewManager.UsageViewStateListener stateListener = new UsageViewManager.UsageViewStateListener() {
       public void usageViewCreated(@Nonnull UsageView usageView) {
         usageView.addButtonToLowerPane(new MyEditExpressionAction(project, module), "&Edit Expression");
+        usageView.addButtonToLowerPane(new MyWatchAction(project, usageView, context.input, scope, matchRecursively));
+        usageView.addButtonToLowerPane(new ExportResultsAction(project, searcherFactory), "E&xport...");
       }
 
       public void findingUsagesFinished(UsageView usageView) {
@@ -141,10 +151,64 @@ public class FindByXPathAction extends AnAction {
     }
   }
 
-  private static boolean validateExpression(Project project, String expression) {
+  /**
+   * Pins the search: the usage view is kept up to date by re-evaluating files as they change. Pressing the button
+   * again stops watching. The button tells whether the results are watched and whether the last update failed.
+   */
+  private static class MyWatchAction extends AbstractAction {
+    private static final String WATCH_DESCRIPTION = "Update the results as the files change";
+
+    private final Project myProject;
+    private final UsageView myUsageView;
+    private final HistoryElement myExpression;
+    private final SearchScope myScope;
+    private final boolean myMatchRecursively;
+    private XPathWatcher myWatcher;
+
+    public MyWatchAction(Project project, UsageView usageView, HistoryElement expression, SearchScope scope, boolean matchRecursively) {
+      super("Start Watching");
+      putValue(MNEMONIC_KEY, KeyEvent.VK_W);
+      putValue(SHORT_DESCRIPTION, WATCH_DESCRIPTION);
+      myProject = project;
+      myUsageView = usageView;
+      myExpression = expression;
+      myScope = scope;
+      myMatchRecursively = matchRecursively;
+    }
+
+    public void actionPerformed(ActionEvent e) {
+      if (myWatcher == null) {
+        myWatcher = XPathWatcher.watch(myProject, myUsageView, myExpression, myScope, myMatchRecursively, this::showError);
+        showError(null);
+      }
+      else {
+        Disposer.dispose(myWatcher);
+        myWatcher = null;
+        putValue(NAME, "Start Watching");
+        putValue(SHORT_DESCRIPTION, WATCH_DESCRIPTION);
+      }
+    }
+
+    private void showError(@Nullable String error) {
+      if (myWatcher == null) {
+        return;
+      }
+      if (error == null) {
+        putValue(NAME, "Stop Watching");
+        putValue(SHORT_DESCRIPTION, "The results are updated as the files change");
+      }
+      else {
+        putValue(NAME, "Stop Watching (XPath Error)");
+        putValue(SHORT_DESCRIPTION, "<html>Error while evaluating XPath:<br>" +
+                                    error.replace("&", "&amp;").replace("<", "&lt;").replace("\n", "<br>") + "</html>");
+      }
+    }
+  }
+
+  private static boolean validateExpression(Project project, String expression, boolean xpath2) {
     try {
       //noinspection unchecked
-      XPathSupport.getInstance().createXPath(null, expression, Collections.<org.intellij.plugins.xpathView.util.Namespace>emptyList());
+      XPathSupport.getInstance().createXPath(null, expression, Collections.<org.intellij.plugins.xpathView.util.Namespace>emptyList(), xpath2);
       return true;
     }
     catch (XPathSyntaxException e) {
@@ -66,6 +66,10 @@ public class FindFormPanel extends JPanel implements InputForm {
         return myInputPanel.getEditorPanel();
     }
 
+    public JLabel getPreviewLabel() {
+        return myInputPanel.getPreviewLabel();
+    }
+
     public JCheckBox getNewTabCheckbox() {
         return myNewTabCheckbox;
     }
@@ -212,6 +212,40 @@ public final class SearchScope {
     }
   }
 
+  /**
+   * Checks whether a single file would be visited by {@link #iterateContent(Project, Processor)}, without iterating the
+   * whole scope.
+   */
+  boolean contains(@NotNull Project project, @NotNull VirtualFile file) {
+    if (file.isDirectory()) {
+      return false;
+    }
+    switch (getScopeType()) {
+      case PROJECT:
+        return ProjectRootManager.getInstance(project).getFileIndex().isInContent(file);
+      case MODULE:
+        final Module module = ModuleManager.getInstance(project).findModuleByName(getModuleName());
+        return module != null && ModuleRootManager.getInstance(module).getFileIndex().isInContent(file);
+      case DIRECTORY:
+        final String dirName = getPath();
+        final VirtualFile dir = dirName != null ? findFile(dirName) : null;
+        if (dir == null) {
+          return false;
+        }
+        return isRecursive() ? VirtualFileUtil.isAncestor(dir, file, true) : dir.equals(file.getParent());
+      case CUSTOM:
+        if (myCustomScope instanceof GlobalSearchScope) {
+          return ((GlobalSearchScope)myCustomScope).contains(file);
+        }
+        if (myCustomScope != null) {
+          final PsiFile element = PsiManager.getInstance(project).findFile(file);
+          return element != null && PsiSearchScopeUtil.isInScope(myCustomScope, element);
+        }
+        return false;
+    }
+    return false;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2006 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.search;
+
+import consulo.annotation.access.RequiredReadAction;
+import consulo.language.file.FileViewProvider;
+import consulo.language.psi.PsiElement;
+import consulo.language.psi.PsiFile;
+import consulo.language.template.TemplateLanguageFileViewProvider;
+import consulo.xml.language.psi.XmlDocument;
+import consulo.xml.language.psi.XmlFile;
+import consulo.xpath.view.XPathViewConfig;
+import org.intellij.plugins.xpathView.HistoryElement;
+import org.intellij.plugins.xpathView.support.XPathResults;
+import org.intellij.plugins.xpathView.support.XPathSupport;
+import org.intellij.plugins.xpathView.util.CachedVariableContext;
+import org.jaxen.Context;
+import org.jaxen.ContextSupport;
+import org.jaxen.JaxenException;
+import org.jaxen.JaxenRuntimeException;
+import org.jaxen.XPath;
+import org.jaxen.pattern.Pattern;
+import org.jaxen.pattern.PatternParser;
+import org.jaxen.saxpath.SAXPathException;
+
+import jakarta.annotation.Nullable;
+import java.util.Iterator;
+import java.util.function.Predicate;
+
+/**
+ * Evaluates a Find-by-XPath expression against a single file. Shared by the one-shot
+ * {@link XPathUsageSearcher} and the incremental {@link XPathWatcher}.
+ */
+public class XPathFileMatcher {
+    private final HistoryElement myExpression;
+    private final boolean myMatchRecursively;
+    private final boolean myXPath2;
+    private final XPathSupport mySupport;
+
+    XPathFileMatcher(HistoryElement expression, boolean matchRecursively) {
+        myExpression = expression;
+        myMatchRecursively = matchRecursively && !expression.expression.trim().startsWith("//");
+        // patterns are always XPath 1.0
+        myXPath2 = !matchRecursively && XPathViewConfig.getInstance().getState().isXPath2();
+        mySupport = XPathSupport.getInstance();
+    }
+
+    /**
+     * Returns the XML document that should be searched in the given file, or <code>null</code> if there is none.
+     * For template languages, the document of the template data language is used.
+     */
+    @Nullable
+    @RequiredReadAction
+    static XmlDocument findDocument(@Nullable PsiFile psiFile) {
+        if (!(psiFile instanceof XmlFile)) {
+            return null;
+        }
+        final FileViewProvider fileViewProvider = psiFile.getViewProvider();
+        if (fileViewProvider instanceof TemplateLanguageFileViewProvider) {
+            final PsiFile root = fileViewProvider.getPsi(((TemplateLanguageFileViewProvider)fileViewProvider).getTemplateDataLanguage());
+            return root instanceof XmlFile ? ((XmlFile)root).getDocument() : null;
+        }
+        return ((XmlFile)psiFile).getDocument();
+    }
+
+    /**
+     * Evaluates the expression on the document and reports every match as soon as it is found. Node-set results
+     * are reported element by element, any other result type that converts to <code>true</code> is reported as a match
+     * on the containing file.
+     *
+     * @return <code>false</code> if the processor stopped the evaluation
+     */
+    @RequiredReadAction
+    boolean process(XmlDocument t, Predicate<PsiElement> processor) throws JaxenException, SAXPathException {
+        final XmlFile psiFile = (XmlFile)t.getContainingFile();
+
+        final XPath searchPath;
+        final Pattern pattern;
+        final Context context;
+        if (myMatchRecursively) {
+            searchPath = mySupport.createXPath(psiFile, "//*");
+            searchPath.setVariableContext(new CachedVariableContext(myExpression.variables, myExpression.keys, searchPath, t));
+            pattern = PatternParser.parse(myExpression.expression);
+
+            final ContextSupport support = new ContextSupport(searchPath.getNamespaceContext(), searchPath.getFunctionContext(), searchPath.getVariableContext(), searchPath.getNavigator());
+            context = new Context(support);
+        } else {
+            searchPath = mySupport.createXPath(psiFile, myExpression.expression, myExpression.namespaces, myXPath2);
+            searchPath.setVariableContext(new CachedVariableContext(myExpression.variables, myExpression.keys, searchPath, t));
+
+            pattern = null;
+            context = null;
+        }
+
+        // the matches are reported as they are found, so the caller doesn't wait for a complete list
+        final Iterator<?> items = XPathResults.iterate(searchPath, t);
+        try {
+            while (items.hasNext()) {
+                final Object o = items.next();
+                if (o instanceof PsiElement) {
+                    if ((!myMatchRecursively || pattern.matches(o, context)) && !processor.test((PsiElement)o)) {
+                        return false;
+                    }
+                } else if (isTrue(o)) {
+                    return processor.test(psiFile);
+                }
+            }
+            return true;
+        } catch (JaxenRuntimeException e) {
+            if (e.getCause() instanceof JaxenException) {
+                throw (JaxenException)e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Whether a result that is not a node counts as a match on the file: <code>true</code>, a non-zero number or a
+     * non-empty string.
+     */
+    public static boolean isTrue(Object o) {
+        if (o instanceof Boolean) {
+            return (Boolean)o;
+        } else if (o instanceof Number) {
+            return ((Number)o).intValue() != 0;
+        } else if (o instanceof String) {
+            return ((String)o).length() > 0;
+        }
+        return false;
+    }
+}
@@ -16,15 +16,14 @@
 package org.intellij.plugins.xpathView.search;
 
 import consulo.annotation.access.RequiredReadAction;
-import consulo.application.ApplicationManager;
+import consulo.application.ReadAction;
+import consulo.application.progress.EmptyProgressIndicator;
 import consulo.application.progress.ProgressIndicator;
 import consulo.application.progress.ProgressManager;
 import consulo.find.FindBundle;
-import consulo.language.file.FileViewProvider;
+import consulo.ide.impl.idea.openapi.progress.util.ProgressIndicatorUtils;
 import consulo.language.psi.PsiElement;
-import consulo.language.psi.PsiFile;
 import consulo.language.psi.PsiManager;
-import consulo.language.template.TemplateLanguageFileViewProvider;
 import consulo.logging.Logger;
 import consulo.project.Project;
 import consulo.ui.ex.awt.Messages;
@@ -34,176 +33,185 @@ import consulo.usage.UsageInfo2UsageAdapter;
 import consulo.usage.UsageSearcher;
 import consulo.virtualFileSystem.VirtualFile;
 import consulo.xml.language.psi.XmlDocument;
-import consulo.xml.language.psi.XmlFile;
 import org.intellij.plugins.xpathView.HistoryElement;
-import org.intellij.plugins.xpathView.support.XPathSupport;
-import org.intellij.plugins.xpathView.util.CachedVariableContext;
-import org.jaxen.Context;
-import org.jaxen.ContextSupport;
+import org.intellij.plugins.xpathView.support.XPathStatistics;
+import org.intellij.plugins.xpathView.support.jaxen.DocumentCache;
 import org.jaxen.JaxenException;
-import org.jaxen.XPath;
-import org.jaxen.pattern.Pattern;
-import org.jaxen.pattern.PatternParser;
 import org.jaxen.saxpath.SAXPathException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.function.Predicate;
 
-class XPathUsageSearcher implements UsageSearcher {
+public class XPathUsageSearcher implements UsageSearcher {
     private final ProgressIndicator myIndicator;
     private final PsiManager myManager;
     private final HistoryElement myExpression;
     private final Project myProject;
     private final SearchScope myScope;
-    private final boolean myMatchRecursively;
-    private final XPathSupport mySupport;
+    private final XPathFileMatcher myMatcher;
+
+    private int myMatchCount;
 
     public XPathUsageSearcher(Project project, HistoryElement expression, SearchScope scope, boolean matchRecursively) {
         myExpression = expression;
         myProject = project;
         myScope = scope;
-        myMatchRecursively = matchRecursively && !expression.expression.trim().startsWith("//");
-        mySupport = XPathSupport.getInstance();
+        myMatcher = new XPathFileMatcher(expression, matchRecursively);
         myIndicator = ProgressManager.getInstance().getProgressIndicator();
         myManager = PsiManager.getInstance(myProject);
     }
 
     @Override
     public void generate(final Predicate<Usage> processor) {
-        Runnable runnable = () -> {
-            myIndicator.setIndeterminate(true);
-            myIndicator.setText2(findBundleMessage("find.searching.for.string.in.file.occurrences.progress", 0));
-            final CountProcessor counter = new CountProcessor();
-            myScope.iterateContent(myProject, counter);
-
-            myIndicator.setIndeterminate(false);
-            myIndicator.setFraction(0);
-            myScope.iterateContent(myProject, new MyProcessor(processor, counter.getFileCount()));
-        };
-        ApplicationManager.getApplication().runReadAction(runnable);
+        myIndicator.setIndeterminate(true);
+        myIndicator.setText2(findBundleMessage("find.searching.for.string.in.file.occurrences.progress", 0));
+        final CollectProcessor collector = new CollectProcessor();
+        ReadAction.run(() -> myScope.iterateContent(myProject, collector));
+        final List<VirtualFile> files = collector.getFiles();
+
+        myIndicator.setIndeterminate(false);
+        myIndicator.setFraction(0);
+        // documents loaded by document() are shared by all files
+        try (DocumentCache.Scope ignored = DocumentCache.enter()) {
+            searchInFiles(files, processor);
+        }
     }
 
-    private class MyProcessor extends BaseProcessor {
-        private final Predicate<Usage> myProcessor;
-        private final int myTotalFileCount;
+    private void searchInFiles(List<VirtualFile> files, Predicate<Usage> processor) {
+        for (int i = 0; i < files.size(); i++) {
+            myIndicator.checkCanceled();
 
-        private int myFileCount;
-        private int myMatchCount;
+            final VirtualFile file = files.get(i);
+            myIndicator.setText(findBundleMessage("find.searching.for.string.in.file.progress", myExpression.expression, file.getPresentableUrl()));
 
-        public MyProcessor(Predicate<Usage> processor, int fileCount) {
-            myProcessor = processor;
-            myTotalFileCount = fileCount;
+            if (!searchInFile(file, processor)) {
+                return;
+            }
+
+            myIndicator.setFraction((i + 1) / (double)files.size());
         }
+    }
 
-        @Override
-        @RequiredReadAction
-        protected void processXmlFile(VirtualFile t) {
-            myIndicator.setText(findBundleMessage("find.searching.for.string.in.file.progress", myExpression.expression, t.getPresentableUrl()));
-
-            final PsiFile psiFile = myManager.findFile(t);
-            if (psiFile instanceof XmlFile) {
-                final XmlFile t1 = (XmlFile)psiFile;
-                final XmlDocument document;
-                FileViewProvider fileViewProvider = t1.getViewProvider();
-
-                if (fileViewProvider instanceof TemplateLanguageFileViewProvider) {
-                    final PsiFile root = fileViewProvider.getPsi(((TemplateLanguageFileViewProvider)fileViewProvider).getTemplateDataLanguage());
-
-                    if (root instanceof XmlFile) {
-                        document = ((XmlFile)root).getDocument();
-                    } else {
-                        document = null;
-                    }
-                } else {
-                    document = t1.getDocument();
-                }
-                if (document != null) {
-                    process(document);
-                }
+    /**
+     * Searches a single file in a read action that is canceled as soon as a write action is pending. In that case
+     * the write action is allowed to run and the file is searched again from scratch, so that even a search over a
+     * large scope never blocks typing or refactorings for longer than the evaluation of one file.
+     * <p>
+     * Every match is passed to the processor as soon as it is found. Matches that an interrupted attempt has already
+     * reported are skipped when the file is searched again. The write action may have reparsed the file, so matches
+     * are recognized by their kind and text range rather than by their PSI element.
+     * <p>
+     * Every attempt runs with its own indicator: the write action cancels that one, while the search itself is only
+     * canceled through {@link #myIndicator}.
+     *
+     * @return <code>false</code> if the processor stopped the search
+     */
+    private boolean searchInFile(VirtualFile file, Predicate<Usage> processor) {
+        final Set<List<Object>> reported = new HashSet<List<Object>>();
+        final Predicate<PsiElement> reporter = psiElement -> {
+            if (!reported.add(Arrays.<Object>asList(psiElement.getClass(), psiElement.getTextRange()))) {
+                return true;
             }
+            matchFound();
+            return processor.test(new UsageInfo2UsageAdapter(new UsageInfo(psiElement)));
+        };
 
-            myIndicator.setFraction(++myFileCount / (double)myTotalFileCount);
+        final long[] start = new long[1];
+        final boolean[] scanned = new boolean[1];
+        final boolean[] proceed = new boolean[1];
+        while (!ProgressIndicatorUtils.runInReadActionWithWriteActionPriority(() -> {
+            start[0] = XPathStatistics.start();
+            scanned[0] = false;
+            proceed[0] = processFile(file, reporter, scanned);
+        }, new LinkedProgressIndicator(myIndicator))) {
+            myIndicator.checkCanceled();
+            ProgressIndicatorUtils.yieldToPendingWriteActions();
         }
 
-        private void process(XmlDocument t) {
-            try {
-                final XmlFile psiFile = (XmlFile)t.getContainingFile();
-
-                final XPath searchPath;
-                final Pattern pattern;
-                final Context context;
-                if (myMatchRecursively) {
-                    searchPath = mySupport.createXPath(psiFile, "//*");
-                    searchPath.setVariableContext(new CachedVariableContext(myExpression.variables, searchPath, t));
-                    pattern = PatternParser.parse(myExpression.expression);
-
-                    final ContextSupport support = new ContextSupport(searchPath.getNamespaceContext(), searchPath.getFunctionContext(), searchPath.getVariableContext(), searchPath.getNavigator());
-                    context = new Context(support);
-                } else {
-                    searchPath = mySupport.createXPath(psiFile, myExpression.expression, myExpression.namespaces);
-                    searchPath.setVariableContext(new CachedVariableContext(myExpression.variables, searchPath, t));
-
-                    pattern = null;
-                    context = null;
-                }
-
-                final Object o = searchPath.evaluate(t);
-
-                if (o instanceof List) {
-                    //noinspection unchecked
-                    final List<PsiElement> list = ((List<PsiElement>)o);
-                    for (PsiElement psiElement : list) {
-                        myIndicator.checkCanceled();
-                        if (myMatchRecursively) {
-                            if (pattern.matches(psiElement, context)) {
-                                matchFound();
-                                myProcessor.test(new UsageInfo2UsageAdapter(new UsageInfo(psiElement)));
-                            }
-                        } else {
-                            matchFound();
-                            myProcessor.test(new UsageInfo2UsageAdapter(new UsageInfo(psiElement)));
-                        }
-                    }
-                } else if (Boolean.TRUE.equals(o)) {
-                    matchFound();
-                    myProcessor.test(new UsageInfo2UsageAdapter(new UsageInfo(psiFile)));
-                } else if (o instanceof Number) {
-                    if (((Number)o).intValue() != 0) {
-                        matchFound();
-                        myProcessor.test(new UsageInfo2UsageAdapter(new UsageInfo(psiFile)));
-                    }
-                } else if (o instanceof String) {
-                    if (((String)o).length() > 0) {
-                        matchFound();
-                        myProcessor.test(new UsageInfo2UsageAdapter(new UsageInfo(psiFile)));
-                    }
-                }
-            } catch (JaxenException e) {
-                Messages.showErrorDialog(myProject, "Error while evaluating XPath:\n" + e.getMessage(), "XPath Error");
-            } catch (SAXPathException e) {
-                Logger.getInstance(getClass().getName()).error(e);
-            }
+        // only the attempt that completed is counted
+        final XPathStatistics statistics = XPathStatistics.getInstance();
+        if (scanned[0]) {
+            statistics.recordTime(XPathStatistics.SEARCH_FILE, start[0]);
+            statistics.increment(XPathStatistics.FILES_SCANNED);
+        } else {
+            statistics.increment(XPathStatistics.FILES_SKIPPED);
         }
+        return proceed[0];
+    }
 
-        private void matchFound() {
-            myIndicator.setText2(findBundleMessage("find.searching.for.string.in.file.occurrences.progress", ++myMatchCount));
+    /**
+     * Searches the XML document of the file, if it has one, and sets <code>scanned[0]</code> if it did.
+     *
+     * @return <code>false</code> if the processor stopped the search
+     */
+    @RequiredReadAction
+    private boolean processFile(VirtualFile t, Predicate<PsiElement> reporter, boolean[] scanned) {
+        if (!t.isValid()) {
+            return true;
         }
+        final XmlDocument document = XPathFileMatcher.findDocument(myManager.findFile(t));
+        if (document == null) {
+            return true;
+        }
+        scanned[0] = true;
+        return process(document, reporter);
+    }
+
+    private boolean process(XmlDocument t, Predicate<PsiElement> reporter) {
+        try {
+            return myMatcher.process(t, reporter);
+        } catch (JaxenException e) {
+            Messages.showErrorDialog(myProject, "Error while evaluating XPath:\n" + e.getMessage(), "XPath Error");
+        } catch (SAXPathException e) {
+            Logger.getInstance(getClass().getName()).error(e);
+        }
+        return true;
+    }
+
+    private void matchFound() {
+        myIndicator.setText2(findBundleMessage("find.searching.for.string.in.file.occurrences.progress", ++myMatchCount));
     }
 
     private static String findBundleMessage(String s, Object... args) {
         return FindBundle.message(s, args);
     }
 
-    static class CountProcessor extends BaseProcessor {
-        private int myFileCount;
+    /**
+     * An indicator that is also canceled when the indicator of the whole search is, but can be canceled on its own.
+     */
+    private static class LinkedProgressIndicator extends EmptyProgressIndicator {
+        private final ProgressIndicator myParent;
+
+        LinkedProgressIndicator(ProgressIndicator parent) {
+            myParent = parent;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return super.isCanceled() || myParent.isCanceled();
+        }
+
+        @Override
+        public void checkCanceled() {
+            myParent.checkCanceled();
+            super.checkCanceled();
+        }
+    }
+
+    static class CollectProcessor extends BaseProcessor {
+        private final List<VirtualFile> myFiles = new ArrayList<VirtualFile>();
 
         @Override
         protected void processXmlFile(VirtualFile t) {
-            myFileCount++;
+            myFiles.add(t);
         }
 
-        public int getFileCount() {
-            return myFileCount;
+        public List<VirtualFile> getFiles() {
+            return myFiles;
         }
     }
 }
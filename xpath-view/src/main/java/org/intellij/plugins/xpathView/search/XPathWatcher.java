@@ -0,0 +1,292 @@
+/*
+ * Copyright 2006 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.search;
+
+import consulo.application.ApplicationManager;
+import consulo.application.progress.EmptyProgressIndicator;
+import consulo.application.progress.ProgressIndicator;
+import consulo.disposer.Disposable;
+import consulo.disposer.Disposer;
+import consulo.ide.impl.idea.openapi.progress.util.ProgressIndicatorUtils;
+import consulo.language.psi.PsiFile;
+import consulo.language.psi.PsiManager;
+import consulo.language.psi.event.PsiTreeChangeAdapter;
+import consulo.language.psi.event.PsiTreeChangeEvent;
+import consulo.logging.Logger;
+import consulo.project.Project;
+import consulo.ui.ex.awt.util.Alarm;
+import consulo.usage.Usage;
+import consulo.usage.UsageInFile;
+import consulo.usage.UsageInfo;
+import consulo.usage.UsageInfo2UsageAdapter;
+import consulo.usage.UsageView;
+import consulo.virtualFileSystem.VirtualFile;
+import consulo.xml.language.XmlLikeFileType;
+import consulo.xml.language.psi.XmlDocument;
+import org.intellij.plugins.xpathView.HistoryElement;
+import org.intellij.plugins.xpathView.support.jaxen.DocumentCache;
+import org.jaxen.JaxenException;
+import org.jaxen.saxpath.SAXPathException;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the results of a Find-by-XPath usage view up to date. PSI change events are collected per file and,
+ * after a quiet period, only the affected files are re-evaluated and their usages replaced in the view.
+ * File creation and deletion arrive as PSI child events as well, so no separate VFS listener is needed.
+ * <p>
+ * Every file is evaluated in a read action that gives way to write actions; an interrupted file is evaluated again
+ * after the next quiet period. Evaluation errors are passed to an error reporter instead of interrupting the user
+ * while they type. The watcher stops when it is disposed, at the latest with the usage view.
+ */
+class XPathWatcher implements Disposable {
+    private static final Logger LOG = Logger.getInstance(XPathWatcher.class);
+
+    private static final int DEBOUNCE_DELAY = 500;
+
+    private final Project myProject;
+    private final UsageView myUsageView;
+    private final SearchScope myScope;
+    private final XPathFileMatcher myMatcher;
+    private final Alarm myAlarm;
+    private final Consumer<String> myErrorReporter;
+
+    private final Set<VirtualFile> myPendingFiles = new LinkedHashSet<VirtualFile>();
+    private Map<VirtualFile, List<Usage>> myUsagesByFile;
+    private volatile boolean myDisposed;
+    private volatile ProgressIndicator myIndicator;
+    // the errors of the files whose last evaluation failed, only accessed by the alarm
+    private final Map<VirtualFile, String> myErrors = new LinkedHashMap<VirtualFile, String>();
+    // the last error passed to the reporter, so that the same error isn't reported again on every change
+    private String myReportedError;
+
+    private XPathWatcher(Project project, UsageView usageView, HistoryElement expression, SearchScope scope, boolean matchRecursively,
+                         Consumer<String> errorReporter) {
+        myProject = project;
+        myUsageView = usageView;
+        myScope = scope;
+        myMatcher = new XPathFileMatcher(expression, matchRecursively);
+        myAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, this);
+        myErrorReporter = errorReporter;
+    }
+
+    /**
+     * Starts watching the files of <code>scope</code>. The watcher lives as long as the usage view, or until it is
+     * disposed to stop watching.
+     *
+     * @param errorReporter called in the event dispatch thread with the errors of the files that cannot be evaluated,
+     *                      or with <code>null</code> once all of them can be evaluated again
+     */
+    static XPathWatcher watch(Project project, UsageView usageView, HistoryElement expression, SearchScope scope, boolean matchRecursively,
+                              Consumer<String> errorReporter) {
+        final XPathWatcher watcher = new XPathWatcher(project, usageView, expression, scope, matchRecursively, errorReporter);
+        Disposer.register(usageView, watcher);
+        PsiManager.getInstance(project).addPsiTreeChangeListener(watcher.new MyPsiTreeChangeListener(), watcher);
+        return watcher;
+    }
+
+    private void fileChanged(@Nullable PsiFile psiFile) {
+        final VirtualFile file = psiFile != null ? psiFile.getVirtualFile() : null;
+        if (file == null || myDisposed) {
+            return;
+        }
+        synchronized (myPendingFiles) {
+            // repeated events for the same file coalesce into one re-evaluation
+            myPendingFiles.add(file);
+        }
+        // restart the quiet period on every change
+        myAlarm.cancelAllRequests();
+        myAlarm.addRequest(this::flush, DEBOUNCE_DELAY);
+    }
+
+    private void flush() {
+        final List<VirtualFile> files;
+        synchronized (myPendingFiles) {
+            files = new ArrayList<VirtualFile>(myPendingFiles);
+            myPendingFiles.clear();
+        }
+
+        final Map<VirtualFile, List<Usage>> results = new LinkedHashMap<VirtualFile, List<Usage>>();
+        final Map<VirtualFile, String> errors = new HashMap<VirtualFile, String>(0);
+        try (DocumentCache.Scope ignored = DocumentCache.enter()) {
+            evaluateAll(files, results, errors);
+        }
+        reportErrors(results.keySet(), errors);
+
+        if (!results.isEmpty()) {
+            ApplicationManager.getApplication().invokeLater(() -> apply(results));
+        }
+    }
+
+    private void evaluateAll(List<VirtualFile> files, Map<VirtualFile, List<Usage>> results, Map<VirtualFile, String> errors) {
+        for (VirtualFile file : files) {
+            final ProgressIndicator indicator = new EmptyProgressIndicator();
+            myIndicator = indicator;
+            if (myDisposed) {
+                return;
+            }
+            final List<Usage> usages = new ArrayList<Usage>();
+            if (ProgressIndicatorUtils.runInReadActionWithWriteActionPriority(() -> {
+                usages.clear();
+                errors.remove(file);
+                evaluate(file, usages, errors);
+            }, indicator)) {
+                results.put(file, usages);
+            } else if (!myDisposed) {
+                // a write action interrupted us: try again with the next batch
+                synchronized (myPendingFiles) {
+                    myPendingFiles.add(file);
+                }
+                myAlarm.addRequest(this::flush, DEBOUNCE_DELAY);
+            }
+        }
+        myIndicator = null;
+    }
+
+    private void evaluate(VirtualFile file, List<Usage> usages, Map<VirtualFile, String> errors) {
+        if (!file.isValid() || !(file.getFileType() instanceof XmlLikeFileType) || !myScope.contains(myProject, file)) {
+            return;
+        }
+        final XmlDocument document = XPathFileMatcher.findDocument(PsiManager.getInstance(myProject).findFile(file));
+        if (document == null) {
+            return;
+        }
+
+        try {
+            myMatcher.process(document, psiElement -> usages.add(new UsageInfo2UsageAdapter(new UsageInfo(psiElement))));
+        }
+        catch (JaxenException e) {
+            errors.put(file, file.getPresentableUrl() + ": " + e.getMessage());
+        }
+        catch (SAXPathException e) {
+            LOG.error(e);
+        }
+    }
+
+    /**
+     * Updates the errors of the evaluated files and reports all current errors, unless they are the ones that have
+     * been reported last.
+     */
+    private void reportErrors(Collection<VirtualFile> evaluated, Map<VirtualFile, String> errors) {
+        for (VirtualFile file : evaluated) {
+            final String error = errors.get(file);
+            if (error != null) {
+                myErrors.put(file, error);
+            } else {
+                myErrors.remove(file);
+            }
+        }
+        final String message = myErrors.isEmpty() ? null : String.join("\n", myErrors.values());
+        if (Objects.equals(message, myReportedError) || myDisposed) {
+            return;
+        }
+        myReportedError = message;
+        ApplicationManager.getApplication().invokeLater(() -> {
+            if (!myDisposed) {
+                myErrorReporter.accept(message);
+            }
+        });
+    }
+
+    private void apply(Map<VirtualFile, List<Usage>> results) {
+        if (myDisposed) {
+            return;
+        }
+        final Map<VirtualFile, List<Usage>> usagesByFile = getUsagesByFile();
+        for (Map.Entry<VirtualFile, List<Usage>> entry : results.entrySet()) {
+            final List<Usage> old = usagesByFile.remove(entry.getKey());
+            if (old != null) {
+                myUsageView.removeUsagesBulk(old);
+            }
+            final List<Usage> usages = entry.getValue();
+            if (!usages.isEmpty()) {
+                for (Usage usage : usages) {
+                    myUsageView.appendUsage(usage);
+                }
+                usagesByFile.put(entry.getKey(), usages);
+            }
+        }
+    }
+
+    /**
+     * Lazily indexes the usages produced by the initial search, so later updates know what to replace.
+     */
+    private Map<VirtualFile, List<Usage>> getUsagesByFile() {
+        if (myUsagesByFile == null) {
+            myUsagesByFile = new HashMap<VirtualFile, List<Usage>>();
+            for (Usage usage : myUsageView.getUsages()) {
+                if (usage instanceof UsageInFile) {
+                    final VirtualFile file = ((UsageInFile)usage).getFile();
+                    if (file != null) {
+                        myUsagesByFile.computeIfAbsent(file, f -> new ArrayList<Usage>()).add(usage);
+                    }
+                }
+            }
+        }
+        return myUsagesByFile;
+    }
+
+    @Override
+    public void dispose() {
+        myDisposed = true;
+        final ProgressIndicator indicator = myIndicator;
+        if (indicator != null) {
+            indicator.cancel();
+        }
+        synchronized (myPendingFiles) {
+            myPendingFiles.clear();
+        }
+    }
+
+    private class MyPsiTreeChangeListener extends PsiTreeChangeAdapter {
+        @Override
+        public void childAdded(@Nonnull PsiTreeChangeEvent event) {
+            changed(event);
+        }
+
+        @Override
+        public void childRemoved(@Nonnull PsiTreeChangeEvent event) {
+            changed(event);
+        }
+
+        @Override
+        public void childReplaced(@Nonnull PsiTreeChangeEvent event) {
+            changed(event);
+        }
+
+        @Override
+        public void childrenChanged(@Nonnull PsiTreeChangeEvent event) {
+            changed(event);
+        }
+
+        @Override
+        public void childMoved(@Nonnull PsiTreeChangeEvent event) {
+            changed(event);
+        }
+
+        private void changed(PsiTreeChangeEvent event) {
+            if (event.getFile() != null) {
+                fileChanged(event.getFile());
+            } else if (event.getChild() instanceof PsiFile) {
+                // file created or deleted
+                fileChanged((PsiFile)event.getChild());
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.support;
+
+import org.jaxen.JaxenException;
+import org.jaxen.XPath;
+
+import jakarta.annotation.Nonnull;
+import java.util.Iterator;
+
+/**
+ * An {@link XPath} that can compute the nodes of its result lazily, see {@link XPathResults#iterate}.
+ */
+public interface StreamingXPath extends XPath {
+    /**
+     * Returns the items of the result for <code>context</code>: the nodes of a node-set, or the single value of any
+     * other result. The iterator may throw a <code>JaxenRuntimeException</code> that wraps an evaluation error.
+     */
+    @Nonnull
+    Iterator<?> iterate(Object context) throws JaxenException;
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.support;
+
+import consulo.annotation.component.ComponentScope;
+import consulo.annotation.component.ExtensionAPI;
+import consulo.application.Application;
+import consulo.xml.language.psi.XmlFile;
+import org.jaxen.FunctionContext;
+import org.jaxen.JaxenException;
+import org.jaxen.NamespaceContext;
+import org.jaxen.XPath;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import java.util.List;
+
+/**
+ * An engine that evaluates the XPath expressions created by {@link XPathSupport}.
+ * <p>
+ * All engines share Jaxen's {@link XPath} interface as their result model: <code>evaluate()</code> returns a
+ * <code>List</code> of nodes (or of atomic values, for XPath 2.0), a <code>String</code>, a <code>Number</code> or a
+ * <code>Boolean</code>, and the navigator is a PSI navigator. Callers like the Evaluate action, Find by XPath and the
+ * expression generator therefore work with any engine. The engine for a request is chosen by
+ * {@link XPathEngineSelector}.
+ */
+@ExtensionAPI(ComponentScope.APPLICATION)
+public abstract class XPathEngine {
+    /**
+     * A stable name of the engine, used for its statistics.
+     */
+    @Nonnull
+    public abstract String getId();
+
+    /**
+     * Whether this engine can evaluate the expression of <code>request</code>.
+     */
+    public abstract boolean supports(@Nonnull Request request);
+
+    @Nonnull
+    public abstract XPath createXPath(@Nonnull Request request) throws JaxenException;
+
+    public static List<XPathEngine> getEngines() {
+        return Application.get().getExtensionPoint(XPathEngine.class).getExtensionList();
+    }
+
+    /**
+     * An expression to create an {@link XPath} for, with the namespaces and functions it may use.
+     */
+    public static final class Request {
+        private final XmlFile myFile;
+        private final String myExpression;
+        private final boolean myXPath2;
+        private final NamespaceContext myNamespaceContext;
+        private final FunctionContext myFunctionContext;
+
+        public Request(@Nullable XmlFile file, String expression, boolean xpath2, NamespaceContext namespaceContext, FunctionContext functionContext) {
+            myFile = file;
+            myExpression = expression;
+            myXPath2 = xpath2;
+            myNamespaceContext = namespaceContext;
+            myFunctionContext = functionContext;
+        }
+
+        /**
+         * The file the expression will be evaluated on, <code>null</code> if the expression is only validated.
+         */
+        @Nullable
+        public XmlFile getFile() {
+            return myFile;
+        }
+
+        public String getExpression() {
+            return myExpression;
+        }
+
+        /**
+         * Whether the expression is XPath 2.0.
+         */
+        public boolean isXPath2() {
+            return myXPath2;
+        }
+
+        public NamespaceContext getNamespaceContext() {
+            return myNamespaceContext;
+        }
+
+        public FunctionContext getFunctionContext() {
+            return myFunctionContext;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.support;
+
+import org.jaxen.*;
+
+import jakarta.annotation.Nonnull;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Chooses the {@link XPathEngine} for a request: the first engine that {@link XPathEngine#supports supports} it. The
+ * evaluation times of each engine are recorded in the {@link XPathStatistics}.
+ */
+public final class XPathEngineSelector {
+    private XPathEngineSelector() {
+    }
+
+    @Nonnull
+    public static XPath createXPath(@Nonnull XPathEngine.Request request) throws JaxenException {
+        for (XPathEngine engine : XPathEngine.getEngines()) {
+            if (engine.supports(request)) {
+                return new MeasuredXPath(engine.createXPath(request), "engine." + engine.getId());
+            }
+        }
+        throw new JaxenException("No XPath engine can evaluate " + (request.isXPath2() ? "XPath 2.0" : "XPath 1.0") + " expression: " + request.getExpression());
+    }
+
+    /**
+     * Records the evaluation time of the engine's XPath.
+     */
+    private static final class MeasuredXPath implements StreamingXPath {
+        private final XPath myDelegate;
+        private final String myName;
+
+        MeasuredXPath(XPath delegate, String name) {
+            myDelegate = delegate;
+            myName = name;
+        }
+
+        public Object evaluate(Object context) throws JaxenException {
+            final long start = XPathStatistics.start();
+            try {
+                return myDelegate.evaluate(context);
+            } finally {
+                XPathStatistics.getInstance().recordTime(myName, start);
+            }
+        }
+
+        @SuppressWarnings({ "RawUseOfParameterizedType" })
+        public List selectNodes(Object context) throws JaxenException {
+            final long start = XPathStatistics.start();
+            try {
+                return myDelegate.selectNodes(context);
+            } finally {
+                XPathStatistics.getInstance().recordTime(myName, start);
+            }
+        }
+
+        @Nonnull
+        public Iterator<?> iterate(Object context) throws JaxenException {
+            return XPathResults.iterate(myDelegate, context);
+        }
+
+        public Object selectSingleNode(Object context) throws JaxenException {
+            return myDelegate.selectSingleNode(context);
+        }
+
+        @Deprecated
+        public String valueOf(Object context) throws JaxenException {
+            return myDelegate.valueOf(context);
+        }
+
+        public String stringValueOf(Object context) throws JaxenException {
+            return myDelegate.stringValueOf(context);
+        }
+
+        public boolean booleanValueOf(Object context) throws JaxenException {
+            return myDelegate.booleanValueOf(context);
+        }
+
+        public Number numberValueOf(Object context) throws JaxenException {
+            return myDelegate.numberValueOf(context);
+        }
+
+        public void addNamespace(String prefix, String uri) throws JaxenException {
+            myDelegate.addNamespace(prefix, uri);
+        }
+
+        public void setNamespaceContext(NamespaceContext namespaceContext) {
+            myDelegate.setNamespaceContext(namespaceContext);
+        }
+
+        public void setFunctionContext(FunctionContext functionContext) {
+            myDelegate.setFunctionContext(functionContext);
+        }
+
+        public void setVariableContext(VariableContext variableContext) {
+            myDelegate.setVariableContext(variableContext);
+        }
+
+        public NamespaceContext getNamespaceContext() {
+            return myDelegate.getNamespaceContext();
+        }
+
+        public FunctionContext getFunctionContext() {
+            return myDelegate.getFunctionContext();
+        }
+
+        public VariableContext getVariableContext() {
+            return myDelegate.getVariableContext();
+        }
+
+        public Navigator getNavigator() {
+            return myDelegate.getNavigator();
+        }
+
+        public String toString() {
+            return myDelegate.toString();
+        }
+    }
+}
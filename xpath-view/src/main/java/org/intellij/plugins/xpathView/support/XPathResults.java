@@ -0,0 +1,53 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.support;
+
+import org.jaxen.JaxenException;
+import org.jaxen.XPath;
+
+import jakarta.annotation.Nonnull;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Iterates over the result of an {@link XPath} item by item, so that callers can handle the matches as they are found
+ * and stop early.
+ */
+public final class XPathResults {
+    private XPathResults() {
+    }
+
+    /**
+     * Returns the items of the result of <code>xpath</code> for <code>context</code>, lazily if the XPath is a
+     * {@link StreamingXPath}.
+     */
+    @Nonnull
+    public static Iterator<?> iterate(@Nonnull XPath xpath, Object context) throws JaxenException {
+        if (xpath instanceof StreamingXPath) {
+            return ((StreamingXPath)xpath).iterate(context);
+        }
+        return items(xpath.evaluate(context));
+    }
+
+    /**
+     * Returns the items of an evaluation result: the elements of a list, or the result itself.
+     */
+    @Nonnull
+    public static Iterator<?> items(Object result) {
+        return result instanceof List ? ((List<?>)result).iterator() : Collections.singletonList(result).iterator();
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.support;
+
+import consulo.annotation.component.ComponentScope;
+import consulo.annotation.component.ServiceAPI;
+import consulo.annotation.component.ServiceImpl;
+import consulo.application.Application;
+import consulo.disposer.Disposable;
+import consulo.logging.Logger;
+import jakarta.annotation.Nonnull;
+import jakarta.inject.Singleton;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Application-wide counters and histograms for XPath evaluation, Find-by-XPath and result highlighting.
+ * The data is available through the "Show XPath Statistics" action and as the JMX bean
+ * <code>org.intellij.plugins.xpathView:type=XPathStatistics</code>.
+ */
+@Singleton
+@ServiceAPI(ComponentScope.APPLICATION)
+@ServiceImpl
+public class XPathStatistics implements XPathStatisticsMBean, Disposable {
+    private static final Logger LOG = Logger.getInstance(XPathStatistics.class);
+
+    private static final String OBJECT_NAME = "org.intellij.plugins.xpathView:type=XPathStatistics";
+
+    // latencies, in microseconds
+    public static final String CREATE_XPATH = "createXPath";
+    public static final String EVALUATE = "evaluate";
+    public static final String EVALUATE_COMPILED = "evaluate.compiled";
+    public static final String EVALUATE_INTERPRETED = "evaluate.interpreted";
+    public static final String SEARCH_FILE = "search.file";
+    public static final String HIGHLIGHT = "highlight";
+
+    // sizes
+    public static final String RESULT_SIZE = "result.size";
+
+    // plain counters
+    public static final String FILES_SCANNED = "search.files.scanned";
+    public static final String FILES_SKIPPED = "search.files.skipped";
+
+    private final Map<String, Histogram> myHistograms = new ConcurrentSkipListMap<String, Histogram>();
+    private final Map<String, LongAdder> myCounters = new ConcurrentSkipListMap<String, LongAdder>();
+    private final Map<String, CacheStatistics> myCaches = new ConcurrentHashMap<String, CacheStatistics>();
+
+    private boolean myRegistered;
+
+    public XPathStatistics() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+                myRegistered = true;
+            }
+        } catch (Exception e) {
+            LOG.info("Cannot register XPath statistics MBean: " + e.getMessage());
+        }
+    }
+
+    @Nonnull
+    public static XPathStatistics getInstance() {
+        return Application.get().getInstance(XPathStatistics.class);
+    }
+
+    /**
+     * Returns the start timestamp for a later call to {@link #recordTime(String, long)}.
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    public void recordTime(String name, long startNanos) {
+        histogram(name).record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    public void recordValue(String name, long value) {
+        histogram(name).record(value);
+    }
+
+    public void increment(String name) {
+        myCounters.computeIfAbsent(name, n -> new LongAdder()).increment();
+    }
+
+    @Nonnull
+    public CacheStatistics cache(String name) {
+        return myCaches.computeIfAbsent(name, CacheStatistics::new);
+    }
+
+    @Nonnull
+    private Histogram histogram(String name) {
+        return myHistograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    public List<Row> getRows() {
+        final List<Row> rows = new ArrayList<Row>();
+        for (Map.Entry<String, Histogram> entry : myHistograms.entrySet()) {
+            final Histogram h = entry.getValue();
+            rows.add(new Row(entry.getKey(), h.count(), h.mean(), h.percentile(0.5), h.percentile(0.9), h.percentile(0.99), h.max()));
+        }
+        for (Map.Entry<String, LongAdder> entry : myCounters.entrySet()) {
+            rows.add(new Row(entry.getKey(), entry.getValue().sum(), -1, -1, -1, -1, -1));
+        }
+        for (CacheStatistics cache : new ConcurrentSkipListMap<String, CacheStatistics>(myCaches).values()) {
+            rows.add(new Row("cache." + cache.getName() + ".hits", cache.getHits(), -1, -1, -1, -1, -1));
+            rows.add(new Row("cache." + cache.getName() + ".misses", cache.getMisses(), -1, -1, -1, -1, -1));
+        }
+        return rows;
+    }
+
+    @Override
+    public String[] getSummary() {
+        final List<Row> rows = getRows();
+        final String[] summary = new String[rows.size()];
+        for (int i = 0; i < summary.length; i++) {
+            summary[i] = rows.get(i).toString();
+        }
+        return summary;
+    }
+
+    @Override
+    public long getEvaluationCount() {
+        return histogram(EVALUATE).count();
+    }
+
+    @Override
+    public double getEvaluationMeanMicros() {
+        return histogram(EVALUATE).mean();
+    }
+
+    @Override
+    public long getFilesScanned() {
+        final LongAdder adder = myCounters.get(FILES_SCANNED);
+        return adder != null ? adder.sum() : 0;
+    }
+
+    @Override
+    public void reset() {
+        myHistograms.clear();
+        myCounters.clear();
+        for (CacheStatistics cache : myCaches.values()) {
+            cache.reset();
+        }
+    }
+
+    @Override
+    public void dispose() {
+        if (myRegistered) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+            } catch (Exception e) {
+                LOG.debug(e);
+            }
+        }
+    }
+
+    public static final class CacheStatistics {
+        private final String myName;
+        private final LongAdder myHits = new LongAdder();
+        private final LongAdder myMisses = new LongAdder();
+
+        private CacheStatistics(String name) {
+            myName = name;
+        }
+
+        public String getName() {
+            return myName;
+        }
+
+        public void hit() {
+            myHits.increment();
+        }
+
+        public void miss() {
+            myMisses.increment();
+        }
+
+        public long getHits() {
+            return myHits.sum();
+        }
+
+        public long getMisses() {
+            return myMisses.sum();
+        }
+
+        void reset() {
+            myHits.reset();
+            myMisses.reset();
+        }
+    }
+
+    /**
+     * Histogram with power-of-two buckets: bucket <code>i</code> counts values in <code>[2^(i-1), 2^i)</code>.
+     */
+    private static final class Histogram {
+        private static final int BUCKETS = 64;
+
+        private final AtomicLongArray myBuckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder myCount = new LongAdder();
+        private final LongAdder mySum = new LongAdder();
+        private volatile long myMax;
+
+        void record(long value) {
+            if (value < 0) value = 0;
+            myBuckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+            myCount.increment();
+            mySum.add(value);
+            if (value > myMax) {
+                myMax = value;
+            }
+        }
+
+        long count() {
+            return myCount.sum();
+        }
+
+        long max() {
+            return myMax;
+        }
+
+        double mean() {
+            final long count = count();
+            return count == 0 ? 0 : mySum.sum() / (double)count;
+        }
+
+        /**
+         * Returns the upper bound of the bucket that contains the given quantile.
+         */
+        long percentile(double q) {
+            final long count = count();
+            if (count == 0) return 0;
+
+            final long rank = (long)Math.ceil(q * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += myBuckets.get(i);
+                if (seen >= rank) {
+                    return i == 0 ? 0 : Math.min((1L << i) - 1, myMax);
+                }
+            }
+            return myMax;
+        }
+    }
+
+    public static final class Row {
+        public final String name;
+        public final long count;
+        public final double mean;
+        public final long p50;
+        public final long p90;
+        public final long p99;
+        public final long max;
+
+        Row(String name, long count, double mean, long p50, long p90, long p99, long max) {
+            this.name = name;
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        public boolean isCounter() {
+            return mean < 0;
+        }
+
+        public String toString() {
+            if (isCounter()) {
+                return name + ": " + count;
+            }
+            return String.format("%s: count=%d mean=%.1f p50=%d p90=%d p99=%d max=%d", name, count, mean, p50, p90, p99, max);
+        }
+    }
+}
@@ -38,6 +38,15 @@ public abstract class XPathSupport {
 
     public abstract XPath createXPath(@Nullable XmlFile psiFile, String expression, @Nonnull Collection<Namespace> namespaces) throws JaxenException;
 
+    public abstract XPath createXPath2(@Nullable XmlFile psiFile, String expression, @Nonnull Collection<Namespace> namespaces) throws JaxenException;
+
+    /**
+     * Creates the XPath for an expression entered by the user, as XPath 2.0 if <code>xpath2</code> is set.
+     */
+    public XPath createXPath(@Nullable XmlFile psiFile, String expression, @Nonnull Collection<Namespace> namespaces, boolean xpath2) throws JaxenException {
+        return xpath2 ? createXPath2(psiFile, expression, namespaces) : createXPath(psiFile, expression, namespaces);
+    }
+
     public abstract String getPath(XmlElement element, XmlTag context);
 
     public abstract String getUniquePath(XmlElement element, XmlTag context);
@@ -54,6 +54,8 @@ class AttributeIterator implements Iterator {
     }
 
     public Object next() {
-        return theIterator.next();
+        final XmlAttribute attribute = theIterator.next();
+        if (XPathTrace.ENABLED) XPathTrace.nodeVisited(attribute);
+        return attribute;
     }
 }
@@ -0,0 +1,381 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.support.jaxen;
+
+import org.jaxen.JaxenException;
+import org.jaxen.JaxenRuntimeException;
+import org.jaxen.NamespaceContext;
+import org.jaxen.Navigator;
+import org.jaxen.expr.*;
+import org.jaxen.function.StringFunction;
+import org.jaxen.saxpath.Axis;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import java.util.*;
+
+/**
+ * A location path compiled into a chain of closures that walk the PSI tree through {@link PsiDocumentNavigator}
+ * directly. Name tests are resolved to a local name and namespace URI once, and predicates that don't depend on the
+ * context position become plain filters. Compared to Jaxen's interpreter, an evaluation doesn't create a
+ * <code>Context</code> per node and step, and results are put into document order with {@link DocumentOrder} instead
+ * of comparing nodes through their ancestors.
+ * <p>
+ * Only the subset of XPath that covers the typical Find-by-XPath expressions is supported: location paths on the
+ * <code>child</code>, <code>descendant</code>, <code>descendant-or-self</code>, <code>self</code>,
+ * <code>attribute</code> and <code>parent</code> axes with name, <code>node()</code>, <code>text()</code> and
+ * <code>comment()</code> tests, and predicates that are location paths or compare one with a string literal.
+ * Anything else is left to Jaxen, see {@link #compile(Expr, NamespaceContext)}.
+ * <p>
+ * Compilation can be switched off with the system property <code>xpathView.compile=false</code>.
+ */
+final class CompiledPath {
+    static final boolean ENABLED = !"false".equals(System.getProperty("xpathView.compile"));
+
+    private interface NodeTest {
+        boolean matches(Object node, Navigator navigator) throws JaxenException;
+    }
+
+    private static final class CompiledStep {
+        final int myAxis;
+        final NodeTest myTest;
+
+        CompiledStep(int axis, NodeTest test) {
+            myAxis = axis;
+            myTest = test;
+        }
+    }
+
+    private final boolean myAbsolute;
+    private final CompiledStep[] mySteps;
+
+    private CompiledPath(boolean absolute, List<CompiledStep> steps) {
+        myAbsolute = absolute;
+        mySteps = steps.toArray(new CompiledStep[steps.size()]);
+    }
+
+    /**
+     * Compiles <code>expr</code>, resolving namespace prefixes with <code>namespaces</code>. Returns
+     * <code>null</code> if the expression is not supported; it must then be evaluated by Jaxen.
+     */
+    @Nullable
+    static CompiledPath compile(Expr expr, NamespaceContext namespaces) {
+        if (!(expr instanceof LocationPath)) {
+            return null;
+        }
+        final LocationPath path = (LocationPath)expr;
+        final List<?> steps = path.getSteps();
+        if (steps.isEmpty()) {
+            // "/" is handled by Jaxen
+            return null;
+        }
+
+        final List<CompiledStep> compiled = new ArrayList<CompiledStep>(steps.size());
+        for (int i = 0; i < steps.size(); i++) {
+            final Step step = (Step)steps.get(i);
+            // descendant-or-self::node()/child::x selects the same nodes as descendant::x if x has no positional
+            // predicates, and none of the supported predicates is positional
+            if (i + 1 < steps.size() && isDescendantOrSelfNode(step) && ((Step)steps.get(i + 1)).getAxis() == Axis.CHILD) {
+                final CompiledStep next = compileStep((Step)steps.get(++i), Axis.DESCENDANT, namespaces);
+                if (next == null) {
+                    return null;
+                }
+                compiled.add(next);
+                continue;
+            }
+            final CompiledStep s = compileStep(step, step.getAxis(), namespaces);
+            if (s == null) {
+                return null;
+            }
+            compiled.add(s);
+        }
+        return new CompiledPath(path.isAbsolute(), compiled);
+    }
+
+    private static boolean isDescendantOrSelfNode(Step step) {
+        return step.getAxis() == Axis.DESCENDANT_OR_SELF && step instanceof AllNodeStep && step.getPredicates().isEmpty();
+    }
+
+    @Nullable
+    private static CompiledStep compileStep(Step step, int axis, NamespaceContext namespaces) {
+        switch (axis) {
+            case Axis.CHILD:
+            case Axis.DESCENDANT:
+            case Axis.DESCENDANT_OR_SELF:
+            case Axis.SELF:
+            case Axis.ATTRIBUTE:
+            case Axis.PARENT:
+                break;
+            default:
+                return null;
+        }
+
+        NodeTest test = compileNodeTest(step, axis, namespaces);
+        if (test == null) {
+            return null;
+        }
+        for (Object o : step.getPredicates()) {
+            final NodeTest predicate = compilePredicate(((Predicate)o).getExpr(), namespaces);
+            if (predicate == null) {
+                return null;
+            }
+            final NodeTest t = test;
+            test = (node, navigator) -> t.matches(node, navigator) && predicate.matches(node, navigator);
+        }
+        return new CompiledStep(axis, test);
+    }
+
+    @Nullable
+    private static NodeTest compileNodeTest(Step step, int axis, NamespaceContext namespaces) {
+        if (step instanceof AllNodeStep) {
+            return (node, navigator) -> true;
+        }
+        if (step instanceof TextNodeStep) {
+            return (node, navigator) -> navigator.isText(node);
+        }
+        if (step instanceof CommentNodeStep) {
+            return (node, navigator) -> navigator.isComment(node);
+        }
+        if (!(step instanceof NameStep)) {
+            return null;
+        }
+
+        final NameStep nameStep = (NameStep)step;
+        final String prefix = nameStep.getPrefix();
+        final String localName = nameStep.getLocalName();
+        final boolean anyName = "*".equals(localName);
+        final boolean attribute = axis == Axis.ATTRIBUTE;
+
+        final String uri;
+        if (prefix != null && prefix.length() > 0) {
+            uri = namespaces != null ? namespaces.translateNamespacePrefixToUri(prefix) : null;
+            if (uri == null) {
+                // let Jaxen report the unresolvable prefix
+                return null;
+            }
+        } else if (anyName) {
+            return attribute ? (node, navigator) -> navigator.isAttribute(node) : (node, navigator) -> navigator.isElement(node);
+        } else {
+            uri = "";
+        }
+
+        if (attribute) {
+            return (node, navigator) -> navigator.isAttribute(node)
+                    && (anyName || localName.equals(navigator.getAttributeName(node)))
+                    && uri.equals(notNull(navigator.getAttributeNamespaceUri(node)));
+        }
+        return (node, navigator) -> navigator.isElement(node)
+                && (anyName || localName.equals(navigator.getElementName(node)))
+                && uri.equals(notNull(navigator.getElementNamespaceUri(node)));
+    }
+
+    private static String notNull(String s) {
+        return s != null ? s : "";
+    }
+
+    @Nullable
+    private static NodeTest compilePredicate(Expr expr, NamespaceContext namespaces) {
+        if (expr instanceof LocationPath) {
+            final CompiledPath path = compile(expr, namespaces);
+            if (path == null) {
+                return null;
+            }
+            return (node, navigator) -> !path.select(node, navigator).isEmpty();
+        }
+
+        if (expr instanceof EqualityExpr) {
+            final EqualityExpr equality = (EqualityExpr)expr;
+            final boolean equals = "=".equals(equality.getOperator());
+
+            final Expr path;
+            final Expr literal;
+            if (equality.getRHS() instanceof LiteralExpr) {
+                path = equality.getLHS();
+                literal = equality.getRHS();
+            } else {
+                path = equality.getRHS();
+                literal = equality.getLHS();
+            }
+            if (!(literal instanceof LiteralExpr)) {
+                return null;
+            }
+            final CompiledPath compiled = compile(path, namespaces);
+            if (compiled == null) {
+                return null;
+            }
+
+            // a node-set compares to a string if the string-value of any of its nodes does
+            final String value = ((LiteralExpr)literal).getLiteral();
+            return (node, navigator) -> {
+                for (Object o : compiled.select(node, navigator)) {
+                    if (value.equals(StringFunction.evaluate(o, navigator)) == equals) {
+                        return true;
+                    }
+                }
+                return false;
+            };
+        }
+        return null;
+    }
+
+    private List<Object> select(Object contextNode, Navigator navigator) throws JaxenException {
+        return evaluate(Collections.singletonList(contextNode), navigator, false);
+    }
+
+    /**
+     * Evaluates the path for the given context nodes.
+     *
+     * @param sort whether the result has to be in document order; it is always free of duplicates
+     */
+    @Nonnull
+    List<Object> evaluate(List<?> contextNodes, Navigator navigator, boolean sort) throws JaxenException {
+        List<?> nodes = contextNodes;
+        if (myAbsolute) {
+            final Object document = nodes.isEmpty() ? null : navigator.getDocumentNode(nodes.get(0));
+            if (document == null) {
+                return Collections.emptyList();
+            }
+            nodes = Collections.singletonList(document);
+        }
+
+        // the result of a step from a single node is in document order already
+        boolean ordered = true;
+        for (CompiledStep step : mySteps) {
+            ordered = nodes.size() <= 1;
+            final Set<Object> seen = ordered ? null : Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+            final List<Object> result = new ArrayList<Object>();
+            for (Object node : nodes) {
+                final Iterator<?> it = iterator(step.myAxis, node, navigator);
+                while (it.hasNext()) {
+                    final Object n = it.next();
+                    if (step.myTest.matches(n, navigator) && (seen == null || seen.add(n))) {
+                        result.add(n);
+                    }
+                }
+            }
+            if (result.isEmpty()) {
+                return result;
+            }
+            nodes = result;
+        }
+
+        //noinspection unchecked
+        return sort && !ordered ? DocumentOrder.sort(nodes) : (List<Object>)nodes;
+    }
+
+    /**
+     * Evaluates the path lazily: every match is found by a depth-first walk from the context nodes through the steps,
+     * so the first matches are available long before the whole document has been visited. The matches are free of
+     * duplicates, but are only in document order if every step but the last selects at most one node.
+     */
+    @Nonnull
+    Iterator<Object> iterator(List<?> contextNodes, Navigator navigator) {
+        if (myAbsolute) {
+            final Object document = contextNodes.isEmpty() ? null : navigator.getDocumentNode(contextNodes.get(0));
+            return new LazyResult(document != null ? Collections.singletonList(document) : Collections.emptyList(), navigator);
+        }
+        return new LazyResult(contextNodes, navigator);
+    }
+
+    private final class LazyResult implements Iterator<Object> {
+        private final Navigator myNavigator;
+        // level 0 iterates the context nodes, level i the axis of step i - 1 from the current node of level i - 1
+        private final Iterator<?>[] myIterators;
+        // the nodes each step has selected so far; a node reached again selects nothing new
+        private final List<Set<Object>> mySeen;
+        private int myLevel;
+        private Object myNext;
+
+        LazyResult(List<?> contextNodes, Navigator navigator) {
+            myNavigator = navigator;
+            myIterators = new Iterator<?>[mySteps.length + 1];
+            myIterators[0] = contextNodes.iterator();
+            mySeen = new ArrayList<Set<Object>>(mySteps.length);
+            for (int i = 0; i < mySteps.length; i++) {
+                mySeen.add(Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>()));
+            }
+        }
+
+        public boolean hasNext() {
+            if (myNext != null) {
+                return true;
+            }
+            try {
+                myNext = advance();
+            } catch (JaxenException e) {
+                throw new JaxenRuntimeException(e);
+            }
+            return myNext != null;
+        }
+
+        public Object next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Object next = myNext;
+            myNext = null;
+            return next;
+        }
+
+        @Nullable
+        private Object advance() throws JaxenException {
+            while (myLevel >= 0) {
+                final Iterator<?> it = myIterators[myLevel];
+                if (!it.hasNext()) {
+                    myLevel--;
+                    continue;
+                }
+                final Object node = it.next();
+                if (myLevel > 0) {
+                    final CompiledStep step = mySteps[myLevel - 1];
+                    if (!step.myTest.matches(node, myNavigator) || !mySeen.get(myLevel - 1).add(node)) {
+                        continue;
+                    }
+                    if (myLevel == mySteps.length) {
+                        return node;
+                    }
+                }
+                myIterators[myLevel + 1] = iterator(mySteps[myLevel].myAxis, node, myNavigator);
+                myLevel++;
+            }
+            return null;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static Iterator<?> iterator(int axis, Object node, Navigator navigator) throws JaxenException {
+        switch (axis) {
+            case Axis.CHILD:
+                return navigator.getChildAxisIterator(node);
+            case Axis.DESCENDANT:
+                return navigator.getDescendantAxisIterator(node);
+            case Axis.DESCENDANT_OR_SELF:
+                return navigator.getDescendantOrSelfAxisIterator(node);
+            case Axis.SELF:
+                return navigator.getSelfAxisIterator(node);
+            case Axis.ATTRIBUTE:
+                return navigator.getAttributeAxisIterator(node);
+            case Axis.PARENT:
+                return navigator.getParentAxisIterator(node);
+            default:
+                throw new IllegalStateException("Unsupported axis: " + axis);
+        }
+    }
+}
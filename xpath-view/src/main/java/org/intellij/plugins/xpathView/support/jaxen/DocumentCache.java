@@ -0,0 +1,141 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.support.jaxen;
+
+import consulo.language.psi.PsiFile;
+import consulo.language.psi.PsiManager;
+import consulo.virtualFileSystem.VirtualFile;
+import consulo.virtualFileSystem.VirtualFileManager;
+import consulo.virtualFileSystem.util.VirtualFileUtil;
+import consulo.xml.language.psi.XmlDocument;
+import consulo.xml.language.psi.XmlFile;
+import org.intellij.plugins.xpathView.support.XPathStatistics;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Caches the documents loaded by the <code>document()</code> function. A cache is bound to the current thread and
+ * lives as long as the outermost {@link Scope}: every evaluation opens one, and a caller that evaluates many
+ * expressions, like Find by XPath, can open a scope around all of them to share the loaded documents.
+ * <p>
+ * Documents are keyed by the URL of the resolved file. Cached documents are validated on every hit, and the resolved
+ * files are dropped whenever files are created, deleted, renamed or moved, so a scope may span several read and write
+ * actions.
+ */
+public final class DocumentCache {
+    private static final ThreadLocal<DocumentCache> CURRENT = new ThreadLocal<DocumentCache>();
+
+    private static final Object NOT_FOUND = new Object();
+
+    // (directory URL, href) -> resolved file
+    private final Map<String, Object> myFiles = new HashMap<String, Object>();
+    // resolved file URL -> document
+    private final Map<String, XmlDocument> myDocuments = new HashMap<String, XmlDocument>();
+    // the VFS modification count the resolved files are valid for
+    private long myFilesStamp = -1;
+
+    private DocumentCache() {
+    }
+
+    /**
+     * Opens a scope for the current thread. If a scope is already open, the new one shares its cache.
+     */
+    @Nonnull
+    public static Scope enter() {
+        final DocumentCache current = CURRENT.get();
+        if (current != null) {
+            return new Scope(null);
+        }
+        final DocumentCache cache = new DocumentCache();
+        CURRENT.set(cache);
+        return new Scope(cache);
+    }
+
+    @Nullable
+    static XmlDocument getDocument(@Nonnull XmlFile base, String url) {
+        final DocumentCache cache = CURRENT.get();
+        return cache != null ? cache.get(base, url) : load(base, findFile(base, url));
+    }
+
+    @Nullable
+    private XmlDocument get(XmlFile base, String url) {
+        final XPathStatistics.CacheStatistics statistics = XPathStatistics.getInstance().cache("documents");
+
+        final VirtualFile baseFile = base.getVirtualFile();
+        final VirtualFile baseDir = baseFile != null ? baseFile.getParent() : null;
+        final String key = (baseDir != null ? baseDir.getUrl() : "") + '\n' + url;
+
+        final long stamp = VirtualFileManager.getInstance().getModificationCount();
+        if (stamp != myFilesStamp) {
+            myFiles.clear();
+            myFilesStamp = stamp;
+        }
+        Object file = myFiles.get(key);
+        if (file == null || file != NOT_FOUND && !((VirtualFile)file).isValid()) {
+            final VirtualFile virtualFile = findFile(base, url);
+            file = virtualFile != null ? virtualFile : NOT_FOUND;
+            myFiles.put(key, file);
+        }
+        if (file == NOT_FOUND) {
+            return null;
+        }
+
+        final VirtualFile virtualFile = (VirtualFile)file;
+        XmlDocument document = myDocuments.get(virtualFile.getUrl());
+        if (document != null && document.isValid()) {
+            statistics.hit();
+            return document;
+        }
+        statistics.miss();
+        document = load(base, virtualFile);
+        if (document != null) {
+            myDocuments.put(virtualFile.getUrl(), document);
+        }
+        return document;
+    }
+
+    @Nullable
+    private static VirtualFile findFile(XmlFile base, String url) {
+        return VirtualFileUtil.findRelativeFile(url, base.getVirtualFile());
+    }
+
+    @Nullable
+    private static XmlDocument load(XmlFile base, @Nullable VirtualFile virtualFile) {
+        if (virtualFile == null || !virtualFile.isValid()) {
+            return null;
+        }
+        final PsiFile file = PsiManager.getInstance(base.getProject()).findFile(virtualFile);
+        return file instanceof XmlFile ? ((XmlFile)file).getDocument() : null;
+    }
+
+    public static final class Scope implements AutoCloseable {
+        private final DocumentCache myCache;
+
+        private Scope(DocumentCache cache) {
+            myCache = cache;
+        }
+
+        @Override
+        public void close() {
+            if (myCache != null) {
+                CURRENT.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.support.jaxen;
+
+import consulo.language.psi.PsiElement;
+import consulo.language.psi.PsiFile;
+import consulo.util.dataholder.Key;
+import consulo.xml.language.psi.XmlToken;
+import org.intellij.plugins.xpathView.support.XPathStatistics;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import java.util.*;
+
+/**
+ * Pre-order numbering of the nodes of one file. The numbering is computed once and kept with the file until it is
+ * modified, so sorting nodes into document order and set operations on node-sets become integer comparisons and
+ * linear merges of sorted <code>int</code> arrays instead of walks through the PSI tree.
+ * <p>
+ * The PSI tree is numbered as a whole, except for tokens: in PSI, attributes precede the content of their tag and
+ * text is the parent of its whitespace, so the pre-order of the PSI elements is the XPath document order.
+ */
+public final class DocumentOrder {
+    private static final Key<DocumentOrder> ORDER_KEY = Key.create("XPATH_DOCUMENT_ORDER");
+
+    private final long myStamp;
+    private final Map<PsiElement, Integer> myNumbers;
+    private final PsiElement[] myNodes;
+
+    private DocumentOrder(long stamp, List<PsiElement> nodes) {
+        myStamp = stamp;
+        myNodes = nodes.toArray(new PsiElement[nodes.size()]);
+        myNumbers = new IdentityHashMap<PsiElement, Integer>(myNodes.length);
+        for (int i = 0; i < myNodes.length; i++) {
+            myNumbers.put(myNodes[i], i);
+        }
+    }
+
+    /**
+     * Returns the numbering of the file that contains <code>node</code>, computing it if necessary, or
+     * <code>null</code> if the node doesn't belong to a file.
+     */
+    @Nullable
+    public static DocumentOrder get(Object node) {
+        if (!(node instanceof PsiElement)) {
+            return null;
+        }
+        final PsiFile file = ((PsiElement)node).getContainingFile();
+        return file != null ? forFile(file) : null;
+    }
+
+    @Nonnull
+    private static DocumentOrder forFile(PsiFile file) {
+        final XPathStatistics.CacheStatistics statistics = XPathStatistics.getInstance().cache("order");
+        final long stamp = file.getModificationStamp();
+        DocumentOrder order = file.getUserData(ORDER_KEY);
+        if (order == null || order.myStamp != stamp) {
+            statistics.miss();
+            order = new DocumentOrder(stamp, collect(file));
+            file.putUserData(ORDER_KEY, order);
+        } else {
+            statistics.hit();
+        }
+        return order;
+    }
+
+    private static List<PsiElement> collect(PsiFile file) {
+        final List<PsiElement> nodes = new ArrayList<PsiElement>();
+        // iterative, deeply nested documents must not overflow the stack
+        PsiElement e = file;
+        while (e != null) {
+            if (!(e instanceof XmlToken)) {
+                nodes.add(e);
+            }
+            PsiElement next = e instanceof XmlToken ? null : e.getFirstChild();
+            while (next == null && e != null && e != file) {
+                next = e.getNextSibling();
+                if (next == null) {
+                    e = e.getParent();
+                }
+            }
+            e = next;
+        }
+        return nodes;
+    }
+
+    /**
+     * Returns the position of <code>node</code> in document order, or <code>-1</code> if it doesn't belong to this
+     * file.
+     */
+    public int indexOf(Object node) {
+        final Integer number = myNumbers.get(node);
+        return number != null ? number : -1;
+    }
+
+    @Nonnull
+    public Object getNode(int index) {
+        return myNodes[index];
+    }
+
+    /**
+     * Returns the sorted positions of the nodes that belong to this file, without duplicates.
+     */
+    @Nonnull
+    public int[] indexesOf(Collection<?> nodes) {
+        final int[] indexes = new int[nodes.size()];
+        int size = 0;
+        for (Object node : nodes) {
+            final int index = indexOf(node);
+            if (index != -1) {
+                indexes[size++] = index;
+            }
+        }
+        Arrays.sort(indexes, 0, size);
+
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (distinct == 0 || indexes[distinct - 1] != indexes[i]) {
+                indexes[distinct++] = indexes[i];
+            }
+        }
+        return Arrays.copyOf(indexes, distinct);
+    }
+
+    @Nonnull
+    public List<Object> getNodes(int[] indexes) {
+        final List<Object> nodes = new ArrayList<Object>(indexes.length);
+        for (int index : indexes) {
+            nodes.add(myNodes[index]);
+        }
+        return nodes;
+    }
+
+    /**
+     * Sorts nodes into document order and removes duplicates. Nodes of different files are grouped by file, in the
+     * order the files are first encountered. Anything that isn't a PSI node is kept at the end, in its original order.
+     */
+    @Nonnull
+    public static List<Object> sort(Collection<?> nodes) {
+        if (nodes.size() < 2) {
+            return new ArrayList<Object>(nodes);
+        }
+        final List<Object> others = new ArrayList<Object>(0);
+        final Map<DocumentOrder, List<Object>> byFile = groupByFile(nodes, others);
+
+        final List<Object> result = new ArrayList<Object>(nodes.size());
+        for (Map.Entry<DocumentOrder, List<Object>> entry : byFile.entrySet()) {
+            result.addAll(entry.getKey().getNodes(entry.getKey().indexesOf(entry.getValue())));
+        }
+        result.addAll(others);
+        return result;
+    }
+
+    /**
+     * Groups PSI nodes by the numbering of their file, in the order the files are first encountered. Anything else is
+     * added to <code>others</code>.
+     */
+    @Nonnull
+    public static Map<DocumentOrder, List<Object>> groupByFile(Collection<?> nodes, Collection<Object> others) {
+        final Map<DocumentOrder, List<Object>> byFile = new LinkedHashMap<DocumentOrder, List<Object>>();
+        PsiFile lastFile = null;
+        DocumentOrder lastOrder = null;
+        for (Object node : nodes) {
+            final PsiFile file = node instanceof PsiElement ? ((PsiElement)node).getContainingFile() : null;
+            if (file != null && file != lastFile) {
+                lastFile = file;
+                lastOrder = forFile(file);
+            }
+            final DocumentOrder order = file != null ? lastOrder : null;
+            if (order != null && order.indexOf(node) != -1) {
+                byFile.computeIfAbsent(order, o -> new ArrayList<Object>()).add(node);
+            } else {
+                others.add(node);
+            }
+        }
+        return byFile;
+    }
+
+    /**
+     * Merges two sorted, duplicate-free index arrays. Keeps the indexes of <code>a</code> that are also in
+     * <code>b</code> if <code>intersect</code> is true, or those that are not in <code>b</code> otherwise.
+     */
+    @Nonnull
+    public static int[] merge(int[] a, int[] b, boolean intersect) {
+        final int[] result = new int[a.length];
+        int size = 0;
+        int j = 0;
+        for (int index : a) {
+            while (j < b.length && b[j] < index) {
+                j++;
+            }
+            final boolean contained = j < b.length && b[j] == index;
+            if (contained == intersect) {
+                result[size++] = index;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Returns the nodes of <code>a</code> that are also in <code>b</code> if <code>intersect</code> is true, or those
+     * that are not in <code>b</code> otherwise, in document order. Nodes that don't belong to a file are dropped.
+     */
+    @Nonnull
+    public static List<Object> combine(Collection<?> a, Collection<?> b, boolean intersect) {
+        final List<Object> ignored = new ArrayList<Object>(0);
+        final Map<DocumentOrder, List<Object>> left = groupByFile(a, ignored);
+        final Map<DocumentOrder, List<Object>> right = groupByFile(b, ignored);
+
+        final List<Object> result = new ArrayList<Object>();
+        for (Map.Entry<DocumentOrder, List<Object>> entry : left.entrySet()) {
+            final DocumentOrder order = entry.getKey();
+            final List<Object> other = right.get(order);
+            final int[] indexes = order.indexesOf(entry.getValue());
+            final int[] otherIndexes = other != null ? order.indexesOf(other) : new int[0];
+            result.addAll(order.getNodes(merge(indexes, otherIndexes, intersect)));
+        }
+        return result;
+    }
+
+    /**
+     * Compares two nodes of this file by their position in document order.
+     */
+    public int compare(Object node1, Object node2) {
+        return Integer.compare(indexOf(node1), indexOf(node2));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.support.jaxen;
+
+import consulo.language.psi.PsiElement;
+import consulo.language.psi.PsiFile;
+import consulo.util.dataholder.Key;
+import consulo.xml.language.psi.XmlRecursiveElementVisitor;
+import consulo.xml.language.psi.XmlTag;
+import consulo.xml.language.psi.XmlText;
+import org.intellij.plugins.xpathView.support.XPathStatistics;
+
+import jakarta.annotation.Nonnull;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The string-values of all elements of one file. The text of the file is collected once, in document order, and
+ * every element remembers where its own text starts and ends. The string-value of an element is then a substring of
+ * the collected text, so predicates like <code>//section[contains(., 'foo')]</code> don't concatenate the same text
+ * again for every ancestor.
+ * <p>
+ * The values are kept with the file until it is modified.
+ */
+final class ElementStringValues {
+    private static final Key<ElementStringValues> VALUES_KEY = Key.create("XPATH_ELEMENT_STRING_VALUES");
+
+    private final long myStamp;
+    private final String myText;
+    // element -> {start, end} in myText
+    private final Map<XmlTag, int[]> myRanges;
+
+    private ElementStringValues(long stamp, String text, Map<XmlTag, int[]> ranges) {
+        myStamp = stamp;
+        myText = text;
+        myRanges = ranges;
+    }
+
+    @Nonnull
+    static String get(XmlTag element) {
+        final PsiFile file = element.getContainingFile();
+        if (file == null) {
+            return collect(element, 0).myText;
+        }
+
+        final XPathStatistics.CacheStatistics statistics = XPathStatistics.getInstance().cache("string-values");
+        final long stamp = file.getModificationStamp();
+        ElementStringValues values = file.getUserData(VALUES_KEY);
+        if (values == null || values.myStamp != stamp) {
+            statistics.miss();
+            values = collect(file, stamp);
+            file.putUserData(VALUES_KEY, values);
+        } else {
+            statistics.hit();
+        }
+
+        final int[] range = values.myRanges.get(element);
+        if (range == null) {
+            // not part of the file's tree, e.g. a copy
+            return collect(element, 0).myText;
+        }
+        return values.myText.substring(range[0], range[1]);
+    }
+
+    private static ElementStringValues collect(PsiElement root, long stamp) {
+        final StringBuilder text = new StringBuilder();
+        final Map<XmlTag, int[]> ranges = new IdentityHashMap<XmlTag, int[]>();
+        root.accept(new XmlRecursiveElementVisitor() {
+            @Override
+            public void visitXmlTag(XmlTag tag) {
+                final int[] range = new int[2];
+                range[0] = text.length();
+                super.visitXmlTag(tag);
+                range[1] = text.length();
+                ranges.put(tag, range);
+            }
+
+            @Override
+            public void visitXmlText(XmlText t) {
+                text.append(t.getValue());
+            }
+        });
+        return new ElementStringValues(stamp, text.toString(), ranges);
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.intellij.plugins.xpathView.support.jaxen;
 
+import consulo.application.progress.ProgressManager;
 import consulo.language.psi.PsiElement;
 
 import java.util.Iterator;
@@ -50,10 +51,13 @@ public abstract class NodeIterator implements Iterator {
     public Object next() {
         if (node == null)
             throw new NoSuchElementException();
+        // cancellation checkpoint: lets Find-by-XPath and Evaluate stop inside long evaluations
+        ProgressManager.checkCanceled();
         PsiElement ret = node;
         node = getNextNode(node);
         while (!isXPathNode(node))
             node = getNextNode(node);
+        if (XPathTrace.ENABLED) XPathTrace.nodeVisited(ret);
         return ret;
     }
 
@@ -15,14 +15,12 @@
  */
 package org.intellij.plugins.xpathView.support.jaxen;
 
+import consulo.application.progress.ProgressManager;
 import consulo.language.psi.PsiElement;
-import consulo.language.psi.PsiFile;
 import consulo.language.psi.PsiWhiteSpace;
 import consulo.logging.Logger;
 import consulo.util.lang.StringUtil;
 import consulo.util.lang.ref.Ref;
-import consulo.virtualFileSystem.VirtualFile;
-import consulo.virtualFileSystem.util.VirtualFileUtil;
 import consulo.xml.descriptor.XmlAttributeDescriptor;
 import consulo.xml.language.XMLLanguage;
 import consulo.xml.language.psi.*;
@@ -51,9 +49,8 @@ public class PsiDocumentNavigator extends DefaultNavigator {
     }
 
     public Iterator getChildAxisIterator(Object contextNode) throws UnsupportedAxisException {
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("enter: getChildAxisIterator " + contextNode);
-        }
+        if (XPathTrace.ENABLED) XPathTrace.axis("child", contextNode);
+        ProgressManager.checkCanceled();
 
         if (!(contextNode instanceof XmlElement)) {
             return Collections.emptyList().iterator();
@@ -63,9 +60,8 @@ public class PsiDocumentNavigator extends DefaultNavigator {
 
 
     public Iterator getParentAxisIterator(Object contextNode) {
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("enter: getParentAxisIterator " + contextNode);
-        }
+        if (XPathTrace.ENABLED) XPathTrace.axis("parent", contextNode);
+        ProgressManager.checkCanceled();
 
         if (!(contextNode instanceof XmlElement)) {
             return Collections.emptyList().iterator();
@@ -90,16 +86,14 @@ public class PsiDocumentNavigator extends DefaultNavigator {
 
 
     public Iterator getNamespaceAxisIterator(Object contextNode) throws UnsupportedAxisException {
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("enter: getNamespaceAxisIterator()");
-        }
+        if (XPathTrace.ENABLED) XPathTrace.axis("namespace", contextNode);
 
         // TODO
         return super.getNamespaceAxisIterator(contextNode);
     }
 
     public Object getDocumentNode(Object contextNode) {
-        LOG.debug("enter: getDocumentNode");
+        if (XPathTrace.ENABLED) XPathTrace.axis("document", contextNode);
 
         if (contextNode instanceof XmlDocument) {
             return contextNode;
@@ -116,9 +110,6 @@ public class PsiDocumentNavigator extends DefaultNavigator {
     }
 
     public String translateNamespacePrefixToUri(String prefix, Object element) {
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("enter: translateNamespacePrefixToUri()");
-        }
         if (isElement(element)) {
             return ((XmlTag)element).getNamespaceByPrefix(prefix);
         }
@@ -126,7 +117,6 @@ public class PsiDocumentNavigator extends DefaultNavigator {
     }
 
     public String getProcessingInstructionTarget(Object obj) {
-        LOG.debug("enter: getProcessingInstructionTarget");
         LOG.assertTrue(obj instanceof XmlProcessingInstruction);
 
         XmlProcessingInstruction pi = (XmlProcessingInstruction)obj;
@@ -147,15 +137,12 @@ public class PsiDocumentNavigator extends DefaultNavigator {
             text = text.substring(i);
         }
 
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("Target: " + text);
-        }
+        if (XPathTrace.ENABLED) XPathTrace.test("getProcessingInstructionTarget", pi, text);
         return text;
     }
 
     @Nonnull
     public String getProcessingInstructionData(Object obj) {
-        LOG.debug("enter: getProcessingInstructionData");
         LOG.assertTrue(obj instanceof XmlProcessingInstruction);
 
         XmlProcessingInstruction pi = (XmlProcessingInstruction)obj;
@@ -163,9 +150,7 @@ public class PsiDocumentNavigator extends DefaultNavigator {
         int piLength= pi.getText().length();
 
         final String s = pi.getText().substring(2 + targetLength, piLength - 2).trim();
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("Data: " + s);
-        }
+        if (XPathTrace.ENABLED) XPathTrace.test("getProcessingInstructionData", pi, s);
         return s;
     }
 
@@ -174,19 +159,14 @@ public class PsiDocumentNavigator extends DefaultNavigator {
     }
 
     public Object getDocument(String url) throws FunctionCallException {
-        LOG.debug("enter: getDocument: " + url);
-        final VirtualFile virtualFile = VirtualFileUtil.findRelativeFile(url, file.getVirtualFile());
-        if (virtualFile != null) {
-            LOG.debug("document() -> VirtualFile = " + virtualFile.getPath());
-            final PsiFile file = this.file.getManager().findFile(virtualFile);
-            if (file instanceof XmlFile) {
-                return ((XmlFile)file).getDocument();
-            }
-        }
-        return null;
+        final XmlDocument document = DocumentCache.getDocument(file, url);
+        if (XPathTrace.ENABLED) XPathTrace.test("getDocument", url, document);
+        return document;
     }
 
     public Iterator getAttributeAxisIterator(Object contextNode) {
+        if (XPathTrace.ENABLED) XPathTrace.axis("attribute", contextNode);
+        ProgressManager.checkCanceled();
         if (isElement(contextNode)) {
             return new AttributeIterator((XmlElement)contextNode);
         } else {
@@ -200,14 +180,11 @@ public class PsiDocumentNavigator extends DefaultNavigator {
         final XmlTag context = (XmlTag)element;
         final String namespaceUri = context.getNamespace();
         if (!MyPsiUtil.isInDeclaredNamespace(context, namespaceUri, context.getNamespacePrefix())) {
-          if (LOG.isDebugEnabled()) {
-            LOG.debug("getElementNamespaceUri: not returning implicit namespace uri: " + namespaceUri);
-          }
+          // not returning implicit namespace uri
+          if (XPathTrace.ENABLED) XPathTrace.test("getElementNamespaceUri", element, "");
           return "";
         }
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("enter: getElementNamespaceUri: " + namespaceUri);
-        }
+        if (XPathTrace.ENABLED) XPathTrace.test("getElementNamespaceUri", element, namespaceUri);
 
         return namespaceUri;
     }
@@ -216,20 +193,16 @@ public class PsiDocumentNavigator extends DefaultNavigator {
         LOG.assertTrue(element instanceof XmlTag);
 
         final String name = ((XmlTag)element).getLocalName();
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("getElementName: " + name);
-        }
+        if (XPathTrace.ENABLED) XPathTrace.test("getElementName", element, name);
         return name;
     }
 
     public String getElementQName(Object element) {
         LOG.assertTrue(element instanceof XmlTag);
 
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("enter: getElementQName: " + ((XmlTag)element).getName());
-        }
-
-        return ((XmlTag)element).getName();
+        final String name = ((XmlTag)element).getName();
+        if (XPathTrace.ENABLED) XPathTrace.test("getElementQName", element, name);
+        return name;
     }
 
     public String getAttributeNamespaceUri(Object attr) {
@@ -244,9 +217,7 @@ public class PsiDocumentNavigator extends DefaultNavigator {
             LOG.info("getElementNamespaceUri: not returning implicit attribute-namespace uri: " + uri);
             return "";
         }
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("getAttributeNamespaceUri: " + uri);
-        }
+        if (XPathTrace.ENABLED) XPathTrace.test("getAttributeNamespaceUri", attr, uri);
         return uri;
     }
 
@@ -254,36 +225,28 @@ public class PsiDocumentNavigator extends DefaultNavigator {
         LOG.assertTrue(attr instanceof XmlAttribute);
 
         final String name = ((XmlAttribute)attr).getLocalName();
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("getAttributeName: " + name);
-        }
+        if (XPathTrace.ENABLED) XPathTrace.test("getAttributeName", attr, name);
         return name;
     }
 
     public String getAttributeQName(Object attr) {
         LOG.assertTrue(attr instanceof XmlAttribute);
 
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("enter: getAttributeQName");
-        }
-
-        return ((XmlAttribute)attr).getName();
+        final String name = ((XmlAttribute)attr).getName();
+        if (XPathTrace.ENABLED) XPathTrace.test("getAttributeQName", attr, name);
+        return name;
     }
 
     public boolean isDocument(Object object) {
         final boolean b = object instanceof XmlDocument;
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("enter: isDocument(): " + object + " = " + b);
-        }
+        if (XPathTrace.ENABLED) XPathTrace.test("isDocument", object, b);
         return b;
     }
 
     public boolean isElement(Object object) {
-        final boolean b = object instanceof XmlTag;
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("enter: isElement(): " + object + " = " + b);
-        }
-        return b && isSupportedElement((XmlTag)object);
+        final boolean b = object instanceof XmlTag && isSupportedElement((XmlTag)object);
+        if (XPathTrace.ENABLED) XPathTrace.test("isElement", object, b);
+        return b;
     }
 
     private static boolean isSupportedElement(XmlTag object) {
@@ -293,25 +256,18 @@ public class PsiDocumentNavigator extends DefaultNavigator {
 
     public boolean isAttribute(Object object) {
         final boolean b = object instanceof XmlAttribute;
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("enter: isAttribute(): "  + object + " = " + b);
-        }
+        if (XPathTrace.ENABLED) XPathTrace.test("isAttribute", object, b);
         return b;
     }
 
     public boolean isNamespace(Object object) {
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("enter: isNamespace(): "  + object);
-        }
         // TODO: implement when namespace axis is supported
         return false;
     }
 
     public boolean isComment(Object object) {
         final boolean b = object instanceof XmlComment;
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("enter: isComment():"  + object + " = " + b);
-        }
+        if (XPathTrace.ENABLED) XPathTrace.test("isComment", object, b);
         return b;
     }
 
@@ -322,17 +278,13 @@ public class PsiDocumentNavigator extends DefaultNavigator {
         } else {
             b = object instanceof XmlText;
         }
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("enter: isText():" + object + " = " + b);
-        }
+        if (XPathTrace.ENABLED) XPathTrace.test("isText", object, b);
         return b;
     }
 
     public boolean isProcessingInstruction(Object object) {
         final boolean b = object instanceof XmlProcessingInstruction;
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("enter: isProcessingInstruction(): "  + object + " = " + b);
-        }
+        if (XPathTrace.ENABLED) XPathTrace.test("isProcessingInstruction", object, b);
         return b;
     }
 
@@ -340,10 +292,6 @@ public class PsiDocumentNavigator extends DefaultNavigator {
     public String getCommentStringValue(Object comment) {
         LOG.assertTrue(comment instanceof XmlComment);
 
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("enter: getCommentStringValue()");
-        }
-
         PsiElement c = (PsiElement)comment;
         final PsiElement[] children = c.getChildren();
         for (PsiElement child : children) {
@@ -358,13 +306,7 @@ public class PsiDocumentNavigator extends DefaultNavigator {
     public String getElementStringValue(Object element) {
         LOG.assertTrue(element instanceof XmlTag);
 
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("enter: getElementStringValue()");
-        }
-
-        final TextCollector collector = new TextCollector();
-        ((XmlTag)element).accept(collector);
-        return collector.getText();
+        return ElementStringValues.get((XmlTag)element);
     }
 
     @Nonnull
@@ -374,27 +316,17 @@ public class PsiDocumentNavigator extends DefaultNavigator {
     }
 
     public String getNamespaceStringValue(Object ns) {
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("enter: getNamespaceStringValue");
-            LOG.debug("ns = " + ns);
-        }
         // TODO: implement when namespace axis is supported
         return null;
     }
 
     public String getNamespacePrefix(Object ns) {
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("enter: getNamespacePrefix");
-            LOG.debug("ns = " + ns);
-        }
         // TODO: implement when namespace axis is supported
         return null;
     }
 
     @Nonnull
     public String getTextStringValue(Object txt) {
-        LOG.debug("enter: getTextStringValue");
-
         if (txt instanceof XmlText) {
           return ((XmlText)txt).getValue();
         }
@@ -406,9 +338,7 @@ public class PsiDocumentNavigator extends DefaultNavigator {
     }
 
     public Object getElementById(Object object, final String elementId) {
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("enter: getElementById: " + object + " -- " + elementId);
-      }
+      if (XPathTrace.ENABLED) XPathTrace.test("getElementById", object, elementId);
 
       final XmlTag rootTag = ((XmlFile)((XmlElement)object).getContainingFile()).getRootTag();
       if (rootTag == null) {
@@ -438,17 +368,4 @@ public class PsiDocumentNavigator extends DefaultNavigator {
       });
       return ref.get();
     }
-
-    static class TextCollector extends XmlRecursiveElementVisitor {
-        private final StringBuffer builder = new StringBuffer();
-
-        @Override
-        public void visitXmlText(XmlText text) {
-            builder.append(text.getValue());
-        }
-
-        public String getText() {
-            return builder.toString();
-        }
-    }
 }
@@ -16,11 +16,71 @@
 package org.intellij.plugins.xpathView.support.jaxen;
 
 import consulo.xml.language.psi.XmlFile;
+import org.intellij.plugins.xpathView.support.StreamingXPath;
+import org.intellij.plugins.xpathView.support.XPathResults;
+import org.intellij.plugins.xpathView.support.XPathStatistics;
 import org.jaxen.BaseXPath;
+import org.jaxen.Context;
 import org.jaxen.JaxenException;
+import org.jaxen.NamespaceContext;
+
+import jakarta.annotation.Nonnull;
+import java.util.Iterator;
+import java.util.List;
+
+public class PsiXPath extends BaseXPath implements StreamingXPath {
+    // the compiled form of the expression and the namespaces it was compiled with; null if it's not supported
+    private CompiledPath myCompiledPath;
+    private NamespaceContext myCompiledNamespaces;
+    private boolean myCompiled;
 
-public class PsiXPath extends BaseXPath {
     public PsiXPath(XmlFile file, String xpathExpr) throws JaxenException {
         super(xpathExpr, new PsiDocumentNavigator(file));
     }
+
+    private synchronized CompiledPath getCompiledPath(Context context) {
+        final NamespaceContext namespaces = context.getContextSupport().getNamespaceContext();
+        if (!myCompiled || myCompiledNamespaces != namespaces) {
+            myCompiledPath = CompiledPath.compile(getRootExpr(), namespaces);
+            myCompiledNamespaces = namespaces;
+            myCompiled = true;
+        }
+        return myCompiledPath;
+    }
+
+    @Nonnull
+    @Override
+    public Iterator<?> iterate(Object node) throws JaxenException {
+        final Context context = getContext(node);
+        final CompiledPath compiledPath = CompiledPath.ENABLED ? getCompiledPath(context) : null;
+        if (compiledPath != null) {
+            return compiledPath.iterator(context.getNodeSet(), getNavigator());
+        }
+        return XPathResults.items(evaluate(node));
+    }
+
+    @Override
+    protected List selectNodesForContext(Context context) throws JaxenException {
+        final long start = XPathStatistics.start();
+        final CompiledPath compiledPath = CompiledPath.ENABLED ? getCompiledPath(context) : null;
+        final List list;
+        try (DocumentCache.Scope ignored = DocumentCache.enter()) {
+            if (compiledPath != null) {
+                list = compiledPath.evaluate(context.getNodeSet(), getNavigator(), true);
+            } else {
+                list = super.selectNodesForContext(context);
+            }
+        }
+
+        final XPathStatistics statistics = XPathStatistics.getInstance();
+        statistics.recordTime(XPathStatistics.EVALUATE, start);
+        statistics.recordTime(compiledPath != null ? XPathStatistics.EVALUATE_COMPILED : XPathStatistics.EVALUATE_INTERPRETED, start);
+        statistics.recordValue(XPathStatistics.RESULT_SIZE, list.size());
+
+        if (XPathTrace.ENABLED) {
+            final List nodes = context.getNodeSet();
+            XPathTrace.evaluated(getRootExpr().getText(), nodes.isEmpty() ? null : nodes.get(0), list.size(), System.nanoTime() - start);
+        }
+        return list;
+    }
 }
@@ -16,6 +16,7 @@
 package org.intellij.plugins.xpathView.support.jaxen;
 
 import consulo.annotation.component.ServiceImpl;
+import consulo.application.progress.ProgressManager;
 import consulo.logging.Logger;
 import consulo.util.lang.Pair;
 import consulo.xml.language.psi.XmlElement;
@@ -25,6 +26,9 @@ import jakarta.inject.Singleton;
 import org.intellij.lang.xpath.context.functions.Function;
 import org.intellij.lang.xpath.context.functions.XPathFunctionProvider;
 import org.intellij.plugins.xpathView.XPathExpressionGenerator;
+import org.intellij.plugins.xpathView.support.XPathEngine;
+import org.intellij.plugins.xpathView.support.XPathEngineSelector;
+import org.intellij.plugins.xpathView.support.XPathStatistics;
 import org.intellij.plugins.xpathView.support.XPathSupport;
 import org.intellij.plugins.xpathView.support.jaxen.extensions.FunctionImplementation;
 import org.intellij.plugins.xpathView.util.Namespace;
@@ -44,18 +48,23 @@ public class XPathSupportImpl extends XPathSupport {
     private static final Logger LOG = Logger.getInstance(XPathSupportImpl.class);
 
     public XPath createXPath(@Nonnull XmlFile file, String expression) throws JaxenException {
-        final PsiXPath xpath = new PsiXPath(file, expression);
-        xpath.setFunctionContext(new MyXPathFunctionContext());
-        xpath.setNamespaceContext(new MySimpleNamespaceContext(NamespaceCollector.findNamespaces(file)));
-
-        return xpath;
+        return createXPath(file, expression, false, NamespaceCollector.findNamespaces(file));
     }
 
     public XPath createXPath(@Nullable XmlFile psiFile, String expression, @Nonnull Collection<Namespace> namespaces) throws JaxenException {
-        final PsiXPath xpath = new PsiXPath(psiFile, expression);
-        xpath.setFunctionContext(new MyXPathFunctionContext());
-        xpath.setNamespaceContext(new MySimpleNamespaceContext(NamespaceCollector.convert(namespaces)));
+        return createXPath(psiFile, expression, false, NamespaceCollector.convert(namespaces));
+    }
+
+    public XPath createXPath2(@Nullable XmlFile psiFile, String expression, @Nonnull Collection<Namespace> namespaces) throws JaxenException {
+        return createXPath(psiFile, expression, true, NamespaceCollector.convert(namespaces));
+    }
+
+    private static XPath createXPath(@Nullable XmlFile file, String expression, boolean xpath2, Map<String, String> namespaces) throws JaxenException {
+        final long start = XPathStatistics.start();
+        final XPathEngine.Request request = new XPathEngine.Request(file, expression, xpath2, new MySimpleNamespaceContext(namespaces), new MyXPathFunctionContext());
+        final XPath xpath = XPathEngineSelector.createXPath(request);
 
+        XPathStatistics.getInstance().recordTime(XPathStatistics.CREATE_XPATH, start);
         return xpath;
     }
 
@@ -109,5 +118,12 @@ public class XPathSupportImpl extends XPathSupport {
                 }
             }
         }
+
+        @Override
+        public org.jaxen.Function getFunction(String namespaceURI, String prefix, String localName) throws UnresolvableException {
+            // Jaxen looks up the function for every call, which makes this a cheap cancellation checkpoint
+            ProgressManager.checkCanceled();
+            return super.getFunction(namespaceURI, prefix, localName);
+        }
     }
 }
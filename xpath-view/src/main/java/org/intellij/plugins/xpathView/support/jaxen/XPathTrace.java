@@ -0,0 +1,148 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.support.jaxen;
+
+import consulo.language.psi.PsiElement;
+import consulo.logging.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Static entry point for navigator and evaluation tracing.
+ * <p>
+ * Tracing is switched on with the system property <code>xpathView.trace</code>. Because {@link #ENABLED} is a
+ * static final constant, the guarded calls in the navigator are removed by the JIT when tracing is off.
+ * If <code>xpathView.trace.file</code> is set, events are written to that file as tab separated lines,
+ * otherwise they go to the debug log. A different listener can be installed with {@link #setListener}.
+ */
+public final class XPathTrace {
+    private static final Logger LOG = Logger.getInstance(XPathTrace.class);
+
+    public static final boolean ENABLED = Boolean.getBoolean("xpathView.trace");
+
+    private static volatile XPathTraceListener ourListener = ENABLED ? createDefaultListener() : null;
+
+    private XPathTrace() {
+    }
+
+    public static void setListener(XPathTraceListener listener) {
+        if (!ENABLED) {
+            LOG.warn("Tracing is disabled, start with -DxpathView.trace=true");
+        }
+        ourListener = listener;
+    }
+
+    public static void axis(String axis, Object contextNode) {
+        final XPathTraceListener listener = ourListener;
+        if (listener != null) listener.axis(axis, contextNode);
+    }
+
+    public static void nodeVisited(Object node) {
+        final XPathTraceListener listener = ourListener;
+        if (listener != null) listener.nodeVisited(node);
+    }
+
+    public static void test(String test, Object node, Object result) {
+        final XPathTraceListener listener = ourListener;
+        if (listener != null) listener.test(test, node, result);
+    }
+
+    public static void evaluated(String expression, Object contextNode, int resultSize, long nanos) {
+        final XPathTraceListener listener = ourListener;
+        if (listener != null) listener.evaluated(expression, contextNode, resultSize, nanos);
+    }
+
+    private static XPathTraceListener createDefaultListener() {
+        final String fileName = System.getProperty("xpathView.trace.file");
+        if (fileName != null) {
+            try {
+                return new WriterListener(Files.newBufferedWriter(Paths.get(fileName), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                LOG.warn("Cannot open trace file " + fileName, e);
+            }
+        }
+        return new WriterListener(null);
+    }
+
+    static String describe(Object node) {
+        if (node instanceof PsiElement) {
+            final PsiElement element = (PsiElement)node;
+            return element.getClass().getSimpleName() + "@" + element.getTextRange().getStartOffset();
+        }
+        return String.valueOf(node);
+    }
+
+    /**
+     * Writes one tab separated line per event: timestamp, thread, event, name, node, value.
+     * Lines go to the debug log if there is no writer.
+     */
+    private static class WriterListener implements XPathTraceListener {
+        private final Writer myWriter;
+
+        WriterListener(BufferedWriter writer) {
+            myWriter = writer;
+            if (writer != null) {
+                Runtime.getRuntime().addShutdownHook(new Thread(this::close, "XPath trace writer"));
+            }
+        }
+
+        public void axis(String axis, Object contextNode) {
+            write("axis", axis, contextNode, "");
+        }
+
+        public void nodeVisited(Object node) {
+            write("node", "", node, "");
+        }
+
+        public void test(String test, Object node, Object result) {
+            write("test", test, node, result);
+        }
+
+        public void evaluated(String expression, Object contextNode, int resultSize, long nanos) {
+            write("eval", expression, contextNode, resultSize + "\t" + nanos);
+        }
+
+        private void write(String event, String name, Object node, Object value) {
+            final String line = System.nanoTime() + "\t" + Thread.currentThread().getName() + "\t" + event + "\t" + name + "\t" + describe(node) + "\t" + value;
+            if (myWriter == null) {
+                LOG.debug(line);
+                return;
+            }
+            synchronized (myWriter) {
+                try {
+                    myWriter.write(line);
+                    myWriter.write('\n');
+                } catch (IOException e) {
+                    LOG.debug(e);
+                }
+            }
+        }
+
+        private void close() {
+            synchronized (myWriter) {
+                try {
+                    myWriter.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
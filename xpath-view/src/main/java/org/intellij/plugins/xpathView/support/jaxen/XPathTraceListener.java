@@ -0,0 +1,42 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.support.jaxen;
+
+/**
+ * Receives structured events from {@link PsiDocumentNavigator} and {@link PsiXPath}. Listeners are only called
+ * when tracing has been enabled at startup, see {@link XPathTrace}.
+ */
+public interface XPathTraceListener {
+    /**
+     * An axis iterator has been requested for <code>contextNode</code>.
+     */
+    void axis(String axis, Object contextNode);
+
+    /**
+     * An axis iterator produced <code>node</code>.
+     */
+    void nodeVisited(Object node);
+
+    /**
+     * A node test (<code>isElement</code>, <code>getElementName</code>, ...) has been performed on <code>node</code>.
+     */
+    void test(String test, Object node, Object result);
+
+    /**
+     * An expression has been evaluated.
+     */
+    void evaluated(String expression, Object contextNode, int resultSize, long nanos);
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.support.jaxen.extensions;
+
+import org.intellij.lang.xpath.context.functions.Parameter;
+import org.intellij.lang.xpath.psi.XPathType;
+import org.jaxen.*;
+import org.jaxen.function.StringFunction;
+import org.jaxen.saxpath.SAXPathException;
+
+import java.util.*;
+
+/**
+ * Base class for functions that group the nodes of a node-set by their string-value, or by the string-value of an
+ * optional expression that is evaluated for each node. The nodes are grouped in a single pass through a hash map,
+ * the groups and the nodes within a group keep the order of the node-set.
+ */
+abstract class BasicGroupingFunction extends FunctionImplementation implements Function {
+    public BasicGroupingFunction(String name, XPathType returnType) {
+        super(name, returnType,
+                new Parameter(XPathType.NODESET, Parameter.Kind.REQUIRED),
+                new Parameter(XPathType.STRING, Parameter.Kind.OPTIONAL));
+    }
+
+    public Function getImplementation() {
+        return this;
+    }
+
+    @SuppressWarnings({ "RawUseOfParameterizedType" })
+    public Object call(Context context, List args) throws FunctionCallException {
+        if (args.size() < 1 || args.size() > 2) {
+            throw new FunctionCallException(getName() + "() requires one or two arguments");
+        }
+        final Object nodes = args.get(0);
+        if (!(nodes instanceof List)) {
+            throw new FunctionCallException(getName() + "() requires a node-set as first argument");
+        }
+        final Navigator navigator = context.getNavigator();
+
+        final XPath key;
+        if (args.size() == 2) {
+            final ContextSupport support = context.getContextSupport();
+            try {
+                key = navigator.parseXPath(StringFunction.evaluate(args.get(1), navigator));
+            } catch (SAXPathException e) {
+                throw new FunctionCallException(e);
+            }
+            key.setNamespaceContext(support.getNamespaceContext());
+            key.setFunctionContext(support.getFunctionContext());
+            key.setVariableContext(support.getVariableContext());
+        } else {
+            key = null;
+        }
+
+        final List<?> list = (List<?>)nodes;
+        final List<String> values = new ArrayList<String>(list.size());
+        final Map<String, List<Object>> groups = new LinkedHashMap<String, List<Object>>();
+        for (Object node : list) {
+            final String value;
+            try {
+                value = StringFunction.evaluate(key != null ? key.evaluate(node) : node, navigator);
+            } catch (JaxenException e) {
+                throw new FunctionCallException(e);
+            }
+            values.add(value);
+            groups.computeIfAbsent(value, v -> new ArrayList<Object>(1)).add(node);
+        }
+        return evaluate(list, values, groups);
+    }
+
+    /**
+     * @param nodes  the node-set
+     * @param values the value of each node, by index
+     * @param groups the nodes of each value, ordered by the first occurrence of the value
+     */
+    protected abstract Object evaluate(List<?> nodes, List<String> values, Map<String, List<Object>> groups);
+}
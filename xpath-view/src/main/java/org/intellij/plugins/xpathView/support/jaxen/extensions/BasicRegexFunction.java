@@ -0,0 +1,68 @@
+/*
+ * Copyright 2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.support.jaxen.extensions;
+
+import org.intellij.lang.xpath.context.functions.Parameter;
+import org.intellij.lang.xpath.psi.XPathType;
+import org.jaxen.Context;
+import org.jaxen.Function;
+import org.jaxen.FunctionCallException;
+import org.jaxen.Navigator;
+import org.jaxen.function.StringFunction;
+
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Base class for the regular expression functions of XPath 2.0. The arguments are <code>input</code>,
+ * <code>pattern</code>, the function specific ones and the optional <code>flags</code> (<code>s</code>,
+ * <code>m</code>, <code>i</code>, <code>x</code>).
+ */
+abstract class BasicRegexFunction extends FunctionImplementation implements Function {
+    private final int myArgCount;
+
+    public BasicRegexFunction(String name, XPathType returnType, Parameter... parameters) {
+        super(name, returnType, parameters);
+        myArgCount = parameters.length - 1;
+    }
+
+    public Function getImplementation() {
+        return this;
+    }
+
+    @SuppressWarnings({ "RawUseOfParameterizedType" })
+    public Object call(Context context, List args) throws FunctionCallException {
+        if (args.size() < myArgCount || args.size() > myArgCount + 1) {
+            throw new FunctionCallException(getName() + "() requires " + myArgCount + " or " + (myArgCount + 1) + " arguments");
+        }
+        final Navigator navigator = context.getNavigator();
+        final String input = StringFunction.evaluate(args.get(0), navigator);
+        final String regex = StringFunction.evaluate(args.get(1), navigator);
+        final String flags = args.size() > myArgCount ? StringFunction.evaluate(args.get(myArgCount), navigator) : "";
+
+        final Pattern pattern;
+        try {
+            pattern = PatternCache.getPattern(regex, PatternCache.parseFlags(flags));
+        } catch (PatternSyntaxException e) {
+            throw new FunctionCallException("Invalid regular expression: " + e.getDescription());
+        }
+        return evaluate(input, pattern, args, navigator);
+    }
+
+    @SuppressWarnings({ "RawUseOfParameterizedType" })
+    protected abstract Object evaluate(String input, Pattern pattern, List args, Navigator navigator) throws FunctionCallException;
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.support.jaxen.extensions;
+
+import org.intellij.lang.xpath.psi.XPathType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <code>distinct-nodes(node-set [, key-expression])</code>: the first node of each distinct value. Unlike XPath 2.0's
+ * <code>distinct-values()</code>, the result is a node-set, so that it can be used in paths and predicates.
+ */
+class DistinctNodesFunction extends BasicGroupingFunction {
+    public DistinctNodesFunction() {
+        super("distinct-nodes", XPathType.NODESET);
+    }
+
+    protected Object evaluate(List<?> nodes, List<String> values, Map<String, List<Object>> groups) {
+        final List<Object> result = new ArrayList<Object>(groups.size());
+        for (List<Object> group : groups.values()) {
+            result.add(group.get(0));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.support.jaxen.extensions;
+
+import org.intellij.lang.xpath.psi.XPathType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <code>duplicates(node-set [, key-expression])</code>: all nodes whose value occurs more than once, in the order
+ * of the node-set.
+ */
+class DuplicatesFunction extends BasicGroupingFunction {
+    public DuplicatesFunction() {
+        super("duplicates", XPathType.NODESET);
+    }
+
+    protected Object evaluate(List<?> nodes, List<String> values, Map<String, List<Object>> groups) {
+        final List<Object> result = new ArrayList<Object>();
+        for (int i = 0; i < nodes.size(); i++) {
+            if (groups.get(values.get(i)).size() > 1) {
+                result.add(nodes.get(i));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.support.jaxen.extensions;
+
+import org.intellij.lang.xpath.context.functions.Parameter;
+import org.intellij.lang.xpath.psi.XPathType;
+import org.intellij.plugins.xpathView.support.jaxen.DocumentOrder;
+import org.intellij.plugins.xpathView.util.CachedVariableContext;
+import org.intellij.plugins.xpathView.util.KeyDefinition;
+import org.jaxen.*;
+import org.jaxen.function.StringFunction;
+
+import java.util.*;
+
+/**
+ * XSLT's <code>key(name, value)</code>: returns the nodes of the context document that have the given value for the
+ * named key. The key definitions are part of the evaluation context, see {@link CachedVariableContext#getKeyDefinitions(String)}.
+ */
+class KeyFunction extends FunctionImplementation implements Function {
+    public KeyFunction() {
+        super("key", XPathType.NODESET,
+                new Parameter(XPathType.STRING, Parameter.Kind.REQUIRED),
+                new Parameter(XPathType.ANY, Parameter.Kind.REQUIRED));
+    }
+
+    public Function getImplementation() {
+        return this;
+    }
+
+    @SuppressWarnings({ "RawUseOfParameterizedType" })
+    public Object call(Context context, List args) throws FunctionCallException {
+        if (args.size() != 2) {
+            throw new FunctionCallException("key() requires two arguments");
+        }
+        final ContextSupport support = context.getContextSupport();
+        final Navigator navigator = context.getNavigator();
+
+        final String name = StringFunction.evaluate(args.get(0), navigator);
+        final VariableContext variables = support.getVariableContext();
+        final List<KeyDefinition> keys = variables instanceof CachedVariableContext
+                ? ((CachedVariableContext)variables).getKeyDefinitions(name)
+                : Collections.<KeyDefinition>emptyList();
+        if (keys.isEmpty()) {
+            throw new FunctionCallException("Undefined key: " + name);
+        }
+
+        final List<String> values = new ArrayList<String>();
+        final Object arg = args.get(1);
+        if (arg instanceof List) {
+            for (Object node : (List)arg) {
+                values.add(StringFunction.evaluate(node, navigator));
+            }
+        } else {
+            values.add(StringFunction.evaluate(arg, navigator));
+        }
+
+        final List nodeSet = context.getNodeSet();
+        if (nodeSet.isEmpty()) {
+            return Collections.emptyList();
+        }
+        try {
+            final Object document = navigator.getDocumentNode(nodeSet.get(0));
+            if (keys.size() == 1 && values.size() == 1) {
+                return new ArrayList<Object>(KeyIndex.get(document, keys.get(0), support).lookup(values.get(0)));
+            }
+
+            // duplicates are removed by the sort
+            final List<Object> result = new ArrayList<Object>();
+            for (KeyDefinition key : keys) {
+                final KeyIndex index = KeyIndex.get(document, key, support);
+                for (String value : values) {
+                    result.addAll(index.lookup(value));
+                }
+            }
+            return DocumentOrder.sort(result);
+        } catch (JaxenException e) {
+            throw new FunctionCallException("Cannot evaluate key '" + name + "': " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.support.jaxen.extensions;
+
+import consulo.language.psi.PsiElement;
+import consulo.language.psi.PsiFile;
+import consulo.util.dataholder.Key;
+import org.intellij.plugins.xpathView.support.XPathStatistics;
+import org.intellij.plugins.xpathView.util.ExpressionReferences;
+import org.intellij.plugins.xpathView.util.KeyDefinition;
+import org.jaxen.*;
+import org.jaxen.function.StringFunction;
+import org.jaxen.pattern.Pattern;
+import org.jaxen.pattern.PatternParser;
+import org.jaxen.saxpath.SAXPathException;
+
+import jakarta.annotation.Nonnull;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hash index of the nodes of one document for a {@link KeyDefinition}. The index is built on first use and kept with
+ * the file until it is modified, so repeated <code>key()</code> calls and later evaluations don't scan the document
+ * again.
+ * <p>
+ * The <code>match</code> and <code>use</code> expressions may depend on the evaluation, so an index is only reused if
+ * the prefixes they use are bound to the same namespaces and the variables they refer to have the same values. The
+ * functions are the same for all evaluations of the {@link org.intellij.plugins.xpathView.support.XPathSupport}.
+ * Keys whose expressions call <code>key()</code> themselves are not cached. The most recently used indexes of a file
+ * are kept.
+ */
+final class KeyIndex {
+    private static final Key<DocumentIndexes> INDEXES_KEY = Key.create("XPATH_KEY_INDEXES");
+    private static final int MAX_INDEXES = 16;
+
+    private final Map<String, List<Object>> myNodes = new HashMap<String, List<Object>>();
+
+    private KeyIndex() {
+    }
+
+    @Nonnull
+    List<Object> lookup(String value) {
+        final List<Object> nodes = myNodes.get(value);
+        return nodes != null ? nodes : Collections.emptyList();
+    }
+
+    /**
+     * Returns the index of the document that contains <code>document</code>, building it if necessary. The
+     * <code>use</code> expression is evaluated with the namespaces, functions and variables of <code>support</code>.
+     */
+    @Nonnull
+    static KeyIndex get(Object document, KeyDefinition key, ContextSupport support) throws JaxenException {
+        final PsiFile file = ((PsiElement)document).getContainingFile();
+
+        final long stamp = file.getModificationStamp();
+        DocumentIndexes indexes = file.getUserData(INDEXES_KEY);
+        if (indexes == null || indexes.myStamp != stamp) {
+            indexes = new DocumentIndexes(stamp);
+            file.putUserData(INDEXES_KEY, indexes);
+        }
+
+        final XPathStatistics.CacheStatistics statistics = XPathStatistics.getInstance().cache("keys");
+        final IndexKey indexKey = IndexKey.create(key, indexes.getReferences(key, support.getNavigator()), support);
+        if (indexKey == null) {
+            statistics.miss();
+            return build(document, key, support);
+        }
+        KeyIndex index = indexes.myIndexes.get(indexKey);
+        if (index == null) {
+            statistics.miss();
+            index = build(document, key, support);
+            indexes.myIndexes.put(indexKey, index);
+        } else {
+            statistics.hit();
+        }
+        return index;
+    }
+
+    private static KeyIndex build(Object document, KeyDefinition key, ContextSupport support) throws JaxenException {
+        final Navigator navigator = support.getNavigator();
+
+        final Pattern pattern;
+        try {
+            pattern = PatternParser.parse(key.getMatch());
+        } catch (SAXPathException e) {
+            throw new JaxenException(e);
+        }
+
+        final XPath use = parse(navigator, key.getUse());
+        use.setNamespaceContext(support.getNamespaceContext());
+        use.setFunctionContext(support.getFunctionContext());
+        use.setVariableContext(support.getVariableContext());
+
+        final KeyIndex index = new KeyIndex();
+        final Context context = new Context(support);
+        // selectNodes() returns the nodes in document order, and so will each list of the index
+        for (Object node : parse(navigator, "//node() | //@*").selectNodes(document)) {
+            if (!pattern.matches(node, context)) {
+                continue;
+            }
+            final Object value = use.evaluate(node);
+            if (value instanceof List) {
+                for (Object o : (List<?>)value) {
+                    index.add(StringFunction.evaluate(o, navigator), node);
+                }
+            } else {
+                index.add(StringFunction.evaluate(value, navigator), node);
+            }
+        }
+        return index;
+    }
+
+    private static XPath parse(Navigator navigator, String expression) throws JaxenException {
+        try {
+            return navigator.parseXPath(expression);
+        } catch (SAXPathException e) {
+            throw new JaxenException(e);
+        }
+    }
+
+    private void add(String value, Object node) {
+        final List<Object> nodes = myNodes.computeIfAbsent(value, v -> new ArrayList<Object>(1));
+        // the use expression may yield the same value more than once for a node
+        if (nodes.isEmpty() || nodes.get(nodes.size() - 1) != node) {
+            nodes.add(node);
+        }
+    }
+
+    private static final class DocumentIndexes {
+        final long myStamp;
+        final Map<IndexKey, KeyIndex> myIndexes = Collections.synchronizedMap(new LinkedHashMap<IndexKey, KeyIndex>(MAX_INDEXES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<IndexKey, KeyIndex> eldest) {
+                return size() > MAX_INDEXES;
+            }
+        });
+        // what the match and use expressions of a key refer to
+        private final Map<KeyDefinition, ExpressionReferences[]> myReferences = new ConcurrentHashMap<KeyDefinition, ExpressionReferences[]>();
+
+        DocumentIndexes(long stamp) {
+            myStamp = stamp;
+        }
+
+        ExpressionReferences[] getReferences(KeyDefinition key, Navigator navigator) throws JaxenException {
+            ExpressionReferences[] references = myReferences.get(key);
+            if (references == null) {
+                references = new ExpressionReferences[]{
+                    ExpressionReferences.of(((BaseXPath)parse(navigator, key.getMatch())).getRootExpr()),
+                    ExpressionReferences.of(((BaseXPath)parse(navigator, key.getUse())).getRootExpr())
+                };
+                myReferences.put(key, references);
+            }
+            return references;
+        }
+    }
+
+    /**
+     * A key definition together with the namespace bindings and the variable values its expressions depend on.
+     * Node-set values are compared by the identity of their nodes.
+     */
+    private static final class IndexKey {
+        private final KeyDefinition myKey;
+        private final String myBindings;
+        private final List<Object> myValues;
+
+        private IndexKey(KeyDefinition key, String bindings, List<Object> values) {
+            myKey = key;
+            myBindings = bindings;
+            myValues = values;
+        }
+
+        /**
+         * Returns the key for evaluating <code>key</code> with <code>support</code>, or <code>null</code> if the index
+         * may depend on more than can be compared.
+         */
+        static IndexKey create(KeyDefinition key, ExpressionReferences[] references, ContextSupport support) throws UnresolvableException {
+            final Set<String> prefixes = new TreeSet<String>();
+            final Set<String> variables = new TreeSet<String>();
+            for (ExpressionReferences reference : references) {
+                if (!reference.isComplete() || reference.getFunctions().contains("key")) {
+                    return null;
+                }
+                prefixes.addAll(reference.getPrefixes());
+                variables.addAll(reference.getVariables());
+            }
+
+            final StringBuilder bindings = new StringBuilder();
+            for (String prefix : prefixes) {
+                bindings.append(prefix).append('=').append(support.translateNamespacePrefixToUri(prefix)).append('\n');
+            }
+            final List<Object> values = new ArrayList<Object>(variables.size());
+            for (String variable : variables) {
+                final int colon = variable.indexOf(':');
+                final String prefix = colon != -1 ? variable.substring(0, colon) : null;
+                final String uri = prefix != null ? support.translateNamespacePrefixToUri(prefix) : null;
+                values.add(support.getVariableValue(uri, prefix, variable.substring(colon + 1)));
+            }
+            return new IndexKey(key, bindings.toString(), values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof IndexKey)) return false;
+
+            final IndexKey other = (IndexKey)o;
+            if (!myKey.equals(other.myKey) || !myBindings.equals(other.myBindings) || myValues.size() != other.myValues.size()) {
+                return false;
+            }
+            for (int i = 0; i < myValues.size(); i++) {
+                if (!sameValue(myValues.get(i), other.myValues.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = myKey.hashCode();
+            result = 31 * result + myBindings.hashCode();
+            for (Object value : myValues) {
+                result = 31 * result + valueHash(value);
+            }
+            return result;
+        }
+
+        private static boolean sameValue(Object a, Object b) {
+            if (a instanceof List && b instanceof List) {
+                final List<?> l1 = (List<?>)a;
+                final List<?> l2 = (List<?>)b;
+                if (l1.size() != l2.size()) {
+                    return false;
+                }
+                for (int i = 0; i < l1.size(); i++) {
+                    if (l1.get(i) != l2.get(i)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            return Objects.equals(a, b);
+        }
+
+        private static int valueHash(Object value) {
+            if (value instanceof List) {
+                int result = 1;
+                for (Object o : (List<?>)value) {
+                    result = 31 * result + System.identityHashCode(o);
+                }
+                return result;
+            }
+            return Objects.hashCode(value);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.support.jaxen.extensions;
+
+import org.intellij.plugins.xpathView.support.XPathStatistics;
+import org.jaxen.FunctionCallException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled regular expressions of the regex extension functions, shared by all evaluations. A function is called once
+ * per node, usually with the same literal pattern, so without the cache the pattern would be compiled again for every
+ * node of every file. The least recently used patterns are dropped when the cache is full. The XPath 2.0 evaluator
+ * shares the cache.
+ */
+public final class PatternCache {
+    private static final int MAX_SIZE = 256;
+
+    private static final Map<String, Pattern> ourPatterns = new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    private PatternCache() {
+    }
+
+    public static Pattern getPattern(String regex, int flags) {
+        final String key = flags + ":" + regex;
+        final XPathStatistics.CacheStatistics statistics = XPathStatistics.getInstance().cache("regex");
+
+        Pattern pattern;
+        synchronized (ourPatterns) {
+            pattern = ourPatterns.get(key);
+        }
+        if (pattern != null) {
+            statistics.hit();
+            return pattern;
+        }
+        statistics.miss();
+
+        // compile outside of the lock: another thread may compile the same pattern, which is harmless
+        pattern = Pattern.compile(regex, flags);
+        synchronized (ourPatterns) {
+            ourPatterns.put(key, pattern);
+        }
+        return pattern;
+    }
+
+    /**
+     * Converts the flags of the XPath 2.0 regular expression functions (<code>s</code>, <code>m</code>,
+     * <code>i</code>, <code>x</code>) to those of {@link Pattern}.
+     */
+    public static int parseFlags(String flags) throws FunctionCallException {
+        int result = 0;
+        for (int i = 0; i < flags.length(); i++) {
+            switch (flags.charAt(i)) {
+                case 's':
+                    result |= Pattern.DOTALL;
+                    break;
+                case 'm':
+                    result |= Pattern.MULTILINE;
+                    break;
+                case 'i':
+                    result |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+                    break;
+                case 'x':
+                    result |= Pattern.COMMENTS;
+                    break;
+                default:
+                    throw new FunctionCallException("Invalid regular expression flag: " + flags.charAt(i));
+            }
+        }
+        return result;
+    }
+}
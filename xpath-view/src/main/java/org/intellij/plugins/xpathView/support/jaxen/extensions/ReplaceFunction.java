@@ -0,0 +1,51 @@
+/*
+ * Copyright 2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.support.jaxen.extensions;
+
+import org.intellij.lang.xpath.context.functions.Parameter;
+import org.intellij.lang.xpath.psi.XPathType;
+import org.jaxen.FunctionCallException;
+import org.jaxen.Navigator;
+import org.jaxen.function.StringFunction;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * <code>replace(input, pattern, replacement [, flags])</code>: replaces all matches. The replacement may refer to
+ * groups as <code>$1</code>.
+ */
+class ReplaceFunction extends BasicRegexFunction {
+    public ReplaceFunction() {
+        super("replace", XPathType.STRING,
+                new Parameter(XPathType.STRING, Parameter.Kind.REQUIRED),
+                new Parameter(XPathType.STRING, Parameter.Kind.REQUIRED),
+                new Parameter(XPathType.STRING, Parameter.Kind.REQUIRED),
+                new Parameter(XPathType.STRING, Parameter.Kind.OPTIONAL));
+    }
+
+    @SuppressWarnings({ "RawUseOfParameterizedType" })
+    protected Object evaluate(String input, Pattern pattern, List args, Navigator navigator) throws FunctionCallException {
+        final String replacement = StringFunction.evaluate(args.get(2), navigator);
+        try {
+            return pattern.matcher(input).replaceAll(replacement);
+        } catch (IllegalArgumentException e) {
+            throw new FunctionCallException("Invalid replacement string: " + e.getMessage());
+        } catch (IndexOutOfBoundsException e) {
+            throw new FunctionCallException("Invalid replacement string: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.support.jaxen.extensions;
+
+import org.intellij.lang.xpath.context.functions.Parameter;
+import org.intellij.lang.xpath.psi.XPathType;
+import org.intellij.plugins.xpathView.support.jaxen.DocumentOrder;
+import org.jaxen.Context;
+import org.jaxen.Function;
+import org.jaxen.FunctionCallException;
+
+import java.util.List;
+
+/**
+ * XPath 2.0's <code>intersect</code> and <code>except</code> operators as functions:
+ * <code>intersect(node-set, node-set)</code> and <code>except(node-set, node-set)</code>. Both node-sets are mapped to
+ * sorted positions in document order and merged in a single pass, see {@link DocumentOrder}. The result is in document
+ * order.
+ */
+class SetOperationFunction extends FunctionImplementation implements Function {
+    private final boolean myIntersect;
+
+    private SetOperationFunction(String name, boolean intersect) {
+        super(name, XPathType.NODESET,
+                new Parameter(XPathType.NODESET, Parameter.Kind.REQUIRED),
+                new Parameter(XPathType.NODESET, Parameter.Kind.REQUIRED));
+        myIntersect = intersect;
+    }
+
+    static SetOperationFunction intersect() {
+        return new SetOperationFunction("intersect", true);
+    }
+
+    static SetOperationFunction except() {
+        return new SetOperationFunction("except", false);
+    }
+
+    public Function getImplementation() {
+        return this;
+    }
+
+    @SuppressWarnings({ "RawUseOfParameterizedType" })
+    public Object call(Context context, List args) throws FunctionCallException {
+        if (args.size() != 2) {
+            throw new FunctionCallException(getName() + "() requires two arguments");
+        }
+        if (!(args.get(0) instanceof List) || !(args.get(1) instanceof List)) {
+            throw new FunctionCallException(getName() + "() requires node-sets as arguments");
+        }
+        return DocumentOrder.combine((List<?>)args.get(0), (List<?>)args.get(1), myIntersect);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.support.jaxen.extensions;
+
+import org.intellij.lang.xpath.context.functions.Parameter;
+import org.intellij.lang.xpath.psi.XPathType;
+import org.jaxen.Navigator;
+import org.jaxen.function.NumberFunction;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <code>token(input, pattern, index [, flags])</code>: splits the input at the matches of the pattern, like XPath
+ * 2.0's <code>tokenize()</code>, and returns the token at the 1-based index, or an empty string if there is none.
+ * XPath 1.0 has no sequences of strings, so the tokens are selected one at a time instead of being returned together.
+ */
+class TokenFunction extends BasicRegexFunction {
+    public TokenFunction() {
+        super("token", XPathType.STRING,
+                new Parameter(XPathType.STRING, Parameter.Kind.REQUIRED),
+                new Parameter(XPathType.STRING, Parameter.Kind.REQUIRED),
+                new Parameter(XPathType.NUMBER, Parameter.Kind.REQUIRED),
+                new Parameter(XPathType.STRING, Parameter.Kind.OPTIONAL));
+    }
+
+    @SuppressWarnings({ "RawUseOfParameterizedType" })
+    protected Object evaluate(String input, Pattern pattern, List args, Navigator navigator) {
+        final double index = Math.rint(NumberFunction.evaluate(args.get(2), navigator).doubleValue());
+        if (input.length() == 0 || !(index >= 1)) {
+            return "";
+        }
+        final Matcher matcher = pattern.matcher(input);
+        int start = 0;
+        int token = 1;
+        while (matcher.find()) {
+            // like XPath 2.0, a pattern that matches the empty string doesn't split
+            if (matcher.end() == matcher.start()) {
+                continue;
+            }
+            if (token == index) {
+                return input.substring(start, matcher.start());
+            }
+            token++;
+            start = matcher.end();
+        }
+        return token == index ? input.substring(start) : "";
+    }
+}
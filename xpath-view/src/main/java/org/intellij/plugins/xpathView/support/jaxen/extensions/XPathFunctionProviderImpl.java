@@ -34,7 +34,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 /**
- * Simple implementation that adds extension functions for file-type, file-name and file-extension
+ * Simple implementation that adds extension functions for file-type, file-name and file-extension, and XSLT's key()
  */
 @ExtensionImpl
 public class XPathFunctionProviderImpl extends XPathFunctionProvider {
@@ -45,6 +45,15 @@ public class XPathFunctionProviderImpl extends XPathFunctionProvider {
         myFunctions.put(new QName(null, "file-type"), new FileTypeFunction());
         myFunctions.put(new QName(null, "file-name"), new FileNameFunction());
         myFunctions.put(new QName(null, "file-ext"), new FileExtensionFunction());
+        myFunctions.put(new QName(null, "key"), new KeyFunction());
+        myFunctions.put(new QName(null, "distinct-nodes"), new DistinctNodesFunction());
+        myFunctions.put(new QName(null, "duplicates"), new DuplicatesFunction());
+        myFunctions.put(new QName(null, "group-count"), new GroupCountFunction());
+        myFunctions.put(new QName(null, "matches"), new MatchesFunction());
+        myFunctions.put(new QName(null, "replace"), new ReplaceFunction());
+        myFunctions.put(new QName(null, "token"), new TokenFunction());
+        myFunctions.put(new QName(null, "intersect"), SetOperationFunction.intersect());
+        myFunctions.put(new QName(null, "except"), SetOperationFunction.except());
 
         // Extensions provided by Jaxen
         //myFunctions.put(new QName(null, "matrix-concat"), new JaxenMatrixConcat());
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.support.xpath2;
+
+import consulo.application.progress.ProgressManager;
+import org.jaxen.JaxenException;
+
+import jakarta.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A lazily evaluated XPath 2.0 sequence. The items are nodes, <code>String</code>s, <code>Double</code>s and
+ * <code>Boolean</code>s. Each call to {@link #iterator()} starts a new pull-based pass that computes only the items
+ * that are actually consumed, so <code>exists(1 to 10000000)</code> looks at one item and
+ * <code>count(1 to 10000000)</code> never holds more than one.
+ */
+abstract class Sequence {
+    static final Sequence EMPTY = of(Collections.emptyList());
+
+    /**
+     * An iterator whose items may be computed by evaluating expressions, hence the checked exceptions.
+     */
+    interface ItemIterator {
+        boolean hasNext() throws JaxenException;
+
+        Object next() throws JaxenException;
+    }
+
+    interface Mapper {
+        Sequence map(Object item) throws JaxenException;
+    }
+
+    @Nonnull
+    abstract ItemIterator iterator();
+
+    @Nonnull
+    static Sequence of(List<?> items) {
+        return new Sequence() {
+            @Nonnull
+            ItemIterator iterator() {
+                return new ItemIterator() {
+                    private int myIndex;
+
+                    public boolean hasNext() {
+                        return myIndex < items.size();
+                    }
+
+                    public Object next() {
+                        if (myIndex >= items.size()) {
+                            throw new NoSuchElementException();
+                        }
+                        return items.get(myIndex++);
+                    }
+                };
+            }
+        };
+    }
+
+    @Nonnull
+    static Sequence single(Object item) {
+        return of(Collections.singletonList(item));
+    }
+
+    /**
+     * The integers from <code>from</code> to <code>to</code>, both inclusive.
+     */
+    @Nonnull
+    static Sequence range(long from, long to) {
+        return new Sequence() {
+            @Nonnull
+            ItemIterator iterator() {
+                return new ItemIterator() {
+                    private long myNext = from;
+
+                    public boolean hasNext() {
+                        return myNext <= to;
+                    }
+
+                    public Object next() {
+                        if (myNext > to) {
+                            throw new NoSuchElementException();
+                        }
+                        if ((myNext & 0xFFFF) == 0) {
+                            ProgressManager.checkCanceled();
+                        }
+                        return (double)myNext++;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Applies <code>mapper</code> to each item and concatenates the results, one item at a time.
+     */
+    @Nonnull
+    Sequence flatMap(Mapper mapper) {
+        final Sequence source = this;
+        return new Sequence() {
+            @Nonnull
+            ItemIterator iterator() {
+                final ItemIterator items = source.iterator();
+                return new ItemIterator() {
+                    private ItemIterator myCurrent;
+
+                    public boolean hasNext() throws JaxenException {
+                        while (myCurrent == null || !myCurrent.hasNext()) {
+                            if (!items.hasNext()) {
+                                return false;
+                            }
+                            ProgressManager.checkCanceled();
+                            myCurrent = mapper.map(items.next()).iterator();
+                        }
+                        return true;
+                    }
+
+                    public Object next() throws JaxenException {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return myCurrent.next();
+                    }
+                };
+            }
+        };
+    }
+
+    @Nonnull
+    static Sequence concat(List<Sequence> sequences) {
+        return of(sequences).flatMap(s -> (Sequence)s);
+    }
+
+    boolean isEmpty() throws JaxenException {
+        return !iterator().hasNext();
+    }
+
+    @Nonnull
+    List<Object> toList() throws JaxenException {
+        final List<Object> list = new ArrayList<Object>();
+        for (ItemIterator it = iterator(); it.hasNext(); ) {
+            list.add(it.next());
+        }
+        return list;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.support.xpath2;
+
+import consulo.annotation.component.ExtensionImpl;
+import org.intellij.plugins.xpathView.support.XPathEngine;
+import org.jaxen.JaxenException;
+import org.jaxen.XPath;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * The XPath 2.0 engine, see {@link XPath2Expression}.
+ */
+@ExtensionImpl(id = "xpath2")
+public class XPath2Engine extends XPathEngine {
+    @Nonnull
+    @Override
+    public String getId() {
+        return "xpath2";
+    }
+
+    @Override
+    public boolean supports(@Nonnull Request request) {
+        return request.isXPath2();
+    }
+
+    @Nonnull
+    @Override
+    public XPath createXPath(@Nonnull Request request) throws JaxenException {
+        final XPath2Expression xpath = new XPath2Expression(request.getFile(), request.getExpression());
+        xpath.setFunctionContext(request.getFunctionContext());
+        xpath.setNamespaceContext(request.getNamespaceContext());
+        return xpath;
+    }
+}
@@ -0,0 +1,572 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.support.xpath2;
+
+import consulo.language.ast.IElementType;
+import org.intellij.lang.xpath.XPath2TokenTypes;
+import org.intellij.lang.xpath.XPathTokenTypes;
+import org.intellij.lang.xpath.psi.*;
+import org.intellij.plugins.xpathView.support.jaxen.DocumentOrder;
+import org.intellij.plugins.xpathView.support.jaxen.extensions.PatternCache;
+import org.jaxen.*;
+import org.jaxen.function.NumberFunction;
+import org.jaxen.function.StringFunction;
+
+import jakarta.annotation.Nonnull;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Evaluates the PSI of an XPath 2.0 expression with lazy {@link Sequence}s. Ranges, <code>for</code> expressions and
+ * sequence constructors stream their items; quantified expressions, <code>exists()</code>, <code>empty()</code>,
+ * <code>and</code>, <code>or</code> and general comparisons stop at the first item that decides the result.
+ * <p>
+ * Location paths and the functions that aren't implemented here are evaluated by Jaxen. The variables bound by
+ * <code>for</code> and quantified expressions are passed to Jaxen, so <code>for $a in //a return $a/@id</code> works
+ * as expected. Functions that return sequences of atomic values, like <code>distinct-values()</code> and
+ * <code>tokenize()</code>, can't be evaluated by Jaxen and are implemented here.
+ */
+final class XPath2Evaluator {
+    private static final String CODEPOINT_COLLATION = "http://www.w3.org/2005/xpath-functions/collation/codepoint";
+
+    private final XPath2Expression myExpression;
+    private final Navigator myNavigator;
+    private final Map<XPathExpression, XPath> myDelegates = new HashMap<XPathExpression, XPath>();
+
+    XPath2Evaluator(XPath2Expression expression) {
+        myExpression = expression;
+        myNavigator = expression.getNavigator();
+    }
+
+    /**
+     * The context item and the variables in scope. Bindings are immutable, lazily evaluated sequences keep the
+     * bindings they were created with.
+     */
+    static final class Focus {
+        final Object myItem;
+        final Bindings myBindings;
+
+        Focus(Object item, Bindings bindings) {
+            myItem = item;
+            myBindings = bindings;
+        }
+
+        Focus bind(String name, Object value) {
+            return new Focus(myItem, new Bindings(name, Sequence.single(value), myBindings));
+        }
+    }
+
+    static final class Bindings {
+        final String myName;
+        final Sequence myValue;
+        final Bindings myParent;
+
+        Bindings(String name, Sequence value, Bindings parent) {
+            myName = name;
+            myValue = value;
+            myParent = parent;
+        }
+
+        static Sequence lookup(Bindings bindings, String name) {
+            for (Bindings b = bindings; b != null; b = b.myParent) {
+                if (b.myName.equals(name)) {
+                    return b.myValue;
+                }
+            }
+            return null;
+        }
+    }
+
+    @Nonnull
+    Sequence evaluate(XPathExpression expr, Focus focus) throws JaxenException {
+        if (expr instanceof XPathNumber) {
+            return Sequence.single(((XPathNumber)expr).getValue());
+        } else if (expr instanceof XPathString) {
+            return Sequence.single(((XPathString)expr).getValue());
+        } else if (expr instanceof XPathParenthesizedExpression) {
+            final XPathExpression e = ((XPathParenthesizedExpression)expr).getExpression();
+            return e != null ? evaluate(e, focus) : Sequence.EMPTY;
+        } else if (expr instanceof XPath2Sequence) {
+            final List<Sequence> items = new ArrayList<Sequence>();
+            for (XPathExpression e : ((XPath2Sequence)expr).getSequence()) {
+                items.add(evaluate(e, focus));
+            }
+            return Sequence.concat(items);
+        } else if (expr instanceof XPath2RangeExpression) {
+            return range((XPath2RangeExpression)expr, focus);
+        } else if (expr instanceof XPath2For) {
+            final XPath2For f = (XPath2For)expr;
+            return bind(f.getVariables(), 0, focus, (item, scope) -> evaluate(required(f.getReturn(), f), scope));
+        } else if (expr instanceof XPath2QuantifiedExpr) {
+            return Sequence.single(quantify((XPath2QuantifiedExpr)expr, focus));
+        } else if (expr instanceof XPath2If) {
+            final XPath2If e = (XPath2If)expr;
+            final boolean condition = booleanValue(evaluate(required(e.getCondition(), e), focus));
+            return evaluate(required(condition ? e.getThenBranch() : e.getElseBranch(), e), focus);
+        } else if (expr instanceof XPathBinaryExpression) {
+            return binary((XPathBinaryExpression)expr, focus);
+        } else if (expr instanceof XPathPrefixExpression) {
+            final XPathPrefixExpression e = (XPathPrefixExpression)expr;
+            final Object value = atomizeSingle(evaluate(required(e.getExpression(), e), focus));
+            if (value == null) {
+                return Sequence.EMPTY;
+            }
+            final double d = number(value);
+            return Sequence.single(e.getOperator() == XPathTokenTypes.MINUS ? -d : d);
+        } else if (expr instanceof XPathVariableReference) {
+            return variable((XPathVariableReference)expr, focus);
+        } else if (expr instanceof XPathFunctionCall) {
+            final Sequence result = function((XPathFunctionCall)expr, focus);
+            if (result != null) {
+                return result;
+            }
+        }
+        return delegate(expr, focus);
+    }
+
+    private static XPathExpression required(XPathExpression expr, XPathExpression parent) throws JaxenException {
+        if (expr == null) {
+            throw new JaxenException("Incomplete expression: " + parent.getText());
+        }
+        return expr;
+    }
+
+    private interface Body {
+        Sequence evaluate(Object item, Focus scope) throws JaxenException;
+    }
+
+    /**
+     * Binds the variables from <code>index</code> on, one item at a time, and concatenates the results of
+     * <code>body</code> for every combination.
+     */
+    private Sequence bind(XPathVariableDeclaration[] declarations, int index, Focus focus, Body body) throws JaxenException {
+        final XPathVariableDeclaration declaration = declarations[index];
+        final XPathVariable variable = declaration.getVariable();
+        final XPathExpression initializer = declaration.getInitializer();
+        if (variable == null || initializer == null) {
+            throw new JaxenException("Incomplete variable declaration: " + declaration.getText());
+        }
+        final String name = variable.getName();
+        return evaluate(initializer, focus).flatMap(item -> {
+            final Focus scope = focus.bind(name, item);
+            return index + 1 < declarations.length ? bind(declarations, index + 1, scope, body) : body.evaluate(item, scope);
+        });
+    }
+
+    private boolean quantify(XPath2QuantifiedExpr expr, Focus focus) throws JaxenException {
+        final boolean every = expr.getNode().findChildByType(XPath2TokenTypes.EVERY) != null;
+        final XPathExpression test = required(expr.getTest(), expr);
+        // the test's result for each combination of bindings; a single "false" (every) or "true" (some) decides
+        final Sequence results = bind(expr.getVariables(), 0, focus, (item, scope) -> Sequence.single(booleanValue(evaluate(test, scope))));
+        for (Sequence.ItemIterator it = results.iterator(); it.hasNext(); ) {
+            if ((Boolean)it.next() != every) {
+                return !every;
+            }
+        }
+        return every;
+    }
+
+    private Sequence range(XPath2RangeExpression expr, Focus focus) throws JaxenException {
+        final Object from = atomizeSingle(evaluate(expr.getFrom(), focus));
+        final Object to = atomizeSingle(evaluate(required(expr.getTo(), expr), focus));
+        if (from == null || to == null) {
+            return Sequence.EMPTY;
+        }
+        return Sequence.range((long)number(from), (long)number(to));
+    }
+
+    private Sequence binary(XPathBinaryExpression expr, Focus focus) throws JaxenException {
+        final IElementType op = expr.getOperator();
+        final XPathExpression lOperand = required(expr.getLOperand(), expr);
+        final XPathExpression rOperand = required(expr.getROperand(), expr);
+
+        if (op == XPathTokenTypes.AND) {
+            return Sequence.single(booleanValue(evaluate(lOperand, focus)) && booleanValue(evaluate(rOperand, focus)));
+        } else if (op == XPathTokenTypes.OR) {
+            return Sequence.single(booleanValue(evaluate(lOperand, focus)) || booleanValue(evaluate(rOperand, focus)));
+        }
+
+        final Sequence left = evaluate(lOperand, focus);
+        final Sequence right = evaluate(rOperand, focus);
+
+        if (XPathTokenTypes.EQUALITY_OPS.contains(op) || XPathTokenTypes.REL_OPS.contains(op)) {
+            return Sequence.single(generalComparison(op, left, right));
+        } else if (XPath2TokenTypes.NODE_COMP_OPS.contains(op)) {
+            final Object l = singleNode(left, expr);
+            final Object r = singleNode(right, expr);
+            if (l == null || r == null) {
+                return Sequence.EMPTY;
+            }
+            return Sequence.single(compareNodes(op, l, r));
+        } else if (op == XPathTokenTypes.UNION || op == XPath2TokenTypes.UNION) {
+            final List<Object> nodes = nodes(left, expr);
+            nodes.addAll(nodes(right, expr));
+            return Sequence.of(DocumentOrder.sort(nodes));
+        } else if (op == XPath2TokenTypes.INTERSECT || op == XPath2TokenTypes.EXCEPT) {
+            return Sequence.of(DocumentOrder.combine(nodes(left, expr), nodes(right, expr), op == XPath2TokenTypes.INTERSECT));
+        }
+
+        final Object l = atomizeSingle(left);
+        final Object r = atomizeSingle(right);
+        if (l == null || r == null) {
+            return Sequence.EMPTY;
+        }
+        if (isValueComparison(op)) {
+            return Sequence.single(compare(op, l, r));
+        }
+        return Sequence.single(arithmetic(op, number(l), number(r), expr));
+    }
+
+    private static boolean isValueComparison(IElementType op) {
+        return op == XPath2TokenTypes.WEQ || op == XPath2TokenTypes.WNE || op == XPath2TokenTypes.WLT
+                || op == XPath2TokenTypes.WLE || op == XPath2TokenTypes.WGT || op == XPath2TokenTypes.WGE;
+    }
+
+    private static double arithmetic(IElementType op, double l, double r, XPathBinaryExpression expr) throws JaxenException {
+        if (op == XPathTokenTypes.PLUS) {
+            return l + r;
+        } else if (op == XPathTokenTypes.MINUS) {
+            return l - r;
+        } else if (op == XPathTokenTypes.MULT || op == XPathTokenTypes.STAR) {
+            return l * r;
+        } else if (op == XPathTokenTypes.DIV) {
+            return l / r;
+        } else if (op == XPathTokenTypes.MOD) {
+            return l % r;
+        } else if (op == XPath2TokenTypes.IDIV) {
+            if (r == 0) {
+                throw new JaxenException("Integer division by zero: " + expr.getText());
+            }
+            return (long)(l / r);
+        }
+        throw new JaxenException("Unsupported operator '" + expr.getOperationSign() + "': " + expr.getText());
+    }
+
+    /**
+     * A general comparison is true if any pair of items compares true. The right operand is read once, the left one
+     * only up to the first matching item.
+     */
+    private boolean generalComparison(IElementType op, Sequence left, Sequence right) throws JaxenException {
+        List<Object> rightItems = null;
+        for (Sequence.ItemIterator l = left.iterator(); l.hasNext(); ) {
+            final Object a = atomize(l.next());
+            if (rightItems == null) {
+                rightItems = new ArrayList<Object>();
+                for (Sequence.ItemIterator r = right.iterator(); r.hasNext(); ) {
+                    rightItems.add(atomize(r.next()));
+                }
+            }
+            for (Object b : rightItems) {
+                if (compare(op, a, b)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean compare(IElementType op, Object a, Object b) {
+        final int result;
+        if (a instanceof Boolean || b instanceof Boolean) {
+            result = Boolean.compare(booleanValue(a), booleanValue(b));
+        } else if (a instanceof Double || b instanceof Double) {
+            final double x = number(a);
+            final double y = number(b);
+            if (Double.isNaN(x) || Double.isNaN(y)) {
+                return op == XPathTokenTypes.NE || op == XPath2TokenTypes.WNE;
+            }
+            result = Double.compare(x, y);
+        } else {
+            result = a.toString().compareTo(b.toString());
+        }
+
+        if (op == XPathTokenTypes.EQ || op == XPath2TokenTypes.WEQ) {
+            return result == 0;
+        } else if (op == XPathTokenTypes.NE || op == XPath2TokenTypes.WNE) {
+            return result != 0;
+        } else if (op == XPathTokenTypes.LT || op == XPath2TokenTypes.WLT) {
+            return result < 0;
+        } else if (op == XPathTokenTypes.LE || op == XPath2TokenTypes.WLE) {
+            return result <= 0;
+        } else if (op == XPathTokenTypes.GT || op == XPath2TokenTypes.WGT) {
+            return result > 0;
+        } else {
+            return result >= 0;
+        }
+    }
+
+    private static boolean compareNodes(IElementType op, Object l, Object r) {
+        if (op == XPath2TokenTypes.IS) {
+            return l == r;
+        }
+        final DocumentOrder order = DocumentOrder.get(l);
+        if (order == null || order != DocumentOrder.get(r)) {
+            return false;
+        }
+        final int result = order.compare(l, r);
+        return op == XPath2TokenTypes.BEFORE ? result < 0 : result > 0;
+    }
+
+    private Sequence variable(XPathVariableReference ref, Focus focus) throws JaxenException {
+        final String name = ref.getReferencedName();
+        final Sequence bound = Bindings.lookup(focus.myBindings, name);
+        if (bound != null) {
+            return bound;
+        }
+        final int colon = name.indexOf(':');
+        final String prefix = colon != -1 ? name.substring(0, colon) : null;
+        final String localName = colon != -1 ? name.substring(colon + 1) : name;
+        final String uri = prefix != null ? myExpression.getNamespaceContext().translateNamespacePrefixToUri(prefix) : null;
+        return toSequence(myExpression.getVariableContext().getVariableValue(uri, prefix, localName));
+    }
+
+    /**
+     * Evaluates the functions whose arguments benefit from lazy evaluation and those that return sequences. Returns
+     * <code>null</code> for any other function, which is then evaluated by Jaxen.
+     */
+    private Sequence function(XPathFunctionCall call, Focus focus) throws JaxenException {
+        if (call.getQName().getPrefix() != null) {
+            return null;
+        }
+        final XPathExpression[] args = call.getArgumentList();
+        final String name = call.getFunctionName();
+        if (name.equals("distinct-values") && (args.length == 1 || args.length == 2)) {
+            return distinctValues(args, focus);
+        } else if (name.equals("tokenize") && (args.length == 2 || args.length == 3)) {
+            return tokenize(args, focus);
+        }
+        if (args.length == 0) {
+            if (name.equals("true")) {
+                return Sequence.single(Boolean.TRUE);
+            } else if (name.equals("false")) {
+                return Sequence.single(Boolean.FALSE);
+            }
+            return null;
+        }
+        if (args.length != 1) {
+            return null;
+        }
+
+        switch (name) {
+            case "exists":
+                return Sequence.single(!evaluate(args[0], focus).isEmpty());
+            case "empty":
+                return Sequence.single(evaluate(args[0], focus).isEmpty());
+            case "not":
+                return Sequence.single(!booleanValue(evaluate(args[0], focus)));
+            case "boolean":
+                return Sequence.single(booleanValue(evaluate(args[0], focus)));
+            case "count": {
+                long count = 0;
+                for (Sequence.ItemIterator it = evaluate(args[0], focus).iterator(); it.hasNext(); it.next()) {
+                    count++;
+                }
+                return Sequence.single((double)count);
+            }
+            case "sum": {
+                double sum = 0;
+                for (Sequence.ItemIterator it = evaluate(args[0], focus).iterator(); it.hasNext(); ) {
+                    sum += number(atomize(it.next()));
+                }
+                return Sequence.single(sum);
+            }
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * <code>distinct-values($arg [, $collation])</code>: the atomized items without duplicates, in the order of their
+     * first occurrence. Only the codepoint collation is supported.
+     */
+    private Sequence distinctValues(XPathExpression[] args, Focus focus) throws JaxenException {
+        if (args.length > 1) {
+            final Object collation = atomizeSingle(evaluate(args[1], focus));
+            if (!CODEPOINT_COLLATION.equals(collation)) {
+                throw new JaxenException("Unsupported collation: " + collation);
+            }
+        }
+        final Set<Object> values = new LinkedHashSet<Object>();
+        for (Sequence.ItemIterator it = evaluate(args[0], focus).iterator(); it.hasNext(); ) {
+            final Object value = atomize(it.next());
+            // 0 and -0 are the same value
+            values.add(value instanceof Double && (Double)value == 0 ? (Object)0.0 : value);
+        }
+        return Sequence.of(new ArrayList<Object>(values));
+    }
+
+    /**
+     * <code>tokenize($input, $pattern [, $flags])</code>: the substrings between the matches of the pattern.
+     */
+    private Sequence tokenize(XPathExpression[] args, Focus focus) throws JaxenException {
+        final String input = string(atomizeSingle(evaluate(args[0], focus)));
+        final String regex = string(atomizeSingle(evaluate(args[1], focus)));
+        final String flags = args.length > 2 ? string(atomizeSingle(evaluate(args[2], focus))) : "";
+
+        final Pattern pattern;
+        try {
+            pattern = PatternCache.getPattern(regex, PatternCache.parseFlags(flags));
+        } catch (PatternSyntaxException e) {
+            throw new JaxenException("Invalid regular expression: " + e.getDescription());
+        }
+        if (pattern.matcher("").matches()) {
+            throw new JaxenException("The pattern of tokenize() must not match the empty string: " + regex);
+        }
+        if (input.length() == 0) {
+            return Sequence.EMPTY;
+        }
+
+        final List<Object> tokens = new ArrayList<Object>();
+        final Matcher matcher = pattern.matcher(input);
+        int start = 0;
+        while (matcher.find()) {
+            tokens.add(input.substring(start, matcher.start()));
+            start = matcher.end();
+        }
+        tokens.add(input.substring(start));
+        return Sequence.of(tokens);
+    }
+
+    /**
+     * The string value of an atomized item, the empty string for the empty sequence.
+     */
+    private String string(Object value) {
+        return value != null ? StringFunction.evaluate(value, myNavigator) : "";
+    }
+
+    /**
+     * Evaluates an expression that is valid XPath 1.0 with Jaxen, with the variables in scope.
+     */
+    private Sequence delegate(XPathExpression expr, Focus focus) throws JaxenException {
+        XPath xpath = myDelegates.get(expr);
+        if (xpath == null) {
+            try {
+                xpath = myExpression.createDelegate(expr.getText());
+            } catch (XPathSyntaxException e) {
+                throw new JaxenException("Not supported by the XPath 2.0 evaluator: " + expr.getText());
+            }
+            myDelegates.put(expr, xpath);
+        }
+        xpath.setVariableContext(new BindingsVariableContext(focus.myBindings));
+        return toSequence(xpath.evaluate(focus.myItem));
+    }
+
+    private class BindingsVariableContext implements VariableContext {
+        private final Bindings myBindings;
+
+        BindingsVariableContext(Bindings bindings) {
+            myBindings = bindings;
+        }
+
+        public Object getVariableValue(String namespaceURI, String prefix, String localName) throws UnresolvableException {
+            final Sequence value = Bindings.lookup(myBindings, prefix != null && prefix.length() > 0 ? prefix + ":" + localName : localName);
+            if (value == null) {
+                return myExpression.getVariableContext().getVariableValue(namespaceURI, prefix, localName);
+            }
+            try {
+                final List<Object> items = value.toList();
+                return items.size() == 1 && !isNode(items.get(0)) ? items.get(0) : items;
+            } catch (JaxenException e) {
+                throw new UnresolvableException(e.getMessage());
+            }
+        }
+    }
+
+    private static Sequence toSequence(Object value) {
+        return value instanceof List ? Sequence.of((List<?>)value) : Sequence.single(value);
+    }
+
+    static boolean isNode(Object item) {
+        return !(item instanceof String || item instanceof Double || item instanceof Boolean || item instanceof Number);
+    }
+
+    private Object atomize(Object item) {
+        return isNode(item) ? StringFunction.evaluate(item, myNavigator) : item;
+    }
+
+    /**
+     * Atomizes a sequence of at most one item, returns <code>null</code> for the empty sequence.
+     */
+    private Object atomizeSingle(Sequence sequence) throws JaxenException {
+        final Sequence.ItemIterator it = sequence.iterator();
+        if (!it.hasNext()) {
+            return null;
+        }
+        final Object item = it.next();
+        if (it.hasNext()) {
+            throw new JaxenException("A sequence of more than one item is not allowed here");
+        }
+        return atomize(item);
+    }
+
+    private static Object singleNode(Sequence sequence, XPathExpression expr) throws JaxenException {
+        final Sequence.ItemIterator it = sequence.iterator();
+        if (!it.hasNext()) {
+            return null;
+        }
+        final Object item = it.next();
+        if (it.hasNext() || !isNode(item)) {
+            throw new JaxenException("A single node is required: " + expr.getText());
+        }
+        return item;
+    }
+
+    private static List<Object> nodes(Sequence sequence, XPathExpression expr) throws JaxenException {
+        final List<Object> nodes = sequence.toList();
+        for (Object node : nodes) {
+            if (!isNode(node)) {
+                throw new JaxenException("Only nodes are allowed here: " + expr.getText());
+            }
+        }
+        return nodes;
+    }
+
+    private double number(Object value) {
+        return value instanceof Double ? (Double)value : NumberFunction.evaluate(value, myNavigator);
+    }
+
+    /**
+     * The effective boolean value of a sequence.
+     */
+    boolean booleanValue(Sequence sequence) throws JaxenException {
+        final Sequence.ItemIterator it = sequence.iterator();
+        if (!it.hasNext()) {
+            return false;
+        }
+        final Object first = it.next();
+        if (isNode(first)) {
+            return true;
+        }
+        if (it.hasNext()) {
+            throw new JaxenException("The effective boolean value of a sequence of more than one atomic value is not defined");
+        }
+        return booleanValue(first);
+    }
+
+    private static boolean booleanValue(Object item) {
+        if (item instanceof Boolean) {
+            return (Boolean)item;
+        } else if (item instanceof Number) {
+            final double d = ((Number)item).doubleValue();
+            return d != 0 && !Double.isNaN(d);
+        } else if (item instanceof String) {
+            return ((String)item).length() > 0;
+        }
+        return item != null;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.support.xpath2;
+
+import consulo.application.ReadAction;
+import consulo.language.psi.PsiErrorElement;
+import consulo.language.psi.util.PsiTreeUtil;
+import consulo.project.Project;
+import consulo.project.ProjectManager;
+import consulo.xml.language.psi.XmlFile;
+import org.intellij.lang.xpath.XPathFile;
+import org.intellij.lang.xpath.XPathFileType;
+import org.intellij.lang.xpath.psi.XPathExpression;
+import org.intellij.lang.xpath.psi.impl.XPathChangeUtil;
+import org.intellij.plugins.xpathView.support.XPathStatistics;
+import org.intellij.plugins.xpathView.support.jaxen.DocumentCache;
+import org.intellij.plugins.xpathView.support.jaxen.PsiDocumentNavigator;
+import org.intellij.plugins.xpathView.support.jaxen.PsiXPath;
+import org.jaxen.*;
+import org.jaxen.function.BooleanFunction;
+import org.jaxen.function.NumberFunction;
+import org.jaxen.function.StringFunction;
+
+import jakarta.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An XPath 2.0 expression behind Jaxen's {@link XPath} interface, so it can be used wherever the plugin evaluates
+ * XPath 1.0 expressions. The expression is parsed with the XPath 2.0 parser of the XPath language support and
+ * evaluated by {@link XPath2Evaluator}.
+ * <p>
+ * A result of a single atomic value is returned as that value, any other sequence as a <code>List</code>.
+ */
+public class XPath2Expression implements XPath {
+    private final XmlFile myFile;
+    private final String myText;
+    private final XPathExpression myRoot;
+    private final PsiDocumentNavigator myNavigator;
+
+    private NamespaceContext myNamespaceContext;
+    private FunctionContext myFunctionContext;
+    private VariableContext myVariableContext;
+
+    public XPath2Expression(@Nullable XmlFile file, String expression) throws JaxenException {
+        myFile = file;
+        myText = expression;
+        myNavigator = new PsiDocumentNavigator(file);
+
+        final Project project = file != null ? file.getProject() : ProjectManager.getInstance().getDefaultProject();
+        final XPathFile xpathFile = ReadAction.compute(() -> XPathChangeUtil.createXPathFile(project, expression, XPathFileType.XPATH2));
+        final PsiErrorElement error = ReadAction.compute(() -> PsiTreeUtil.findChildOfType(xpathFile, PsiErrorElement.class));
+        if (error != null) {
+            throw new XPathSyntaxException(expression, ReadAction.compute(error::getTextOffset), error.getErrorDescription());
+        }
+        myRoot = ReadAction.compute(() -> PsiTreeUtil.getChildOfType(xpathFile, XPathExpression.class));
+        if (myRoot == null) {
+            throw new XPathSyntaxException(expression, 0, "Empty expression");
+        }
+    }
+
+    /**
+     * Creates the Jaxen expression for a part of this expression that is valid XPath 1.0.
+     */
+    XPath createDelegate(String expression) throws JaxenException {
+        final PsiXPath xpath = new PsiXPath(myFile, expression);
+        xpath.setNamespaceContext(getNamespaceContext());
+        xpath.setFunctionContext(getFunctionContext());
+        return xpath;
+    }
+
+    public Object evaluate(Object context) throws JaxenException {
+        final Object node = context instanceof List ? (((List<?>)context).isEmpty() ? null : ((List<?>)context).get(0)) : context;
+
+        final long start = XPathStatistics.start();
+        final List<Object> items;
+        try (DocumentCache.Scope ignored = DocumentCache.enter()) {
+            final XPath2Evaluator evaluator = new XPath2Evaluator(this);
+            items = evaluator.evaluate(myRoot, new XPath2Evaluator.Focus(node, null)).toList();
+        }
+
+        final XPathStatistics statistics = XPathStatistics.getInstance();
+        statistics.recordTime(XPathStatistics.EVALUATE, start);
+        statistics.recordValue(XPathStatistics.RESULT_SIZE, items.size());
+
+        if (items.size() == 1 && !XPath2Evaluator.isNode(items.get(0))) {
+            return items.get(0);
+        }
+        return items;
+    }
+
+    @SuppressWarnings({ "RawUseOfParameterizedType" })
+    public List selectNodes(Object context) throws JaxenException {
+        final Object result = evaluate(context);
+        return result instanceof List ? (List)result : Collections.singletonList(result);
+    }
+
+    public Object selectSingleNode(Object context) throws JaxenException {
+        final List<?> nodes = selectNodes(context);
+        return nodes.isEmpty() ? null : nodes.get(0);
+    }
+
+    @Deprecated
+    public String valueOf(Object context) throws JaxenException {
+        return stringValueOf(context);
+    }
+
+    public String stringValueOf(Object context) throws JaxenException {
+        return StringFunction.evaluate(evaluate(context), myNavigator);
+    }
+
+    public boolean booleanValueOf(Object context) throws JaxenException {
+        return BooleanFunction.evaluate(evaluate(context), myNavigator);
+    }
+
+    public Number numberValueOf(Object context) throws JaxenException {
+        return NumberFunction.evaluate(evaluate(context), myNavigator);
+    }
+
+    public void addNamespace(String prefix, String uri) throws JaxenException {
+        final NamespaceContext context = getNamespaceContext();
+        if (context instanceof SimpleNamespaceContext) {
+            ((SimpleNamespaceContext)context).addNamespace(prefix, uri);
+            return;
+        }
+        throw new JaxenException("Operation not permitted while using a non-simple namespace context.");
+    }
+
+    public void setNamespaceContext(NamespaceContext namespaceContext) {
+        myNamespaceContext = namespaceContext;
+    }
+
+    public void setFunctionContext(FunctionContext functionContext) {
+        myFunctionContext = functionContext;
+    }
+
+    public void setVariableContext(VariableContext variableContext) {
+        myVariableContext = variableContext;
+    }
+
+    public NamespaceContext getNamespaceContext() {
+        if (myNamespaceContext == null) {
+            myNamespaceContext = new SimpleNamespaceContext();
+        }
+        return myNamespaceContext;
+    }
+
+    public FunctionContext getFunctionContext() {
+        if (myFunctionContext == null) {
+            myFunctionContext = XPathFunctionContext.getInstance();
+        }
+        return myFunctionContext;
+    }
+
+    public VariableContext getVariableContext() {
+        if (myVariableContext == null) {
+            myVariableContext = new SimpleVariableContext();
+        }
+        return myVariableContext;
+    }
+
+    public Navigator getNavigator() {
+        return myNavigator;
+    }
+
+    public String toString() {
+        return myText;
+    }
+}
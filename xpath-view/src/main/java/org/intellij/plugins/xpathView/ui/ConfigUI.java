@@ -30,6 +30,8 @@ public class ConfigUI extends JPanel {
     private JCheckBox addErrorStripe;
     private JCheckBox showInToolbar;
     private JCheckBox showInMainMenu;
+    private JSpinner viewportThreshold;
+    private JCheckBox xpath2;
 
     public ConfigUI(Config configuration) {
         init();
@@ -59,6 +61,18 @@ public class ConfigUI extends JPanel {
         showInMainMenu.setMnemonic('M');
         showInMainMenu.setToolTipText("Uncheck to remove XPath-related actions from the Main-Menubar");
 
+        xpath2 = new JCheckBox("Evaluate expressions as XPath 2.0");
+        xpath2.setMnemonic('2');
+        xpath2.setToolTipText("Applies to Evaluate XPath and Find by XPath. Variables and keys remain XPath 1.0 expressions.");
+
+        viewportThreshold = new JSpinner(new SpinnerNumberModel(5000, 0, Integer.MAX_VALUE, 1000));
+        final JLabel viewportLabel = new JLabel("Highlight only the visible area for more results than: ");
+        viewportLabel.setDisplayedMnemonic('V');
+        viewportLabel.setLabelFor(viewportThreshold);
+        final JPanel viewportPanel = new JPanel(new BorderLayout());
+        viewportPanel.add(viewportLabel, BorderLayout.WEST);
+        viewportPanel.add(viewportThreshold, BorderLayout.CENTER);
+
         JPanel settings = new JPanel(new BorderLayout());
         settings.setBorder(IdeBorderFactory.createTitledBorder("Settings", true));
         c.add(c = new JPanel(new BorderLayout()), BorderLayout.NORTH);
@@ -72,6 +86,10 @@ public class ConfigUI extends JPanel {
         settings.add(settings = new JPanel(new BorderLayout()), BorderLayout.SOUTH);
         settings.add(addErrorStripe, BorderLayout.NORTH);
         settings.add(settings = new JPanel(new BorderLayout()), BorderLayout.SOUTH);
+        settings.add(viewportPanel, BorderLayout.NORTH);
+        settings.add(settings = new JPanel(new BorderLayout()), BorderLayout.SOUTH);
+        settings.add(xpath2, BorderLayout.NORTH);
+        settings.add(settings = new JPanel(new BorderLayout()), BorderLayout.SOUTH);
         settings.add(showInToolbar, BorderLayout.NORTH);
         settings.add(settings = new JPanel(new BorderLayout()), BorderLayout.SOUTH);
         settings.add(showInMainMenu, BorderLayout.NORTH);
@@ -85,6 +103,8 @@ public class ConfigUI extends JPanel {
         config.setUseContextAtCursor(useContextAtCursor.isSelected());
         config.setScrollToFirst(scrollToFirst.isSelected());
         config.setAddErrorStripe(addErrorStripe.isSelected());
+        config.setHighlightViewportThreshold((Integer)viewportThreshold.getValue());
+        config.setXPath2(xpath2.isSelected());
         config.SHOW_IN_TOOLBAR = showInToolbar.isSelected();
         config.SHOW_IN_MAIN_MENU = showInMainMenu.isSelected();
         return config;
@@ -95,6 +115,8 @@ public class ConfigUI extends JPanel {
         highlightStartTagOnly.setSelected(configuration.isHighlightStartTagOnly());
         useContextAtCursor.setSelected(configuration.isUseContextAtCursor());
         addErrorStripe.setSelected(configuration.isAddErrorStripe());
+        viewportThreshold.setValue(configuration.getHighlightViewportThreshold());
+        xpath2.setSelected(configuration.isXPath2());
         showInToolbar.setSelected(configuration.SHOW_IN_TOOLBAR);
         showInMainMenu.setSelected(configuration.SHOW_IN_MAIN_MENU);
     }
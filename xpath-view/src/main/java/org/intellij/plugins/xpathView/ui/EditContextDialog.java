@@ -33,9 +33,14 @@ import consulo.xml.language.psi.XmlElement;
 import org.intellij.lang.xpath.XPathFileType;
 import org.intellij.lang.xpath.context.*;
 import org.intellij.lang.xpath.psi.XPathElement;
+import org.intellij.plugins.xpathView.support.XPathSupport;
+import org.intellij.plugins.xpathView.util.KeyDefinition;
 import org.intellij.plugins.xpathView.util.MyPsiUtil;
 import org.intellij.plugins.xpathView.util.Namespace;
 import org.intellij.plugins.xpathView.util.Variable;
+import org.jaxen.JaxenException;
+import org.jaxen.pattern.PatternParser;
+import org.jaxen.saxpath.SAXPathException;
 
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
@@ -58,6 +63,9 @@ public class EditContextDialog extends DialogWrapper {
 
   private final JTable myNamespaceTable;
   private final NamespaceTableModel myNamespaceTableModel;
+
+  private final JTable myKeyTable;
+  private final KeyTableModel myKeyTableModel;
   private final ContextProvider myContextProvider;
   private JBSplitter mySplitter;
 
@@ -65,6 +73,7 @@ public class EditContextDialog extends DialogWrapper {
                            Set<String> unresolvedPrefixes,
                            Collection<Namespace> namespaces,
                            Collection<Variable> variables,
+                           Collection<KeyDefinition> keys,
                            ContextProvider contextProvider) {
     super(project, false);
     myUnresolvedPrefixes = unresolvedPrefixes;
@@ -96,6 +105,16 @@ public class EditContextDialog extends DialogWrapper {
     myNamespaceTable.getColumnModel().getColumn(0).setMaxWidth(width * 4);
     myNamespaceTable.setPreferredScrollableViewportSize(new Dimension(200, 150));
 
+    final List<KeyDefinition> k = copy(keys);
+    myKeyTableModel = new KeyTableModel(k);
+    myKeyTable = new JBTable(myKeyTableModel);
+    myKeyTable.setDefaultRenderer(String.class, new KeyCellRenderer(k));
+
+    width = new JLabel("Name").getPreferredSize().width;
+    myKeyTable.getColumnModel().getColumn(0).setMinWidth(width);
+    myKeyTable.getColumnModel().getColumn(0).setMaxWidth(width * 5);
+    myKeyTable.setPreferredScrollableViewportSize(new Dimension(200, 100));
+
     init();
   }
 
@@ -147,10 +166,30 @@ public class EditContextDialog extends DialogWrapper {
                                      .createPanel();
     UIUtil.addBorder(n, IdeBorderFactory.createTitledBorder("Namespaces", false));
 
+    final JPanel k = ToolbarDecorator.createDecorator(myKeyTable).setAddAction(new AnActionButtonRunnable() {
+      @Override
+      public void run(AnActionButton button) {
+        stopKeyEditing();
+        myKeyTableModel.addKey();
+        myKeyTable.editCellAt(myKeyTableModel.getRowCount() - 1, 0);
+      }
+    }).setRemoveAction(new AnActionButtonRunnable() {
+      @Override
+      public void run(AnActionButton button) {
+        myKeyTableModel.removeKey(myKeyTable.getSelectedRow());
+      }
+    }).disableUpDownActions().createPanel();
+    UIUtil.addBorder(k, IdeBorderFactory.createTitledBorder("Keys", false));
+
+    final JBSplitter splitter = new JBSplitter(true, getDimensionServiceKey() + ".KEYS", 600 / 1000f);
+    splitter.setHonorComponentsMinimumSize(true);
+    splitter.setFirstComponent(p);
+    splitter.setSecondComponent(k);
+
     mySplitter = new JBSplitter(true, getDimensionServiceKey(), 400 / 1000f);
     mySplitter.setHonorComponentsMinimumSize(true);
     mySplitter.setFirstComponent(n);
-    mySplitter.setSecondComponent(p);
+    mySplitter.setSecondComponent(splitter);
 
     return mySplitter;
   }
@@ -166,9 +205,22 @@ public class EditContextDialog extends DialogWrapper {
     return Pair.create(myNamespaceTableModel.getNamespaces(), myVariableTableModel.getVariables());
   }
 
+  public Collection<KeyDefinition> getKeys() {
+    assert isOK();
+
+    final List<KeyDefinition> keys = new ArrayList<KeyDefinition>();
+    for (KeyDefinition key : myKeyTableModel.getKeys()) {
+      if (key.getName().trim().length() > 0) {
+        keys.add(key);
+      }
+    }
+    return keys;
+  }
+
   protected void doOKAction() {
     stopVarEditing();
     stopNamespaceEditing();
+    stopKeyEditing();
 
     final List<Expression> expressions = myVariableTableModel.getExpressions();
     for (int i = 0; i < expressions.size(); i++) {
@@ -188,9 +240,40 @@ public class EditContextDialog extends DialogWrapper {
         return;
       }
     }
+
+    final List<KeyDefinition> keys = myKeyTableModel.getKeys();
+    for (int i = 0; i < keys.size(); i++) {
+      final KeyDefinition key = keys.get(i);
+      if (key.getName().trim().length() == 0) {
+        continue;
+      }
+      final String error = getError(key);
+      if (error != null) {
+        Messages.showErrorDialog(myKeyTable, "Error in Key '" + key.getName() + "': " + error, "XPath Error");
+        myKeyTable.getSelectionModel().setSelectionInterval(i, i);
+        return;
+      }
+    }
     super.doOKAction();
   }
 
+  @Nullable
+  private static String getError(KeyDefinition key) {
+    try {
+      PatternParser.parse(key.getMatch());
+    }
+    catch (SAXPathException e) {
+      return "Invalid match pattern: " + e.getMessage();
+    }
+    try {
+      XPathSupport.getInstance().createXPath(null, key.getUse(), Collections.<Namespace>emptyList());
+    }
+    catch (JaxenException e) {
+      return "Invalid use expression: " + e.getMessage();
+    }
+    return null;
+  }
+
   private String getError(final Expression expression) {
     return MyPsiUtil.checkFile(expression.getFile());
   }
@@ -209,6 +292,13 @@ public class EditContextDialog extends DialogWrapper {
     }
   }
 
+  private void stopKeyEditing() {
+    final TableCellEditor cellEditor = myKeyTable.getCellEditor();
+    if (cellEditor != null) {
+      cellEditor.stopCellEditing();
+    }
+  }
+
   private class VariableTableModel extends AbstractTableModel {
     private final Project myProject;
     private final LanguageFileType myFileType;
@@ -409,6 +499,97 @@ public class EditContextDialog extends DialogWrapper {
     }
   }
 
+  private static class KeyTableModel extends AbstractTableModel {
+    private final List<KeyDefinition> myKeys;
+
+    public KeyTableModel(List<KeyDefinition> keys) {
+      this.myKeys = keys;
+    }
+
+    public List<KeyDefinition> getKeys() {
+      return myKeys;
+    }
+
+    public Class<?> getColumnClass(int columnIndex) {
+      return String.class;
+    }
+
+    public boolean isCellEditable(int rowIndex, int columnIndex) {
+      return true;
+    }
+
+    public String getColumnName(int column) {
+      return column == 0 ? "Name" : column == 1 ? "Match" : "Use";
+    }
+
+    public int getRowCount() {
+      return myKeys.size();
+    }
+
+    public int getColumnCount() {
+      return 3;
+    }
+
+    public Object getValueAt(int rowIndex, int columnIndex) {
+      final KeyDefinition key = myKeys.get(rowIndex);
+      return columnIndex == 0 ? key.getName() : columnIndex == 1 ? key.getMatch() : key.getUse();
+    }
+
+    public void setValueAt(Object aValue, int rowIndex, int columnIndex) {
+      if (rowIndex >= myKeys.size()) {
+        return;
+      }
+      final KeyDefinition key = myKeys.get(rowIndex);
+      if (columnIndex == 0) {
+        key.setName((String)aValue);
+      }
+      else if (columnIndex == 1) {
+        key.setMatch((String)aValue);
+      }
+      else {
+        key.setUse((String)aValue);
+      }
+      fireTableDataChanged();
+    }
+
+    public void addKey() {
+      final int firstRow = myKeys.size();
+      myKeys.add(new KeyDefinition());
+      fireTableRowsInserted(firstRow, firstRow);
+    }
+
+    public void removeKey(int selectedRow) {
+      myKeys.remove(selectedRow);
+      fireTableRowsDeleted(selectedRow, selectedRow);
+    }
+  }
+
+  private static class KeyCellRenderer extends DefaultTableCellRenderer {
+    private final List<KeyDefinition> myKeys;
+
+    public KeyCellRenderer(List<KeyDefinition> keys) {
+      this.myKeys = keys;
+    }
+
+    public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
+      super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+      setForeground(table.getForeground());
+      setToolTipText(null);
+
+      // keys with the same name are merged, like in XSLT
+      if (column == 0) {
+        for (int i = 0; i < myKeys.size(); i++) {
+          if (i != row && myKeys.get(i).getName().equals(value)) {
+            setForeground(JBColor.BLUE);
+            setToolTipText("Nodes of all keys with this name are combined");
+            break;
+          }
+        }
+      }
+      return this;
+    }
+  }
+
   private class MyNamespaceContext implements NamespaceContext {
     @Nullable
     public String getNamespaceURI(String prefix, XmlElement context) {
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2007 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.ui;
+
+import consulo.annotation.access.RequiredReadAction;
+import consulo.application.progress.EmptyProgressIndicator;
+import consulo.application.progress.ProgressIndicator;
+import consulo.codeEditor.Editor;
+import consulo.codeEditor.EditorFactory;
+import consulo.codeEditor.markup.RangeHighlighter;
+import consulo.disposer.Disposable;
+import consulo.document.Document;
+import consulo.document.util.TextRange;
+import consulo.ide.impl.idea.openapi.progress.util.ProgressIndicatorUtils;
+import consulo.language.editor.highlight.HighlightManager;
+import consulo.language.psi.PsiDocumentManager;
+import consulo.language.psi.PsiElement;
+import consulo.language.psi.PsiFile;
+import consulo.project.Project;
+import consulo.ui.ex.awt.util.Alarm;
+import consulo.util.lang.Pair;
+import consulo.util.lang.StringUtil;
+import consulo.xml.language.psi.XmlElement;
+import consulo.xml.language.psi.XmlFile;
+import org.intellij.lang.xpath.XPathHighlighter;
+import org.intellij.plugins.xpathView.Config;
+import org.intellij.plugins.xpathView.HistoryElement;
+import org.intellij.plugins.xpathView.support.XPathSupport;
+import org.intellij.plugins.xpathView.util.CachedVariableContext;
+import org.intellij.plugins.xpathView.util.HighlighterUtil;
+import org.jaxen.JaxenRuntimeException;
+import org.jaxen.XPath;
+import org.jaxen.saxpath.SAXPathException;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Evaluates the expression of an {@link InputExpressionDialog} in the background while it is being typed. Shows
+ * the number of matches in the dialog and highlights the first matches in the editors of the context document.
+ * <p>
+ * Every change cancels the evaluation that is currently running. An evaluation also yields to write actions and
+ * is abandoned when it exceeds {@link #EVALUATION_BUDGET}, so the preview never slows down editing.
+ */
+class ExpressionPreview implements Disposable {
+    private static final int DEBOUNCE_DELAY = 300;
+    private static final int EVALUATION_BUDGET = 2000;
+    private static final int MAX_HIGHLIGHTS = 100;
+
+    private final Project myProject;
+    private final XmlElement myContextNode;
+    private final Document myDocument;
+    private final JLabel myLabel;
+    private final Config myConfig;
+
+    private final Alarm myAlarm;
+    private final Alarm myBudgetAlarm;
+
+    private final List<Pair<Editor, RangeHighlighter>> myHighlighters = new ArrayList<>();
+
+    // guarded by this
+    private ProgressIndicator myIndicator;
+    private volatile boolean myDisposed;
+
+    // the compiled expression is reused as long as only the variables change
+    private HistoryElement myCachedInput;
+    private XPath myCachedXPath;
+
+    ExpressionPreview(Project project, XmlElement contextNode, JLabel label, Config config) {
+        myProject = project;
+        myContextNode = contextNode;
+        myDocument = PsiDocumentManager.getInstance(project).getDocument(contextNode.getContainingFile());
+        myLabel = label;
+        myConfig = config;
+        myAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, this);
+        myBudgetAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, this);
+    }
+
+    /**
+     * Schedules the evaluation of <code>input</code>, replacing any pending or running evaluation.
+     */
+    void update(HistoryElement input) {
+        cancel();
+        myAlarm.cancelAllRequests();
+
+        if (input.expression == null || input.expression.trim().isEmpty()) {
+            show(null);
+            return;
+        }
+        myAlarm.addRequest(() -> evaluate(input), DEBOUNCE_DELAY);
+    }
+
+    private synchronized void cancel() {
+        if (myIndicator != null) {
+            myIndicator.cancel();
+            myIndicator = null;
+        }
+    }
+
+    private void evaluate(HistoryElement input) {
+        final ProgressIndicator indicator = new EmptyProgressIndicator();
+        synchronized (this) {
+            if (myDisposed) {
+                return;
+            }
+            myIndicator = indicator;
+        }
+
+        final AtomicBoolean timedOut = new AtomicBoolean();
+        myBudgetAlarm.addRequest(() -> {
+            timedOut.set(true);
+            indicator.cancel();
+        }, EVALUATION_BUDGET);
+
+        final Result[] result = new Result[1];
+        final boolean completed = ProgressIndicatorUtils.runInReadActionWithWriteActionPriority(() -> result[0] = doEvaluate(input), indicator);
+        myBudgetAlarm.cancelAllRequests();
+
+        synchronized (this) {
+            if (myIndicator != indicator) {
+                // superseded by a newer change
+                return;
+            }
+            myIndicator = null;
+        }
+
+        if (completed) {
+            SwingUtilities.invokeLater(() -> show(result[0]));
+        } else if (timedOut.get()) {
+            SwingUtilities.invokeLater(() -> show(new Result("Evaluation takes too long for a preview", null)));
+        } else {
+            // interrupted by a write action: try again once it's finished
+            myAlarm.addRequest(() -> evaluate(input), DEBOUNCE_DELAY);
+        }
+    }
+
+    @RequiredReadAction
+    private Result doEvaluate(HistoryElement input) {
+        if (!myContextNode.isValid()) {
+            return null;
+        }
+        final PsiFile file = myContextNode.getContainingFile();
+        try {
+            final XPath xpath = getXPath((XmlFile)file, input);
+            xpath.setVariableContext(new CachedVariableContext(input.variables, input.keys, xpath, myContextNode));
+
+            final Object o = xpath.evaluate(myContextNode);
+            if (!(o instanceof List)) {
+                return new Result("= " + StringUtil.first(String.valueOf(o), 50, true), null);
+            }
+
+            final List<?> list = (List<?>)o;
+            final List<TextRange> ranges = new ArrayList<>(Math.min(list.size(), MAX_HIGHLIGHTS));
+            for (Object node : list) {
+                if (ranges.size() == MAX_HIGHLIGHTS) {
+                    break;
+                }
+                if (node instanceof PsiElement && ((PsiElement)node).getContainingFile() == file) {
+                    ranges.add(HighlighterUtil.getHighlightedElement((PsiElement)node, myConfig).getTextRange());
+                }
+            }
+            final int size = list.size();
+            return new Result(size == 1 ? "1 match" : size + " matches", ranges);
+        } catch (SAXPathException e) {
+            return errorResult(e);
+        } catch (JaxenRuntimeException e) {
+            // thrown by lazily evaluated paths, usually wrapping the actual error
+            return errorResult(e.getCause() != null ? e.getCause() : e);
+        }
+    }
+
+    private static Result errorResult(Throwable e) {
+        return new Result(StringUtil.first(StringUtil.notNullize(e.getMessage()), 80, true), null);
+    }
+
+    private XPath getXPath(XmlFile file, HistoryElement input) throws SAXPathException {
+        if (myCachedXPath == null || !input.expression.equals(myCachedInput.expression) || !input.namespaces.equals(myCachedInput.namespaces)) {
+            myCachedXPath = XPathSupport.getInstance().createXPath(file, input.expression, input.namespaces, myConfig.isXPath2());
+            myCachedInput = input;
+        }
+        return myCachedXPath;
+    }
+
+    private void show(Result result) {
+        if (myDisposed) {
+            return;
+        }
+        clearHighlighters();
+
+        myLabel.setText(result != null ? result.myText : "");
+        if (result == null || result.myRanges == null || myDocument == null) {
+            return;
+        }
+
+        final HighlightManager mgr = HighlightManager.getInstance(myProject);
+        for (Editor editor : EditorFactory.getInstance().getEditors(myDocument, myProject)) {
+            final List<RangeHighlighter> highlighters = new ArrayList<>(result.myRanges.size());
+            for (TextRange range : result.myRanges) {
+                if (range.getEndOffset() <= myDocument.getTextLength()) {
+                    mgr.addRangeHighlight(editor, range.getStartOffset(), range.getEndOffset(), XPathHighlighter.XPATH_EVAL_HIGHLIGHT, false, highlighters);
+                }
+            }
+            for (RangeHighlighter highlighter : highlighters) {
+                myHighlighters.add(Pair.create(editor, highlighter));
+            }
+        }
+    }
+
+    private void clearHighlighters() {
+        final HighlightManager mgr = HighlightManager.getInstance(myProject);
+        for (Pair<Editor, RangeHighlighter> pair : myHighlighters) {
+            if (!pair.first.isDisposed()) {
+                mgr.removeSegmentHighlighter(pair.first, pair.second);
+            }
+        }
+        myHighlighters.clear();
+    }
+
+    @Override
+    public void dispose() {
+        synchronized (this) {
+            myDisposed = true;
+        }
+        cancel();
+        clearHighlighters();
+    }
+
+    private static class Result {
+        final String myText;
+        final List<TextRange> myRanges;
+
+        Result(String text, List<TextRange> ranges) {
+            myText = text;
+            myRanges = ranges;
+        }
+    }
+}
@@ -18,6 +18,7 @@ package org.intellij.plugins.xpathView.ui;
 import com.intellij.uiDesigner.core.GridConstraints;
 import consulo.annotation.access.RequiredReadAction;
 import consulo.codeEditor.Editor;
+import consulo.disposer.Disposer;
 import consulo.document.Document;
 import consulo.document.event.DocumentAdapter;
 import consulo.document.event.DocumentEvent;
@@ -51,6 +52,7 @@ import org.intellij.plugins.xpathView.Config;
 import org.intellij.plugins.xpathView.HistoryElement;
 import org.intellij.plugins.xpathView.eval.EvalExpressionDialog;
 import org.intellij.plugins.xpathView.support.XPathSupport;
+import org.intellij.plugins.xpathView.util.KeyDefinition;
 import org.intellij.plugins.xpathView.util.Namespace;
 import org.intellij.plugins.xpathView.util.NamespaceCollector;
 import org.intellij.plugins.xpathView.util.Variable;
@@ -82,6 +84,8 @@ public abstract class InputExpressionDialog<FormType extends InputForm> extends
     private Set<Namespace> myNamespaceCache;
     private InteractiveContextProvider myContextProvider;
     private final PsiFile myXPathFile;
+    @Nullable
+    private ExpressionPreview myPreview;
 
     @RequiredUIAccess
     public InputExpressionDialog(final Project project, Config settings, HistoryElement[] _history, FormType form) {
@@ -96,10 +100,10 @@ public abstract class InputExpressionDialog<FormType extends InputForm> extends
 
         mySettings = settings;
 
-        myDocument = createXPathDocument(project, _history.length > 0 ? _history[_history.length - 1] : null);
+        myDocument = createXPathDocument(project, settings, _history.length > 0 ? _history[_history.length - 1] : null);
         myXPathFile = PsiDocumentManager.getInstance(myProject).getPsiFile(myDocument);
         myModel = new HistoryModel(_history, myDocument);
-        myEditor = new MultilineEditor(myDocument, project, XPathFileType.XPATH, myModel);
+        myEditor = new MultilineEditor(myDocument, project, getFileType(settings), myModel);
         myModel.addListDataListener(new ListDataListener() {
             final PsiDocumentManager docMgr = PsiDocumentManager.getInstance(project);
             final DaemonCodeAnalyzer analyzer = DaemonCodeAnalyzer.getInstance(project);
@@ -121,10 +125,11 @@ public abstract class InputExpressionDialog<FormType extends InputForm> extends
                         analyzer.restart(myXPathFile);
                     }
                 }
+                updatePreview();
             }
         });
 
-        myComboboxEditor = new EditorTextField(myDocument, project, XPathFileType.XPATH);
+        myComboboxEditor = new EditorTextField(myDocument, project, getFileType(settings));
         myComboBox.setRenderer(new ListCellRendererWrapper<HistoryElement>() {
             @Override
             public void customize(JList list, HistoryElement value, int index, boolean selected, boolean hasFocus) {
@@ -140,6 +145,7 @@ public abstract class InputExpressionDialog<FormType extends InputForm> extends
             @Override
             public void documentChanged(DocumentEvent e) {
                 updateOkAction();
+                updatePreview();
             }
         });
 
@@ -157,20 +163,23 @@ public abstract class InputExpressionDialog<FormType extends InputForm> extends
 
             Collection<Namespace> n;
             Collection<Variable> v;
+            Collection<KeyDefinition> k;
             if (selectedItem != null) {
                 n = selectedItem.namespaces;
                 v = selectedItem.variables;
+                k = selectedItem.keys;
             }
             else {
                 n = Collections.emptySet();
                 v = Collections.emptySet();
+                k = Collections.emptySet();
             }
 
             // FIXME
             Collection<Namespace> namespaces = myNamespaceCache != null ? merge(myNamespaceCache, n, false) : n;
 
             Set<String> unresolvedPrefixes = findUnresolvedPrefixes();
-            EditContextDialog dialog = new EditContextDialog(myProject, unresolvedPrefixes, namespaces, v, myContextProvider);
+            EditContextDialog dialog = new EditContextDialog(myProject, unresolvedPrefixes, namespaces, v, k, myContextProvider);
 
             dialog.show();
 
@@ -179,7 +188,7 @@ public abstract class InputExpressionDialog<FormType extends InputForm> extends
                 Collection<Namespace> newNamespaces = context.getFirst();
                 Collection<Variable> newVariables = context.getSecond();
 
-                updateContext(newNamespaces, newVariables);
+                updateContext(newNamespaces, newVariables, dialog.getKeys());
 
                 SwingUtilities.invokeLater(() -> {
                     Editor editor = getEditor();
@@ -197,13 +206,18 @@ public abstract class InputExpressionDialog<FormType extends InputForm> extends
 
     void updateContext(Collection<Namespace> namespaces, Collection<Variable> variables) {
         HistoryElement selectedItem = myModel.getSelectedItem();
+        updateContext(namespaces, variables, selectedItem != null ? selectedItem.keys : Collections.<KeyDefinition>emptySet());
+    }
+
+    void updateContext(Collection<Namespace> namespaces, Collection<Variable> variables, Collection<KeyDefinition> keys) {
+        HistoryElement selectedItem = myModel.getSelectedItem();
 
         HistoryElement newElement;
         if (selectedItem != null) {
-            newElement = selectedItem.changeContext(namespaces, variables);
+            newElement = selectedItem.changeContext(namespaces, variables, keys);
         }
         else {
-            newElement = new HistoryElement(myDocument.getText(), variables, namespaces);
+            newElement = new HistoryElement(myDocument.getText(), variables, namespaces, keys);
         }
         myModel.setSelectedItem(newElement);
 
@@ -253,6 +267,12 @@ public abstract class InputExpressionDialog<FormType extends InputForm> extends
         return myEditor.getField().getDocument().getTextLength() > 0;
     }
 
+    private void updatePreview() {
+        if (myPreview != null) {
+            myPreview.update(getContext().input);
+        }
+    }
+
     @Nullable
     protected Editor getEditor() {
         if (getMode() == Mode.ADVANCED) {
@@ -297,10 +317,15 @@ public abstract class InputExpressionDialog<FormType extends InputForm> extends
         myForm.getEditorPanel().add(myEditorComponent = editor, gridConstraints);
     }
 
-    protected static Document createXPathDocument(Project project, HistoryElement historyElement) {
+    private static XPathFileType getFileType(Config settings) {
+        return settings.isXPath2() ? XPathFileType.XPATH2 : XPathFileType.XPATH;
+    }
+
+    protected static Document createXPathDocument(Project project, Config settings, HistoryElement historyElement) {
         String expression = historyElement != null ? historyElement.expression : "";
+        XPathFileType fileType = getFileType(settings);
         PsiFile file = PsiFileFactory.getInstance(project)
-            .createFileFromText("DummyFile.xpath", XPathFileType.XPATH, expression, LocalTimeCounter.currentTime(), true);
+            .createFileFromText("DummyFile." + fileType.getDefaultExtension(), fileType, expression, LocalTimeCounter.currentTime(), true);
         Document document = PsiDocumentManager.getInstance(project).getDocument(file);
         // not sure why this is required...
         assert document != null;
@@ -325,6 +350,9 @@ public abstract class InputExpressionDialog<FormType extends InputForm> extends
         if (contextElement != null) {
             collectedInfo = NamespaceCollector.collectInfo((XmlFile) contextElement.getContainingFile());
             myNamespaceCache = collectedInfo.namespaces;
+
+            myPreview = new ExpressionPreview(myProject, contextElement, myForm.getPreviewLabel(), mySettings);
+            Disposer.register(getDisposable(), myPreview);
         }
         else {
             collectedInfo = NamespaceCollector.empty();
@@ -343,6 +371,7 @@ public abstract class InputExpressionDialog<FormType extends InputForm> extends
         }
 
         updateOkAction();
+        updatePreview();
     }
 
     protected static Collection<Namespace> merge(Collection<Namespace> namespaces, Collection<Namespace> cache, boolean merge) {
@@ -406,7 +435,7 @@ public abstract class InputExpressionDialog<FormType extends InputForm> extends
         Collection<Namespace> namespaces = myNamespaceCache != null
             ? merge(myNamespaceCache, context.namespaces, false)
             : context.namespaces;
-        return new Context(new HistoryElement(context.expression, context.variables, namespaces), getMode());
+        return new Context(new HistoryElement(context.expression, context.variables, namespaces, context.keys), getMode());
     }
 
     public static class Context {
@@ -28,4 +28,6 @@ public interface InputForm extends Disposable
     JButton getEditContextButton();
 
     JPanel getEditorPanel();
+
+    JLabel getPreviewLabel();
 }
@@ -24,6 +24,7 @@ public class InputFormPanel extends JPanel implements InputForm {
     private JLabel myIcon;
     private JButton myEditContextButton;
     private JPanel myEditorPanel;
+    private JLabel myPreviewLabel;
 
     private JButton mySaveTemplate;
     private JButton myOpenTemplate;
@@ -48,5 +49,9 @@ public class InputFormPanel extends JPanel implements InputForm {
         return myEditorPanel;
     }
 
+    public JLabel getPreviewLabel() {
+        return myPreviewLabel;
+    }
+
     public void dispose() {}
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2006 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.ui;
+
+import consulo.project.Project;
+import consulo.ui.ex.awt.DialogWrapper;
+import consulo.ui.ex.awt.ScrollPaneFactory;
+import consulo.ui.ex.awt.table.JBTable;
+import org.intellij.plugins.xpathView.support.XPathStatistics;
+
+import jakarta.annotation.Nonnull;
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shows the values collected by {@link XPathStatistics}. Latencies are in microseconds.
+ */
+public class StatisticsDialog extends DialogWrapper {
+  private final StatisticsTableModel myModel = new StatisticsTableModel();
+
+  public StatisticsDialog(Project project) {
+    super(project, false);
+    setTitle("XPath Statistics");
+    setModal(false);
+    setOKButtonText("Close");
+    init();
+  }
+
+  protected JComponent createCenterPanel() {
+    myModel.refresh();
+
+    final JBTable table = new JBTable(myModel);
+    final JPanel panel = new JPanel(new BorderLayout());
+    panel.add(ScrollPaneFactory.createScrollPane(table), BorderLayout.CENTER);
+    panel.setPreferredSize(new Dimension(700, 300));
+    return panel;
+  }
+
+  @Nonnull
+  protected Action[] createLeftSideActions() {
+    return new Action[]{
+      new AbstractAction("&Refresh") {
+        public void actionPerformed(ActionEvent e) {
+          myModel.refresh();
+        }
+      },
+      new AbstractAction("R&eset") {
+        public void actionPerformed(ActionEvent e) {
+          XPathStatistics.getInstance().reset();
+          myModel.refresh();
+        }
+      }
+    };
+  }
+
+  @Nonnull
+  protected Action[] createActions() {
+    return new Action[]{getOKAction()};
+  }
+
+  private static class StatisticsTableModel extends AbstractTableModel {
+    private static final String[] COLUMNS = {"Name", "Count", "Mean", "50%", "90%", "99%", "Max"};
+
+    private List<XPathStatistics.Row> myRows = Collections.emptyList();
+
+    void refresh() {
+      myRows = XPathStatistics.getInstance().getRows();
+      fireTableDataChanged();
+    }
+
+    public int getRowCount() {
+      return myRows.size();
+    }
+
+    public int getColumnCount() {
+      return COLUMNS.length;
+    }
+
+    public String getColumnName(int column) {
+      return COLUMNS[column];
+    }
+
+    public Object getValueAt(int rowIndex, int columnIndex) {
+      final XPathStatistics.Row row = myRows.get(rowIndex);
+      if (columnIndex == 0) return row.name;
+      if (columnIndex == 1) return row.count;
+      if (row.isCounter()) return "";
+      switch (columnIndex) {
+        case 2:
+          return String.format("%.1f", row.mean);
+        case 3:
+          return row.p50;
+        case 4:
+          return row.p90;
+        case 5:
+          return row.p99;
+        default:
+          return row.max;
+      }
+    }
+  }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.util;
+
+import consulo.application.ApplicationManager;
+import consulo.codeEditor.Editor;
+import consulo.codeEditor.event.VisibleAreaEvent;
+import consulo.codeEditor.event.VisibleAreaListener;
+import consulo.codeEditor.markup.RangeHighlighter;
+import consulo.colorScheme.TextAttributesKey;
+import consulo.disposer.Disposable;
+import consulo.disposer.Disposer;
+import consulo.document.Document;
+import consulo.document.event.DocumentEvent;
+import consulo.document.event.DocumentListener;
+import consulo.document.util.TextRange;
+import consulo.language.psi.PsiElement;
+import org.intellij.plugins.xpathView.Config;
+
+import jakarta.annotation.Nonnull;
+import java.awt.*;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Highlights a (possibly huge) list of results in an editor.
+ * <p>
+ * The ranges are computed and sorted up front, and results with identical ranges share one highlighter. Nested and
+ * overlapping ranges are kept apart, so that each of them can be navigated to and shows its own tooltip.
+ * Up to {@link Config#getHighlightViewportThreshold()} ranges, the highlighters are added in batches, each batch in
+ * its own event, so that the editor stays responsive while they are created; pending batches are dropped when the
+ * document changes. Above the threshold, only the ranges in and around the visible area are highlighted and the
+ * highlighters follow scrolling.
+ */
+public class BulkHighlighter implements VisibleAreaListener, Disposable {
+    private static final int BATCH_SIZE = 500;
+    private static final int VIEWPORT_MARGIN_LINES = 50;
+
+    private final Editor myEditor;
+    private final TextAttributesKey myAttributes;
+    private final Config myConfig;
+
+    // distinct ranges sorted by start offset and the element that provides the tooltip for each
+    private final int[] myStarts;
+    private final int[] myEnds;
+    private final PsiElement[] myElements;
+    // the largest end offset of the ranges up to each index, ascending even if ranges are nested
+    private final int[] myMaxEnds;
+
+    private final boolean myVirtual;
+    private final Map<Integer, RangeHighlighter> myShown = new HashMap<Integer, RangeHighlighter>();
+    private int myNext;
+    private boolean myDisposed;
+
+    private BulkHighlighter(Editor editor, TextAttributesKey attributes, Config config, int[] starts, int[] ends, PsiElement[] elements) {
+        myEditor = editor;
+        myAttributes = attributes;
+        myConfig = config;
+        myStarts = starts;
+        myEnds = ends;
+        myElements = elements;
+        myMaxEnds = new int[ends.length];
+        for (int i = 0; i < ends.length; i++) {
+            myMaxEnds[i] = i > 0 ? Math.max(myMaxEnds[i - 1], ends[i]) : ends[i];
+        }
+        myVirtual = starts.length > config.getHighlightViewportThreshold();
+    }
+
+    /**
+     * Highlights the given elements, which must all belong to the editor's file.
+     *
+     * @return the lowest highlighted offset, or <code>Integer.MAX_VALUE</code> if nothing has been highlighted
+     */
+    public static int highlight(@Nonnull Editor editor, @Nonnull List<PsiElement> elements, TextAttributesKey attributes, Config config) {
+        final int n = elements.size();
+        if (n == 0) {
+            return Integer.MAX_VALUE;
+        }
+
+        // sort by start offset: pack (start, index) into a long to get away with a primitive sort
+        final PsiElement[] highlighted = new PsiElement[n];
+        final int[] ends = new int[n];
+        final long[] order = new long[n];
+        for (int i = 0; i < n; i++) {
+            highlighted[i] = HighlighterUtil.getHighlightedElement(elements.get(i), config);
+            final TextRange range = highlighted[i].getTextRange();
+            ends[i] = range.getEndOffset();
+            order[i] = ((long)range.getStartOffset() << 32) | i;
+        }
+        Arrays.sort(order);
+
+        // drop duplicate ranges, e.g. of several results that highlight the same start tag
+        final int[] mergedStarts = new int[n];
+        final int[] mergedEnds = new int[n];
+        final PsiElement[] mergedElements = new PsiElement[n];
+        int count = 0;
+        for (long packed : order) {
+            final int start = (int)(packed >>> 32);
+            final int index = (int)packed;
+            if (!containsRange(mergedStarts, mergedEnds, count, start, ends[index])) {
+                mergedStarts[count] = start;
+                mergedEnds[count] = ends[index];
+                mergedElements[count] = highlighted[index];
+                count++;
+            }
+        }
+
+        final BulkHighlighter highlighter = new BulkHighlighter(editor, attributes, config,
+            Arrays.copyOf(mergedStarts, count), Arrays.copyOf(mergedEnds, count), Arrays.copyOf(mergedElements, count));
+        HighlighterUtil.setBulkHighlighter(editor, highlighter);
+        highlighter.start();
+
+        return mergedStarts[0];
+    }
+
+    private static boolean containsRange(int[] starts, int[] ends, int count, int start, int end) {
+        for (int i = count - 1; i >= 0 && starts[i] == start; i--) {
+            if (ends[i] == end) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void start() {
+        myEditor.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void documentChanged(DocumentEvent event) {
+                // the offsets are stale now: keep what is shown, but stop adding batches or following the viewport
+                Disposer.dispose(BulkHighlighter.this);
+            }
+        }, this);
+        if (myVirtual) {
+            myEditor.getScrollingModel().addVisibleAreaListener(this);
+            updateVisibleArea();
+        } else {
+            addBatch();
+        }
+    }
+
+    boolean isVirtual() {
+        return myVirtual && !myDisposed;
+    }
+
+    int[] getStartOffsets() {
+        return myStarts;
+    }
+
+    private void addBatch() {
+        if (myDisposed || myEditor.isDisposed()) {
+            return;
+        }
+        final int end = Math.min(myNext + BATCH_SIZE, myStarts.length);
+        for (int i = myNext; i < end; i++) {
+            HighlighterUtil.addHighlighter(myEditor, createHighlighter(i));
+        }
+        myNext = end;
+        if (myNext < myStarts.length) {
+            ApplicationManager.getApplication().invokeLater(this::addBatch);
+        } else {
+            Disposer.dispose(this);
+        }
+    }
+
+    private RangeHighlighter createHighlighter(int i) {
+        return HighlighterUtil.highlightRange(myEditor, myStarts[i], myEnds[i], myElements[i], myAttributes, myConfig);
+    }
+
+    @Override
+    public void visibleAreaChanged(VisibleAreaEvent e) {
+        updateVisibleArea();
+    }
+
+    private void updateVisibleArea() {
+        if (myDisposed || myEditor.isDisposed()) {
+            return;
+        }
+        final Document document = myEditor.getDocument();
+        final Rectangle area = myEditor.getScrollingModel().getVisibleArea();
+        final int firstLine = Math.max(0, myEditor.xyToLogicalPosition(area.getLocation()).line - VIEWPORT_MARGIN_LINES);
+        final int lastLine = myEditor.xyToLogicalPosition(new Point(area.x, area.y + area.height)).line + VIEWPORT_MARGIN_LINES;
+
+        final int lineCount = document.getLineCount();
+        final int startOffset = firstLine < lineCount ? document.getLineStartOffset(firstLine) : document.getTextLength();
+        final int endOffset = lastLine < lineCount ? document.getLineEndOffset(lastLine) : document.getTextLength();
+
+        // starts and maximum ends are ascending; a range in between may still end before the area if it is nested
+        final int from = HighlighterUtil.lowerBound(myMaxEnds, startOffset);
+        final int to = HighlighterUtil.lowerBound(myStarts, endOffset + 1);
+
+        for (Iterator<Map.Entry<Integer, RangeHighlighter>> it = myShown.entrySet().iterator(); it.hasNext(); ) {
+            final Map.Entry<Integer, RangeHighlighter> entry = it.next();
+            if (entry.getKey() < from || entry.getKey() >= to || myEnds[entry.getKey()] < startOffset) {
+                HighlighterUtil.removeHighlighter(myEditor, entry.getValue());
+                it.remove();
+            }
+        }
+        for (int i = from; i < to; i++) {
+            if (myEnds[i] >= startOffset && !myShown.containsKey(i)) {
+                final RangeHighlighter highlighter = createHighlighter(i);
+                myShown.put(i, highlighter);
+                HighlighterUtil.addHighlighter(myEditor, highlighter);
+            }
+        }
+    }
+
+    @Override
+    public void dispose() {
+        if (myDisposed) {
+            return;
+        }
+        myDisposed = true;
+        if (myVirtual) {
+            myEditor.getScrollingModel().removeVisibleAreaListener(this);
+        }
+    }
+}
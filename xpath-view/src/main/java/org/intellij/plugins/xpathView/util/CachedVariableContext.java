@@ -22,38 +22,248 @@
  */
 package org.intellij.plugins.xpathView.util;
 
+import consulo.language.psi.PsiFile;
+import consulo.util.dataholder.Key;
 import consulo.xml.language.psi.XmlElement;
+import org.intellij.plugins.xpathView.support.XPathStatistics;
+import org.jaxen.BaseXPath;
+import org.jaxen.JaxenException;
 import org.jaxen.UnresolvableException;
 import org.jaxen.VariableContext;
 import org.jaxen.XPath;
+import org.jaxen.expr.*;
 import org.jaxen.saxpath.SAXPathException;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 
+/**
+ * Variable context for user-defined variables. The expressions are parsed up front, so syntax errors are reported
+ * when the context is created, but a variable is only evaluated when it is looked up for the first time. Variables
+ * may refer to other variables.
+ * <p>
+ * Values of variables that don't depend on the context node (literals, absolute paths) are shared by all contexts
+ * of the same document until the document changes; the values of the 64 most recently used expressions are
+ * kept per document.
+ * <p>
+ * The context also carries the key definitions used by the <code>key()</code> extension function.
+ */
 public class CachedVariableContext implements VariableContext {
+    private static final Key<DocumentValues> DOCUMENT_VALUES_KEY = Key.create("XPATH_DOCUMENT_VARIABLES");
+
+    // core functions whose value only depends on their arguments; evaluate(), key(), document(), id(), lang() and
+    // extension functions may depend on the context or on state outside the expression
+    private static final Set<String> PURE_FUNCTIONS = new HashSet<String>(Arrays.asList(
+        "string", "concat", "starts-with", "contains", "substring-before", "substring-after", "substring", "string-length",
+        "normalize-space", "translate", "boolean", "not", "true", "false", "number", "sum", "floor", "ceiling", "round",
+        "count", "name", "local-name", "namespace-uri"
+    ));
+    // functions that may be used in the predicates of an absolute path, where they refer to the step's node
+    private static final Set<String> PREDICATE_FUNCTIONS = new HashSet<String>(Arrays.asList("position", "last", "lang"));
+
+    private static final int MAX_DOCUMENT_VALUES = 64;
+
+    private final XmlElement myContextNode;
+    private final Map<String, XPath> myExpressions = new HashMap<String, XPath>();
     private final Map<String, Object> myMap = new HashMap<String, Object>();
+    private final Set<String> myEvaluating = new HashSet<String>();
+    private final Collection<KeyDefinition> myKeys;
 
     public CachedVariableContext(Collection<Variable> variables, XPath xpath, XmlElement contextNode) throws SAXPathException {
-       for (Variable variable : variables) {
-           if (variable.getName().length() == 0) {
-               continue;
-           } 
-           final String expression = variable.getExpression();
-           // empty expression evaluates to empty nodeset
-           final XPath xPath = xpath.getNavigator().parseXPath(expression.length() == 0 ? "/.." : expression);
-           myMap.put(variable.getName(), xPath.evaluate(contextNode));
-       }
-   }
-
-   public Object getVariableValue(String nsURI, String prefix, String localName) throws UnresolvableException {
-       final Object o = myMap.get(localName);
-       if (o == null) throw new UnresolvableException("Unresolved variable: " + makePrefix(nsURI) + localName);
-       return o;
-   }
-
-   private static String makePrefix(String uri) {
-       return uri != null ? "{" + uri + "}:" : "";
-   }
-}
\ No newline at end of file
+        this(variables, Collections.<KeyDefinition>emptySet(), xpath, contextNode);
+    }
+
+    public CachedVariableContext(Collection<Variable> variables, Collection<KeyDefinition> keys, XPath xpath, XmlElement contextNode) throws SAXPathException {
+        myContextNode = contextNode;
+        myKeys = keys;
+        for (Variable variable : variables) {
+            if (variable.getName().length() == 0) {
+                continue;
+            }
+            final String expression = variable.getExpression();
+            // empty expression evaluates to empty nodeset
+            final XPath xPath = xpath.getNavigator().parseXPath(expression.length() == 0 ? "/.." : expression);
+            // variables are resolved with the same namespaces as the expression that refers to them
+            xPath.setNamespaceContext(xpath.getNamespaceContext());
+            xPath.setVariableContext(this);
+            myExpressions.put(variable.getName(), xPath);
+        }
+    }
+
+    public Object getVariableValue(String nsURI, String prefix, String localName) throws UnresolvableException {
+        Object o = myMap.get(localName);
+        if (o == null) {
+            final XPath xPath = myExpressions.get(localName);
+            if (xPath == null) throw new UnresolvableException("Unresolved variable: " + makePrefix(nsURI) + localName);
+
+            if (!myEvaluating.add(localName)) {
+                throw new UnresolvableException("Circular reference to variable: " + makePrefix(nsURI) + localName);
+            }
+            try {
+                o = evaluate(xPath);
+            } catch (UnresolvableException e) {
+                throw e;
+            } catch (JaxenException e) {
+                throw new UnresolvableException("Cannot evaluate variable " + makePrefix(nsURI) + localName + ": " + e.getMessage());
+            } finally {
+                myEvaluating.remove(localName);
+            }
+            myMap.put(localName, o);
+        }
+        return o;
+    }
+
+    /**
+     * Returns the definitions of the key <code>name</code> for the <code>key()</code> function. Like in XSLT, there
+     * may be several definitions with the same name.
+     */
+    public List<KeyDefinition> getKeyDefinitions(String name) {
+        final List<KeyDefinition> keys = new ArrayList<KeyDefinition>(1);
+        for (KeyDefinition key : myKeys) {
+            if (key.getName().equals(name)) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private Object evaluate(XPath xPath) throws JaxenException {
+        final PsiFile file = myContextNode.getContainingFile();
+        if (file == null || !isContextIndependent(xPath)) {
+            return xPath.evaluate(myContextNode);
+        }
+        final String expression = getCacheKey(xPath);
+
+        final DocumentValues values = getDocumentValues(file);
+        final XPathStatistics.CacheStatistics statistics = XPathStatistics.getInstance().cache("variables");
+        Object o = values.myValues.get(expression);
+        if (o == null) {
+            statistics.miss();
+            o = xPath.evaluate(myContextNode);
+            values.myValues.put(expression, o);
+        } else {
+            statistics.hit();
+        }
+        return o;
+    }
+
+    /**
+     * Returns the expression together with the namespace URIs of the prefixes it uses, so that expressions of
+     * different contexts only share a value if they mean the same.
+     */
+    private static String getCacheKey(XPath xPath) {
+        final StringBuilder key = new StringBuilder(xPath.toString());
+        for (String prefix : ExpressionReferences.of(((BaseXPath)xPath).getRootExpr()).getPrefixes()) {
+            key.append('\n').append(prefix).append('=').append(xPath.getNamespaceContext().translateNamespacePrefixToUri(prefix));
+        }
+        return key.toString();
+    }
+
+    private static DocumentValues getDocumentValues(PsiFile file) {
+        final long stamp = file.getModificationStamp();
+        DocumentValues values = file.getUserData(DOCUMENT_VALUES_KEY);
+        if (values == null || values.myStamp != stamp) {
+            values = new DocumentValues(stamp);
+            file.putUserData(DOCUMENT_VALUES_KEY, values);
+        }
+        return values;
+    }
+
+    /**
+     * Conservatively checks whether the value of an expression is the same for every context node of a document.
+     */
+    static boolean isContextIndependent(XPath xPath) {
+        if (!(xPath instanceof BaseXPath) || xPath.toString().indexOf('$') != -1) {
+            return false;
+        }
+        return isContextIndependent(((BaseXPath)xPath).getRootExpr());
+    }
+
+    private static boolean isContextIndependent(Expr expr) {
+        if (expr instanceof LiteralExpr || expr instanceof NumberExpr) {
+            return true;
+        } else if (expr instanceof LocationPath) {
+            return ((LocationPath)expr).isAbsolute() && hasPurePredicates((LocationPath)expr);
+        } else if (expr instanceof BinaryExpr) {
+            return isContextIndependent(((BinaryExpr)expr).getLHS()) && isContextIndependent(((BinaryExpr)expr).getRHS());
+        } else if (expr instanceof UnaryExpr) {
+            return isContextIndependent(((UnaryExpr)expr).getExpr());
+        } else if (expr instanceof FunctionCallExpr) {
+            final FunctionCallExpr call = (FunctionCallExpr)expr;
+            final String prefix = call.getPrefix();
+            if ((prefix != null && prefix.length() > 0) || !PURE_FUNCTIONS.contains(call.getFunctionName())) {
+                return false;
+            }
+            // without arguments, these functions work on the context node (name(), string(), ...)
+            final List<?> parameters = call.getParameters();
+            if (parameters.isEmpty()) {
+                return "true".equals(call.getFunctionName()) || "false".equals(call.getFunctionName());
+            }
+            for (Object parameter : parameters) {
+                if (!isContextIndependent((Expr)parameter)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks that the predicates of a path only depend on the nodes they filter, i.e. that they don't call functions
+     * like <code>document()</code>, <code>key()</code> or extension functions.
+     */
+    private static boolean hasPurePredicates(LocationPath path) {
+        for (Object step : path.getSteps()) {
+            for (Object predicate : ((Step)step).getPredicates()) {
+                if (!isPure(((Predicate)predicate).getExpr())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPure(Expr expr) {
+        if (expr instanceof LiteralExpr || expr instanceof NumberExpr) {
+            return true;
+        } else if (expr instanceof LocationPath) {
+            return hasPurePredicates((LocationPath)expr);
+        } else if (expr instanceof BinaryExpr) {
+            return isPure(((BinaryExpr)expr).getLHS()) && isPure(((BinaryExpr)expr).getRHS());
+        } else if (expr instanceof UnaryExpr) {
+            return isPure(((UnaryExpr)expr).getExpr());
+        } else if (expr instanceof FunctionCallExpr) {
+            final FunctionCallExpr call = (FunctionCallExpr)expr;
+            final String prefix = call.getPrefix();
+            final String name = call.getFunctionName();
+            if ((prefix != null && prefix.length() > 0) || !(PURE_FUNCTIONS.contains(name) || PREDICATE_FUNCTIONS.contains(name))) {
+                return false;
+            }
+            for (Object parameter : call.getParameters()) {
+                if (!isPure((Expr)parameter)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static String makePrefix(String uri) {
+        return uri != null ? "{" + uri + "}:" : "";
+    }
+
+    private static final class DocumentValues {
+        final long myStamp;
+        final Map<String, Object> myValues = Collections.synchronizedMap(new LinkedHashMap<String, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                return size() > MAX_DOCUMENT_VALUES;
+            }
+        });
+
+        DocumentValues(long stamp) {
+            myStamp = stamp;
+        }
+    }
+}
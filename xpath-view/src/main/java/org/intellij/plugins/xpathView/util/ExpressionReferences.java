@@ -0,0 +1,136 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.util;
+
+import org.jaxen.expr.*;
+
+import jakarta.annotation.Nonnull;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The namespace prefixes, variables and functions that a parsed XPath 1.0 expression refers to. Caches use them to
+ * tell whether two evaluations of the same expression mean the same.
+ */
+public final class ExpressionReferences {
+    private final Set<String> myPrefixes = new TreeSet<String>();
+    // qualified names, "prefix:name" or "name"
+    private final Set<String> myVariables = new TreeSet<String>();
+    private final Set<String> myFunctions = new TreeSet<String>();
+    private boolean myComplete = true;
+
+    private ExpressionReferences() {
+    }
+
+    @Nonnull
+    public static ExpressionReferences of(@Nonnull Expr expr) {
+        final ExpressionReferences references = new ExpressionReferences();
+        references.collect(expr);
+        return references;
+    }
+
+    /**
+     * The prefixes used by name tests, functions and variables, sorted.
+     */
+    public Set<String> getPrefixes() {
+        return Collections.unmodifiableSet(myPrefixes);
+    }
+
+    /**
+     * The qualified names of the referenced variables, sorted.
+     */
+    public Set<String> getVariables() {
+        return Collections.unmodifiableSet(myVariables);
+    }
+
+    /**
+     * The qualified names of the called functions, sorted.
+     */
+    public Set<String> getFunctions() {
+        return Collections.unmodifiableSet(myFunctions);
+    }
+
+    /**
+     * Whether the expression only consists of known expression types, so that nothing it refers to has been missed.
+     */
+    public boolean isComplete() {
+        return myComplete;
+    }
+
+    private void collect(Expr expr) {
+        if (expr instanceof LiteralExpr || expr instanceof NumberExpr) {
+            return;
+        }
+        if (expr instanceof LocationPath) {
+            for (Object o : ((LocationPath)expr).getSteps()) {
+                final Step step = (Step)o;
+                if (step instanceof NameStep) {
+                    addPrefix(((NameStep)step).getPrefix());
+                }
+                collectPredicates(step.getPredicates());
+            }
+        } else if (expr instanceof PathExpr) {
+            final PathExpr path = (PathExpr)expr;
+            if (path.getFilterExpr() != null) {
+                collect(path.getFilterExpr());
+            }
+            if (path.getLocationPath() != null) {
+                collect(path.getLocationPath());
+            }
+        } else if (expr instanceof FilterExpr) {
+            final FilterExpr filter = (FilterExpr)expr;
+            if (filter.getExpr() != null) {
+                collect(filter.getExpr());
+            }
+            collectPredicates(filter.getPredicates());
+        } else if (expr instanceof BinaryExpr) {
+            collect(((BinaryExpr)expr).getLHS());
+            collect(((BinaryExpr)expr).getRHS());
+        } else if (expr instanceof UnaryExpr) {
+            collect(((UnaryExpr)expr).getExpr());
+        } else if (expr instanceof FunctionCallExpr) {
+            final FunctionCallExpr call = (FunctionCallExpr)expr;
+            addPrefix(call.getPrefix());
+            myFunctions.add(qualify(call.getPrefix(), call.getFunctionName()));
+            for (Object parameter : call.getParameters()) {
+                collect((Expr)parameter);
+            }
+        } else if (expr instanceof VariableReferenceExpr) {
+            final VariableReferenceExpr variable = (VariableReferenceExpr)expr;
+            addPrefix(variable.getPrefix());
+            myVariables.add(qualify(variable.getPrefix(), variable.getVariableName()));
+        } else {
+            myComplete = false;
+        }
+    }
+
+    private void collectPredicates(Iterable<?> predicates) {
+        for (Object predicate : predicates) {
+            collect(((Predicate)predicate).getExpr());
+        }
+    }
+
+    private void addPrefix(String prefix) {
+        if (prefix != null && prefix.length() > 0) {
+            myPrefixes.add(prefix);
+        }
+    }
+
+    private static String qualify(String prefix, String name) {
+        return prefix != null && prefix.length() > 0 ? prefix + ":" + name : name;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.util;
+
+import consulo.codeEditor.Editor;
+import consulo.codeEditor.markup.RangeHighlighter;
+import consulo.language.editor.highlight.HighlightManager;
+
+import java.util.*;
+
+/**
+ * The result highlighters of one editor.
+ * <p>
+ * Adding and removing is O(1). Highlighters that have been removed elsewhere (e.g. by ESC or a text change) become
+ * invalid and are only dropped when the registry is queried. The sorted start offsets used for navigation are cached
+ * and rebuilt lazily after the registry or the document has changed.
+ */
+final class HighlighterRegistry {
+    private final Set<RangeHighlighter> myHighlighters = new LinkedHashSet<RangeHighlighter>();
+
+    private int[] myStartOffsets;
+    private long myStamp = -1;
+
+    void add(RangeHighlighter highlighter) {
+        if (myHighlighters.add(highlighter)) {
+            myStartOffsets = null;
+        }
+    }
+
+    void remove(RangeHighlighter highlighter) {
+        if (myHighlighters.remove(highlighter)) {
+            myStartOffsets = null;
+        }
+    }
+
+    boolean isEmpty() {
+        purgeInvalid();
+        return myHighlighters.isEmpty();
+    }
+
+    List<RangeHighlighter> getHighlighters() {
+        purgeInvalid();
+        return new ArrayList<RangeHighlighter>(myHighlighters);
+    }
+
+    int[] getStartOffsets(Editor editor) {
+        final long stamp = editor.getDocument().getModificationStamp();
+        if (myStartOffsets == null || myStamp != stamp) {
+            purgeInvalid();
+            final int[] offsets = new int[myHighlighters.size()];
+            int i = 0;
+            for (RangeHighlighter highlighter : myHighlighters) {
+                offsets[i++] = highlighter.getStartOffset();
+            }
+            Arrays.sort(offsets);
+            myStartOffsets = offsets;
+            myStamp = stamp;
+        }
+        return myStartOffsets;
+    }
+
+    void clear(Editor editor) {
+        final HighlightManager mgr = HighlightManager.getInstance(editor.getProject());
+        for (RangeHighlighter highlighter : myHighlighters) {
+            if (highlighter.isValid()) {
+                mgr.removeSegmentHighlighter(editor, highlighter);
+            }
+        }
+        myHighlighters.clear();
+        myStartOffsets = null;
+    }
+
+    private void purgeInvalid() {
+        if (myHighlighters.removeIf(h -> !h.isValid())) {
+            myStartOffsets = null;
+        }
+    }
+}
@@ -19,13 +19,13 @@ import consulo.codeEditor.Editor;
 import consulo.codeEditor.LogicalPosition;
 import consulo.codeEditor.markup.RangeHighlighter;
 import consulo.colorScheme.TextAttributesKey;
+import consulo.disposer.Disposer;
 import consulo.document.util.TextRange;
 import consulo.language.codeStyle.CodeStyleSettingsManager;
 import consulo.language.editor.highlight.HighlightManager;
 import consulo.language.file.FileTypeManager;
 import consulo.language.psi.PsiElement;
 import consulo.language.psi.util.PsiTreeUtil;
-import consulo.util.collection.ContainerUtil;
 import consulo.util.dataholder.Key;
 import consulo.xml.language.psi.XmlTag;
 import org.intellij.plugins.xpathView.Config;
@@ -35,7 +35,8 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class HighlighterUtil {
-    private static final Key<List<RangeHighlighter>> HIGHLIGHTERS_KEY = Key.create("XPATH_HIGHLIGHTERS");
+    private static final Key<HighlighterRegistry> HIGHLIGHTERS_KEY = Key.create("XPATH_HIGHLIGHTERS");
+    private static final Key<BulkHighlighter> BULK_HIGHLIGHTER_KEY = Key.create("XPATH_BULK_HIGHLIGHTER");
 
     private HighlighterUtil() {
     }
@@ -46,16 +47,15 @@ public class HighlighterUtil {
      * @param editor the editor
      */
     public static void clearHighlighters(final Editor editor) {
-        final List<RangeHighlighter> hl = editor.getUserData(HIGHLIGHTERS_KEY);
-        if (hl != null) {
-            if (purgeInvalidHighlighters(editor, hl)) {
-                final HighlightManager mgr = HighlightManager.getInstance(editor.getProject());
-                for (Iterator<RangeHighlighter> iterator = hl.iterator(); iterator.hasNext();) {
-                    RangeHighlighter highlighter = iterator.next();
-                    mgr.removeSegmentHighlighter(editor, highlighter);
-                    iterator.remove();
-                }
-            }
+        final BulkHighlighter bulkHighlighter = editor.getUserData(BULK_HIGHLIGHTER_KEY);
+        if (bulkHighlighter != null) {
+            editor.putUserData(BULK_HIGHLIGHTER_KEY, null);
+            Disposer.dispose(bulkHighlighter);
+        }
+
+        final HighlighterRegistry registry = editor.getUserData(HIGHLIGHTERS_KEY);
+        if (registry != null) {
+            registry.clear(editor);
         }
     }
 
@@ -66,54 +66,69 @@ public class HighlighterUtil {
      * @param highlighter the highlighter
      */
     public static void addHighlighter(Editor editor, RangeHighlighter highlighter) {
-        List<RangeHighlighter> hl = editor.getUserData(HIGHLIGHTERS_KEY);
-        if (hl == null) {
-            hl = new LinkedList<RangeHighlighter>();
-            editor.putUserData(HIGHLIGHTERS_KEY, hl);
-        } else {
-            purgeInvalidHighlighters(editor, hl);
+        HighlighterRegistry registry = editor.getUserData(HIGHLIGHTERS_KEY);
+        if (registry == null) {
+            registry = new HighlighterRegistry();
+            editor.putUserData(HIGHLIGHTERS_KEY, registry);
         }
-        hl.add(highlighter);
+        registry.add(highlighter);
     }
 
     public static void removeHighlighter(Editor editor, RangeHighlighter h) {
+        final HighlighterRegistry registry = editor.getUserData(HIGHLIGHTERS_KEY);
+        if (registry != null) {
+            registry.remove(h);
+        }
         final HighlightManager mgr = HighlightManager.getInstance(editor.getProject());
         mgr.removeSegmentHighlighter(editor, h);
     }
 
     public static boolean hasHighlighters(Editor editor) {
-        final List<RangeHighlighter> hl = editor.getUserData(HIGHLIGHTERS_KEY);
-        if (hl != null) {
-            if (hl.isEmpty()) {
-                return false;
-            }
-            return purgeInvalidHighlighters(editor, hl);
-        }
-        return false;
+        final HighlighterRegistry registry = editor.getUserData(HIGHLIGHTERS_KEY);
+        return registry != null && !registry.isEmpty();
     }
 
-    @SuppressWarnings({"unchecked", "RawUseOfParameterizedType"})
-    private static boolean purgeInvalidHighlighters(Editor editor, List<RangeHighlighter> hl) {
-        final Set set = ContainerUtil.newIdentityTroveSet(Arrays.asList(editor.getMarkupModel().getAllHighlighters()));
-        boolean hasHighlighter = false;
-        for (Iterator<RangeHighlighter> iterator = hl.iterator(); iterator.hasNext();) {
-            final RangeHighlighter h = iterator.next();
-            if (!h.isValid() || !set.contains(h)) {
-                iterator.remove();
+    /**
+     * Returns the index of the first element in the sorted array <code>a</code> that is <code>&gt;= key</code>, or
+     * <code>a.length</code> if there is none.
+     */
+    public static int lowerBound(int[] a, int key) {
+        int low = 0;
+        int high = a.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (a[mid] < key) {
+                low = mid + 1;
             } else {
-                hasHighlighter = true;
+                high = mid;
             }
         }
-        return hasHighlighter;
+        return low;
+    }
+
+    static void setBulkHighlighter(Editor editor, BulkHighlighter bulkHighlighter) {
+        editor.putUserData(BULK_HIGHLIGHTER_KEY, bulkHighlighter);
+    }
+
+    /**
+     * Returns the sorted start offsets of all highlighted results, including those that are currently
+     * not rendered because only the visible area is highlighted.
+     */
+    public static int[] getHighlightedOffsets(Editor editor) {
+        final BulkHighlighter bulkHighlighter = editor.getUserData(BULK_HIGHLIGHTER_KEY);
+        if (bulkHighlighter != null && bulkHighlighter.isVirtual()) {
+            return bulkHighlighter.getStartOffsets();
+        }
+        final HighlighterRegistry registry = editor.getUserData(HIGHLIGHTERS_KEY);
+        return registry != null ? registry.getStartOffsets(editor) : new int[0];
     }
 
     public static List<RangeHighlighter> getHighlighters(Editor editor) {
-        if (!hasHighlighters(editor)) {
-            //noinspection unchecked
+        final HighlighterRegistry registry = editor.getUserData(HIGHLIGHTERS_KEY);
+        if (registry == null) {
             return Collections.emptyList();
-        } else {
-            return editor.getUserData(HIGHLIGHTERS_KEY);
         }
+        return registry.getHighlighters();
     }
 
     /**
@@ -125,32 +140,61 @@ public class HighlighterUtil {
      * @return The created highlighter object
      */
     public static RangeHighlighter highlightNode(Editor editor, final PsiElement node, TextAttributesKey attrs, Config cfg) {
-        TextRange range;
-        final PsiElement realElement;
+        final PsiElement realElement = getHighlightedElement(node, cfg);
+        final TextRange range = realElement.getTextRange();
+        return highlightRange(editor, range.getStartOffset(), range.getEndOffset(), realElement, attrs, cfg);
+    }
+
+    /**
+     * Returns the element whose range is highlighted for a node: the name element of a tag if only the start tag
+     * should be highlighted, the node itself otherwise.
+     */
+    public static PsiElement getHighlightedElement(PsiElement node, Config cfg) {
         if ((node instanceof XmlTag) && cfg.isHighlightStartTagOnly()) {
-            XmlTag tag = (XmlTag)node;
-            realElement = MyPsiUtil.getNameElement(tag);
-            range = realElement.getTextRange();
-        } else {
-            range = node.getTextRange();
-            realElement = node;
+            return MyPsiUtil.getNameElement((XmlTag)node);
         }
+        return node;
+    }
 
+    static RangeHighlighter highlightRange(Editor editor, int start, int end, PsiElement tooltipElement, TextAttributesKey attrs, Config cfg) {
         // TODO: break at line boundaries
         final ArrayList<RangeHighlighter> highlighters = new ArrayList<RangeHighlighter>(1);
         final HighlightManager mgr = HighlightManager.getInstance(editor.getProject());
-        mgr.addRangeHighlight(editor, range.getStartOffset(), range.getEndOffset(), attrs, false, highlighters);
+        mgr.addRangeHighlight(editor, start, end, attrs, false, highlighters);
         final RangeHighlighter rangeHighlighter = highlighters.get(0);
 
         if (cfg.isAddErrorStripe()) {
             //rangeHighlighter.setErrorStripeMarkColor(attrs.getBackgroundColor());
-            rangeHighlighter.setErrorStripeTooltip(formatTooltip(editor, realElement));
+            rangeHighlighter.setErrorStripeTooltip(new LazyTooltip(editor, tooltipElement));
         } else {
             rangeHighlighter.setErrorStripeMarkColor(null);
         }
         return rangeHighlighter;
     }
 
+    /**
+     * The error stripe renders a tooltip via <code>toString()</code>, so the (expensive) HTML is only built
+     * when the user actually hovers over the marker.
+     */
+    private static final class LazyTooltip {
+        private final Editor myEditor;
+        private final PsiElement myElement;
+        private String myText;
+
+        LazyTooltip(Editor editor, PsiElement element) {
+            myEditor = editor;
+            myElement = element;
+        }
+
+        public String toString() {
+            if (myText == null) {
+                final Object tooltip = myElement.isValid() ? formatTooltip(myEditor, myElement) : null;
+                myText = tooltip != null ? tooltip.toString() : "";
+            }
+            return myText;
+        }
+    }
+
     private static Object formatTooltip(Editor e, PsiElement element) {
         if (!(element instanceof XmlTag)) {
           final String text = element.getText();
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.util;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * Definition of a key for the <code>key(name, value)</code> extension function, like XSLT's
+ * <code>&lt;xsl:key name="..." match="..." use="..."/&gt;</code>: all nodes matching the <code>match</code>
+ * pattern are indexed by the string value(s) of the <code>use</code> expression.
+ */
+public final class KeyDefinition implements Cloneable, Copyable<KeyDefinition> {
+    private String myName;
+    private String myMatch;
+    private String myUse;
+
+    public KeyDefinition() {
+        this("", "", "");
+    }
+
+    public KeyDefinition(String name, String match, String use) {
+        myName = name;
+        myMatch = match;
+        myUse = use;
+    }
+
+    @Nonnull
+    public String getName() {
+        return myName != null ? myName : "";
+    }
+
+    public void setName(String name) {
+        myName = name;
+    }
+
+    @Nonnull
+    public String getMatch() {
+        return myMatch != null ? myMatch : "";
+    }
+
+    public void setMatch(String match) {
+        myMatch = match;
+    }
+
+    @Nonnull
+    public String getUse() {
+        return myUse != null ? myUse : "";
+    }
+
+    public void setUse(String use) {
+        myUse = use;
+    }
+
+    public KeyDefinition copy() {
+        try {
+            return (KeyDefinition)clone();
+        } catch (CloneNotSupportedException e) {
+            throw new Error();
+        }
+    }
+
+    public String toString() {
+        return myName + "<" + myMatch + ", " + myUse + ">";
+    }
+
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        final KeyDefinition that = (KeyDefinition)o;
+        return getName().equals(that.getName()) && getMatch().equals(that.getMatch()) && getUse().equals(that.getUse());
+    }
+
+    public int hashCode() {
+        int result = getName().hashCode();
+        result = 29 * result + getMatch().hashCode();
+        result = 29 * result + getUse().hashCode();
+        return result;
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.util;
+
+import jakarta.annotation.Nonnull;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes XPath matches to a file row by row, as CSV, JSON or XML depending on the file extension. Nothing but the
+ * current row is kept in memory, so results of any size can be exported while they are being computed.
+ */
+public abstract class ResultExporter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    public enum Format {
+        CSV, JSON, XML;
+
+        /**
+         * Returns the format for the extension of <code>file</code>, CSV if it is unknown.
+         */
+        @Nonnull
+        public static Format forFile(@Nonnull Path file) {
+            final String name = file.getFileName().toString().toLowerCase();
+            if (name.endsWith(".json")) {
+                return JSON;
+            } else if (name.endsWith(".xml")) {
+                return XML;
+            }
+            return CSV;
+        }
+    }
+
+    protected final Writer myWriter;
+    private int myRows;
+
+    private ResultExporter(Writer writer) {
+        myWriter = writer;
+    }
+
+    /**
+     * Creates the file, replacing an existing one, and writes the header of its format.
+     */
+    @Nonnull
+    public static ResultExporter create(@Nonnull Path file) throws IOException {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        final Writer writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE), BUFFER_SIZE);
+
+        final ResultExporter exporter;
+        switch (Format.forFile(file)) {
+            case JSON:
+                exporter = new JsonExporter(writer);
+                break;
+            case XML:
+                exporter = new XmlExporter(writer);
+                break;
+            default:
+                exporter = new CsvExporter(writer);
+        }
+        try {
+            exporter.writeHeader();
+        } catch (IOException e) {
+            writer.close();
+            throw e;
+        }
+        return exporter;
+    }
+
+    /**
+     * Writes one match.
+     *
+     * @param file  the path or URL of the file that contains the match
+     * @param line  the 1-based line number of the match
+     * @param path  the location path of the matched node
+     * @param value the string-value of the matched node
+     */
+    public void write(String file, int line, String path, String value) throws IOException {
+        writeRow(myRows++, file, line, path, value);
+    }
+
+    public int getRowCount() {
+        return myRows;
+    }
+
+    protected abstract void writeHeader() throws IOException;
+
+    protected abstract void writeRow(int index, String file, int line, String path, String value) throws IOException;
+
+    protected abstract void writeFooter() throws IOException;
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writeFooter();
+        } finally {
+            myWriter.close();
+        }
+    }
+
+    /**
+     * Writes <code>s</code> as a quoted JSON string.
+     */
+    public static void writeJsonString(@Nonnull Writer writer, @Nonnull String s) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int)c));
+                    } else {
+                        writer.write(c);
+                    }
+            }
+        }
+        writer.write('"');
+    }
+
+    private static final class CsvExporter extends ResultExporter {
+        CsvExporter(Writer writer) {
+            super(writer);
+        }
+
+        protected void writeHeader() throws IOException {
+            myWriter.write("file,line,path,value\r\n");
+        }
+
+        protected void writeRow(int index, String file, int line, String path, String value) throws IOException {
+            writeField(file);
+            myWriter.write(',');
+            myWriter.write(Integer.toString(line));
+            myWriter.write(',');
+            writeField(path);
+            myWriter.write(',');
+            writeField(value);
+            myWriter.write("\r\n");
+        }
+
+        protected void writeFooter() {
+        }
+
+        // RFC 4180: fields with separators, quotes or line breaks are quoted, quotes are doubled
+        private void writeField(String s) throws IOException {
+            boolean quote = false;
+            for (int i = 0; i < s.length() && !quote; i++) {
+                final char c = s.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                myWriter.write(s);
+                return;
+            }
+            myWriter.write('"');
+            for (int i = 0; i < s.length(); i++) {
+                final char c = s.charAt(i);
+                if (c == '"') {
+                    myWriter.write('"');
+                }
+                myWriter.write(c);
+            }
+            myWriter.write('"');
+        }
+    }
+
+    private static final class JsonExporter extends ResultExporter {
+        JsonExporter(Writer writer) {
+            super(writer);
+        }
+
+        protected void writeHeader() throws IOException {
+            myWriter.write('[');
+        }
+
+        protected void writeRow(int index, String file, int line, String path, String value) throws IOException {
+            myWriter.write(index == 0 ? "\n  {\"file\": " : ",\n  {\"file\": ");
+            writeString(file);
+            myWriter.write(", \"line\": ");
+            myWriter.write(Integer.toString(line));
+            myWriter.write(", \"path\": ");
+            writeString(path);
+            myWriter.write(", \"value\": ");
+            writeString(value);
+            myWriter.write('}');
+        }
+
+        protected void writeFooter() throws IOException {
+            myWriter.write("\n]\n");
+        }
+
+        private void writeString(String s) throws IOException {
+            writeJsonString(myWriter, s);
+        }
+    }
+
+    private static final class XmlExporter extends ResultExporter {
+        XmlExporter(Writer writer) {
+            super(writer);
+        }
+
+        protected void writeHeader() throws IOException {
+            myWriter.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<results>\n");
+        }
+
+        protected void writeRow(int index, String file, int line, String path, String value) throws IOException {
+            myWriter.write("  <match file=\"");
+            writeEscaped(file);
+            myWriter.write("\" line=\"");
+            myWriter.write(Integer.toString(line));
+            myWriter.write("\" path=\"");
+            writeEscaped(path);
+            myWriter.write("\">");
+            writeEscaped(value);
+            myWriter.write("</match>\n");
+        }
+
+        protected void writeFooter() throws IOException {
+            myWriter.write("</results>\n");
+        }
+
+        private void writeEscaped(String s) throws IOException {
+            for (int i = 0; i < s.length(); i++) {
+                final char c = s.charAt(i);
+                switch (c) {
+                    case '<':
+                        myWriter.write("&lt;");
+                        break;
+                    case '>':
+                        myWriter.write("&gt;");
+                        break;
+                    case '&':
+                        myWriter.write("&amp;");
+                        break;
+                    case '"':
+                        myWriter.write("&quot;");
+                        break;
+                    default:
+                        // characters that are not allowed in XML 1.0 are dropped
+                        if (c >= 0x20 || c == '\n' || c == '\r' || c == '\t') {
+                            myWriter.write(c);
+                        }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2002-2005 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.intellij.plugins.xpathView.util;
+
+import consulo.annotation.access.RequiredReadAction;
+import consulo.document.util.TextRange;
+import consulo.language.psi.PsiElement;
+import consulo.language.psi.PsiFile;
+import consulo.virtualFileSystem.VirtualFile;
+
+import jakarta.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact snapshot of a node-set result: (file, start, end) triples instead of references to PSI elements,
+ * so that a result that is kept around (e.g. for a usage view) doesn't keep whole PSI trees in memory.
+ * The ranges of each file are sorted by start offset once, when the snapshot is created.
+ */
+public final class ResultRanges {
+    private final VirtualFile[] myFiles;
+    // per file: (start << 32 | end), sorted
+    private final long[][] myRanges;
+    private final int mySize;
+
+    private ResultRanges(VirtualFile[] files, long[][] ranges, int size) {
+        myFiles = files;
+        myRanges = ranges;
+        mySize = size;
+    }
+
+    /**
+     * Creates a snapshot of all PSI elements in <code>result</code> that belong to a physical file. Other
+     * objects are ignored.
+     */
+    @Nonnull
+    @RequiredReadAction
+    public static ResultRanges create(List<?> result) {
+        final Map<VirtualFile, long[]> ranges = new LinkedHashMap<VirtualFile, long[]>();
+        final Map<VirtualFile, Integer> counts = new LinkedHashMap<VirtualFile, Integer>();
+        int size = 0;
+        for (Object o : result) {
+            if (!(o instanceof PsiElement)) {
+                continue;
+            }
+            final PsiElement element = (PsiElement)o;
+            final PsiFile psiFile = element.getContainingFile();
+            final VirtualFile file = psiFile != null ? psiFile.getVirtualFile() : null;
+            if (file == null) {
+                continue;
+            }
+            final TextRange range = element.getTextRange();
+
+            long[] a = ranges.get(file);
+            final int count = a != null ? counts.get(file) : 0;
+            if (a == null) {
+                a = new long[16];
+            } else if (count == a.length) {
+                a = Arrays.copyOf(a, count * 2);
+            }
+            a[count] = ((long)range.getStartOffset() << 32) | (range.getEndOffset() & 0xFFFFFFFFL);
+            ranges.put(file, a);
+            counts.put(file, count + 1);
+            size++;
+        }
+
+        final VirtualFile[] files = ranges.keySet().toArray(VirtualFile.EMPTY_ARRAY);
+        final long[][] sorted = new long[files.length][];
+        for (int i = 0; i < files.length; i++) {
+            sorted[i] = Arrays.copyOf(ranges.get(files[i]), counts.get(files[i]));
+            Arrays.sort(sorted[i]);
+        }
+        return new ResultRanges(files, sorted, size);
+    }
+
+    public int size() {
+        return mySize;
+    }
+
+    public boolean isEmpty() {
+        return mySize == 0;
+    }
+
+    /**
+     * Passes all ranges to the consumer, file by file in order of their start offsets, until it returns
+     * <code>false</code>.
+     */
+    public void forEach(RangeConsumer consumer) {
+        for (int i = 0; i < myFiles.length; i++) {
+            for (long range : myRanges[i]) {
+                if (!consumer.consume(myFiles[i], (int)(range >>> 32), (int)range)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    public interface RangeConsumer {
+        boolean consume(VirtualFile file, int start, int end);
+    }
+}